@@ -1,13 +1,24 @@
 package com.uddernetworks.holysheet;
 
 import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonErrorContainer;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.BackOff;
 import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.StringUtils;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.sheets.v4.Sheets;
+import com.uddernetworks.holysheet.utility.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +29,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.security.GeneralSecurityException;
+import java.util.Set;
 
 /**
  * Manages authentication, either locally or generically with a given token. Is in charge of creating {@link Sheets}
@@ -28,20 +40,119 @@ public interface AuthManager {
 
     Drive getDrive();
 
+    /**
+     * Initializes Drive and Sheets requests with the user's credentials, a shared {@link RateLimiter}, and exponential
+     * back off on server errors. Rate limited responses (429, or 403 with a rate limit reason) are retried once the
+     * limiter allows.
+     */
     class BackOffInitializer implements HttpRequestInitializer {
 
+        private static final int TOO_MANY_REQUESTS = 429;
+        private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+        private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+
         private final Credential credential;
+        private final RateLimiter rateLimiter;
 
-        public BackOffInitializer(Credential credential) {
+        public BackOffInitializer(Credential credential, RateLimiter rateLimiter) {
             this.credential = credential;
+            this.rateLimiter = rateLimiter;
         }
 
         @Override
         public void initialize(HttpRequest httpRequest) throws IOException {
-            httpRequest.setUnsuccessfulResponseHandler(new HttpBackOffUnsuccessfulResponseHandler(backOff()));
+            // The credential sets itself as both the interceptor and response handler, so they're wrapped afterwards
             credential.initialize(httpRequest);
             httpRequest.setConnectTimeout(300 * 60000);
             httpRequest.setReadTimeout(300 * 60000);
+
+            var backOffHandler = new HttpBackOffUnsuccessfulResponseHandler(backOff());
+            HttpUnsuccessfulResponseHandler credentialHandler = credential;
+
+            httpRequest.setInterceptor(request -> {
+                rateLimiter.acquire();
+                credential.intercept(request);
+            });
+
+            httpRequest.setResponseInterceptor(response -> {
+                if (response.isSuccessStatusCode()) {
+                    rateLimiter.onSuccess();
+                }
+            });
+
+            httpRequest.setUnsuccessfulResponseHandler((request, response, supportsRetry) -> {
+                if (credentialHandler.handleResponse(request, response, supportsRetry)) {
+                    return true;
+                }
+
+                if (isRateLimited(response)) {
+                    rateLimiter.onRateLimited(getRetryAfter(response));
+                    return supportsRetry;
+                }
+
+                return backOffHandler.handleResponse(request, response, supportsRetry);
+            });
+        }
+
+        private boolean isRateLimited(HttpResponse response) throws IOException {
+            int status = response.getStatusCode();
+            if (status == TOO_MANY_REQUESTS) {
+                return true;
+            }
+
+            if (status != HttpStatusCodes.STATUS_CODE_FORBIDDEN) {
+                return false;
+            }
+
+            // The content can only be read once, so other 403s are thrown from here with their error details
+            var content = response.parseAsString();
+            var details = parseError(content);
+            if (details != null && details.getErrors() != null && details.getErrors().stream().anyMatch(info -> RATE_LIMIT_REASONS.contains(info.getReason()))) {
+                return true;
+            }
+
+            var message = HttpResponseException.computeMessageBuffer(response);
+            if (!content.isEmpty()) {
+                message.append(StringUtils.LINE_SEPARATOR).append(content);
+            }
+
+            throw new GoogleJsonResponseException(new HttpResponseException.Builder(status, response.getStatusMessage(), response.getHeaders())
+                    .setContent(content)
+                    .setMessage(message.toString()), details);
+        }
+
+        /**
+         * Parses the error of a JSON error response.
+         *
+         * @param content The content of the response
+         * @return The error, or null if the content isn't a JSON error
+         */
+        private GoogleJsonError parseError(String content) {
+            try {
+                var container = JSON_FACTORY.fromString(content, GoogleJsonErrorContainer.class);
+                return container == null ? null : container.getError();
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Gets the Retry-After header in milliseconds, if given in seconds.
+         *
+         * @param response The response
+         * @return The milliseconds to wait, or -1 if not given
+         */
+        private long getRetryAfter(HttpResponse response) {
+            var retryAfter = response.getHeaders().getFirstHeaderStringValue("Retry-After");
+            if (retryAfter == null) {
+                return -1;
+            }
+
+            try {
+                return Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
         }
 
         private final ExponentialBackOff.Builder BACK_OFF = new ExponentialBackOff.Builder().setInitialIntervalMillis(500);
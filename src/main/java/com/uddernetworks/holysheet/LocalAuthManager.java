@@ -18,6 +18,7 @@ import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.sheets.v4.Sheets;
+import com.uddernetworks.holysheet.utility.RateLimiter;
 import com.google.api.services.sheets.v4.SheetsScopes;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -41,26 +42,44 @@ public class LocalAuthManager implements AuthManager {
     private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
     private static final String TOKENS_DIRECTORY_PATH = "private";
     private static final List<String> SCOPES = List.of(DriveScopes.DRIVE, SheetsScopes.SPREADSHEETS);
+    public static final String DEFAULT_ACCOUNT = "user";
+
     private final String credentialPath;
+    private final String account;
 
     private Drive drive;
     private Sheets sheets;
 
     public LocalAuthManager(String credentialPath) {
+        this(credentialPath, DEFAULT_ACCOUNT);
+    }
+
+    /**
+     * Creates a {@link LocalAuthManager} for one of several accounts authorized on this machine. Each account's tokens
+     * are stored under its own name, so the first use of a name asks for a Google account to authorize in the browser.
+     *
+     * @param credentialPath The location of the credentials.json file, shared by every account
+     * @param account        The name the account's tokens are stored under
+     */
+    public LocalAuthManager(String credentialPath, String account) {
         this.credentialPath = credentialPath;
+        this.account = account;
     }
 
     public void initialize() throws GeneralSecurityException, IOException {
         final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
         var credentials = getCredentials(HTTP_TRANSPORT);
 
+        // Sheets has its own quota, so its own limiter
+        var user = account.equals(DEFAULT_ACCOUNT) ? "local" : "local-" + account;
         drive = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, credentials)
                 .setApplicationName(APPLICATION_NAME)
-                .setHttpRequestInitializer(new BackOffInitializer(credentials))
+                .setHttpRequestInitializer(new BackOffInitializer(credentials, RateLimiter.forUser(user)))
                 .build();
 
         sheets = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, credentials)
                 .setApplicationName(APPLICATION_NAME)
+                .setHttpRequestInitializer(new BackOffInitializer(credentials, RateLimiter.forUser(user + "/sheets")))
                 .build();
     }
 
@@ -73,7 +92,7 @@ public class LocalAuthManager implements AuthManager {
                 .setAccessType("offline")
                 .build();
         var receiver = new LocalServerReceiver.Builder().setPort(8888).build();
-        return new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
+        return new AuthorizationCodeInstalledApp(flow, receiver).authorize(account);
     }
 
     @Override
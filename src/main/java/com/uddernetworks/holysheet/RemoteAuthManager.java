@@ -11,11 +11,19 @@ import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.sheets.v4.Sheets;
+import com.uddernetworks.holysheet.utility.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static com.uddernetworks.holysheet.utility.Utility.credentialsReader;
 
@@ -31,11 +39,23 @@ public class RemoteAuthManager implements AuthManager {
     private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
     private static final String CLIENT_SECRET = System.getenv("CLIENT_SECRET");
 
+    // The stable ID of each token's account, so a refreshed token keeps the account's rate limiter. Keyed by a hash
+    // of the token, so tokens aren't kept around.
+    private static final int MAX_ACCOUNTS = 1000;
+    private static final Map<String, String> ACCOUNTS = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ACCOUNTS;
+        }
+    });
+
     private static NetHttpTransport HTTP_TRANSPORT;
     private static String clientId;
     private static String clientSecret;
+    private Credential credentials;
     private Drive drive;
     private Sheets sheets;
+    private String account;
 
     static {
         try {
@@ -57,21 +77,79 @@ public class RemoteAuthManager implements AuthManager {
 
     public void useToken(String accessToken) {
         try {
-            var credentials = createCredentialWithRefreshToken(clientId, clientSecret, accessToken);
+            credentials = createCredentialWithRefreshToken(clientId, clientSecret, accessToken);
+            account = getAccountId(credentials, accessToken);
 
+            // Sheets has its own quota, so its own limiter
             drive = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, credentials)
                     .setApplicationName(APPLICATION_NAME)
-                    .setHttpRequestInitializer(new BackOffInitializer(credentials))
+                    .setHttpRequestInitializer(new BackOffInitializer(credentials, RateLimiter.forUser("remote-" + account)))
                     .build();
 
             sheets = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, credentials)
                     .setApplicationName(APPLICATION_NAME)
+                    .setHttpRequestInitializer(new BackOffInitializer(credentials, RateLimiter.forUser("remote-" + account + "/sheets")))
                     .build();
         } catch (IllegalArgumentException e) {
             LOGGER.error("Error verifying given token", e);
         }
     }
 
+    /**
+     * Swaps the token requests are made with for a newer one of the same account, such as once the client refreshed
+     * it, keeping the clients made with the old one.
+     *
+     * @param accessToken The new access token
+     */
+    public void setAccessToken(String accessToken) {
+        if (credentials != null) {
+            credentials.setAccessToken(accessToken);
+        }
+    }
+
+    /**
+     * Gets the ID of the account a token belongs to, which stays the same as the token is refreshed. If the account
+     * can't be looked up, the token's hash is used instead.
+     *
+     * @param credentials The credentials of the token
+     * @param accessToken The access token
+     * @return The ID of the account
+     */
+    private static String getAccountId(Credential credentials, String accessToken) {
+        var tokenHash = hash(accessToken);
+        var cached = ACCOUNTS.get(tokenHash);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            var id = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, credentials)
+                    .setApplicationName(APPLICATION_NAME)
+                    .build()
+                    .about()
+                    .get()
+                    .setFields("user(permissionId)")
+                    .execute()
+                    .getUser()
+                    .getPermissionId();
+
+            ACCOUNTS.put(tokenHash, id);
+            return id;
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't look up the account of a token, limiting it on its own: {}", e.getMessage());
+            return tokenHash;
+        }
+    }
+
+    private static String hash(String accessToken) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(accessToken.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public Credential createCredentialWithRefreshToken(String clientId, String clientSecret, String accessToken) {
         return new Credential.Builder(BearerToken.authorizationHeaderAccessMethod()).setTransport(HTTP_TRANSPORT)
                 .setJsonFactory(JSON_FACTORY)
@@ -81,6 +159,13 @@ public class RemoteAuthManager implements AuthManager {
                 .setAccessToken(accessToken);
     }
 
+    /**
+     * @return The stable ID of the token's account, or a hash of the token if it couldn't be looked up
+     */
+    public String getAccount() {
+        return account;
+    }
+
     @Override
     public Sheets getSheets() {
         return sheets;
@@ -5,7 +5,10 @@ import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
 import com.google.api.services.sheets.v4.Sheets;
+import com.uddernetworks.holysheet.io.IOExecutors;
+import com.uddernetworks.holysheet.io.PackIndex;
 import com.uddernetworks.holysheet.io.SheetIO;
+import com.uddernetworks.holysheet.io.UploadIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +31,7 @@ public class SheetManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SheetManager.class);
 
-    public static final Pattern PATH_REGEX = Pattern.compile("^\\/([\\w-]+?(\\/[\\w-]+?){0,1})*\\/$");
+    public static final Pattern PATH_REGEX = Pattern.compile("^\\/([\\w-]+\\/)*$");
 
     private final Drive drive;
     private final Sheets sheets;
@@ -37,19 +40,28 @@ public class SheetManager {
     private File sheetStore;
 
     public SheetManager(Drive drive, Sheets sheets) {
+        this(drive, sheets, IOExecutors.getDefault());
+    }
+
+    public SheetManager(Drive drive, Sheets sheets, IOExecutors executors) {
         this.drive = drive;
         this.sheets = sheets;
-        this.sheetIO = new SheetIO(this, drive, sheets);
+        this.sheetIO = new SheetIO(this, drive, sheets, executors);
     }
 
     /**
-     * Return a {@link File} from drive with the id provided.
+     * Return a {@link File} from drive with the id provided. Files packed
+     * into containers are resolved through their container's index.
      *
      * @param id The id of the file.
      * @return {@link File} if found, otherwise {@code null}.
      * @throws IOException An exception from the drive request.
      */
     public File getFile(String id) throws IOException {
+        if (PackIndex.isEntryId(id)) {
+            return sheetIO.getPackedFile(id);
+        }
+
         try {
             return drive.files().get(id).execute();
         } catch (GoogleJsonResponseException exception) {
@@ -68,6 +80,10 @@ public class SheetManager {
      * @throws IOException An exception from the drive request.
      */
     public File getFile(String id, String fields) throws IOException {
+        if (PackIndex.isEntryId(id)) {
+            return sheetIO.getPackedFile(id);
+        }
+
         return drive.files().get(id).setFields(fields).execute();
     }
 
@@ -90,6 +106,15 @@ public class SheetManager {
      */
     public Optional<String> getIdOfName(String name, boolean inSheetStore) {
         try {
+            // Uploads only just made may not be indexed yet, so fall back to querying
+            var uploadIndex = sheetIO.getUploadIndex();
+            if (inSheetStore && uploadIndex.isLoaded()) {
+                var indexed = uploadIndex.findId(name);
+                if (indexed.isPresent()) {
+                    return indexed;
+                }
+            }
+
             var query = "name contains '" + name.replace("'", "") + "'";
 
             if (inSheetStore) {
@@ -97,7 +122,12 @@ public class SheetManager {
             }
 
             var files = getFiles(1, query, Mime.FOLDER);
-            return getCollectionFirst(files).map(File::getId);
+            var found = getCollectionFirst(files).map(File::getId);
+            if (found.isEmpty() && inSheetStore) {
+                return sheetIO.findPackedId(name);
+            }
+
+            return found;
         } catch (IOException e) {
             return Optional.empty();
         }
@@ -109,6 +139,9 @@ public class SheetManager {
 
     /**
      * Returns a list of {@link File}s that match the path, and the properties listed.
+     * This includes files packed into containers, which are never starred.
+     * Once the {@link UploadIndex} has been loaded, it is synced and listed
+     * from instead of querying each time.
      *
      * @param path    The path of the file, must be valid and match the regex.
      * @param starred Whether the file must be starred or not.
@@ -121,15 +154,51 @@ public class SheetManager {
                 path = "/";
             }
 
-            var pathQuery = starred ? "" : " and properties has { key='path' and value='" + path + "' }";
-            var extra = starred ? " and properties has { key='starred' and value='true' }" : "";
-            return getFiles(-1, "properties has { key='directParent' and value='true' }" + pathQuery + " and trashed = " + trashed + extra, Mime.FOLDER);
+            var uploadIndex = sheetIO.getUploadIndex();
+            if (uploadIndex.isLoaded()) {
+                uploadIndex.sync();
+                return uploadIndex.search("", false, starred ? null : path, starred, trashed, UploadIndex.Sort.NAME, false, -1);
+            }
+
+            var files = new ArrayList<>(getFiles(-1, getUploadsQuery(path, starred, trashed), Mime.FOLDER));
+            if (!starred) {
+                files.addAll(sheetIO.listPacked(path, trashed));
+            }
+
+            return files;
         } catch (IOException e) {
             LOGGER.error("An error occurred while listing uploads", e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * Returns a single page of the uploads that match the path, and the properties listed. Unlike
+     * {@link #listUploads(String, boolean, boolean)}, this does not include packed files.
+     *
+     * @param path      The path of the file, must be valid and match the regex.
+     * @param starred   Whether the file must be starred or not.
+     * @param trashed   Whether the file must have been removed.
+     * @param pageSize  The maximum amount of files in the page.
+     * @param pageToken The token of the page from the previous page, or null for the first page.
+     * @param fields    The fields of each file to request.
+     * @return The page, with the token of the next page if there is one.
+     * @throws IOException If the drive request throws an exception.
+     */
+    public FileList listUploadsPage(String path, boolean starred, boolean trashed, int pageSize, String pageToken, String fields) throws IOException {
+        return getPagesFiles(pageToken, pageSize, new Mime[]{Mime.FOLDER}, getUploadsQuery(path, starred, trashed), fields);
+    }
+
+    private String getUploadsQuery(String path, boolean starred, boolean trashed) {
+        if (path.isBlank() || !PATH_REGEX.matcher(path).matches()) {
+            path = "/";
+        }
+
+        var pathQuery = starred ? "" : " and properties has { key='path' and value='" + path + "' }";
+        var extra = starred ? " and properties has { key='starred' and value='true' }" : "";
+        return "properties has { key='directParent' and value='true' }" + pathQuery + " and trashed = " + trashed + extra;
+    }
+
     /**
      * Get all the sheets in the drive, that has a parent.
      *
@@ -2,12 +2,26 @@ package com.uddernetworks.holysheet.command;
 
 import com.google.api.services.drive.model.User;
 import com.uddernetworks.grpc.HolysheetService;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
 import com.uddernetworks.holysheet.HolySheet;
+import com.uddernetworks.holysheet.LocalAuthManager;
 import com.uddernetworks.holysheet.SheetManager;
 import com.uddernetworks.holysheet.console.ConsoleTableBuilder;
+import com.uddernetworks.holysheet.encryption.EncryptionKey;
+import com.uddernetworks.holysheet.grpc.DaemonFile;
+import com.uddernetworks.holysheet.io.ChunkCache;
+import com.uddernetworks.holysheet.io.DirectoryWalker;
+import com.uddernetworks.holysheet.io.DriveChunkBackend;
+import com.uddernetworks.holysheet.io.ExportHedger;
+import com.uddernetworks.holysheet.io.PackWriter;
 import com.uddernetworks.holysheet.io.SheetIO;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang3.StringUtils;
+import com.uddernetworks.holysheet.io.StripePool;
+import com.uddernetworks.holysheet.io.UploadBudget;
+import com.uddernetworks.holysheet.io.UploadIndex;
+import com.uddernetworks.holysheet.io.UploadScheduler;
+import com.uddernetworks.holysheet.io.UploadSweeper;
+import com.uddernetworks.holysheet.utility.Utility;
+import io.grpc.StatusRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
@@ -17,32 +31,38 @@ import picocli.CommandLine.Option;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static com.uddernetworks.grpc.HolysheetService.UploadRequest.Compression.*;
-import static com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload.MULTIPART;
+import static com.uddernetworks.holysheet.utility.Utility.getSheetCount;
 import static com.uddernetworks.holysheet.utility.Utility.humanReadableByteCountSI;
 
 @CommandLine.Command(name = "example", mixinStandardHelpOptions = true, version = "DriveStore 1.0.0", customSynopsis = {
-        "([-cm] -u=<file>... | [-cm] -e=<id> | -d=<name/id>... |  -r=<name/id>...) [-agphlzV]"
+        "([-cjmt] -u=<file>... | [-cm] -e=<id> | -d=<name/id>... |  -r=<name/id>...) [-agphlzV] [-s=<text>]"
 })
 public class CommandHandler implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CommandHandler.class);
     public static final DateFormat DATE_FORMAT = new SimpleDateFormat("MM-dd-yyyy");
-    public static final Pattern ID_PATTERN = Pattern.compile("([a-zA-Z0-9-_]+)");
+    public static final Pattern ID_PATTERN = Pattern.compile("([a-zA-Z0-9-_]+(~\\d+)?)");
+
+    // Directories are listed on threads of their own, as creating their folders blocks on Drive
+    private static final int WALK_THREADS = 4;
 
     private final HolySheet holySheet;
     private SheetManager sheetManager;
@@ -51,6 +71,9 @@ public class CommandHandler implements Runnable {
     @Option(names = {"-l", "--list"}, description = "Lists the uploaded files in Google Sheets")
     boolean list;
 
+    @Option(names = {"-s", "--search"}, description = "Lists the uploaded files with names containing the given text, ignoring case", paramLabel = "<text>")
+    String search;
+
     @Option(names = {"-a", "--credentials"}, description = "The (absolute or relative) location of your personal credentials.json file. If no file extension is found, it is assumed to be an environment variable")
     String credentials = "credentials.json";
 
@@ -66,9 +89,60 @@ public class CommandHandler implements Runnable {
     @Option(names = {"-c", "--compress"}, description = "Compressed before uploading, currently uses Zip format")
     boolean compression;
 
-    @Option(names = {"-m", "--sheetSize"}, defaultValue = "10000000", description = "The maximum size in bytes a single sheet can be. Defaults to 10MB")
+    @Option(names = {"-m", "--sheetSize"}, defaultValue = "10000000", description = "The maximum size in bytes a single sheet can be, lowered on slow connections. Defaults to 10MB")
     int sheetSize;
 
+    @Option(names = {"-t", "--uploadType"}, defaultValue = "MULTIPART", description = "How chunks are uploaded, one of MULTIPART, DIRECT, or SHEETS. SHEETS stores chunks as tabs of shared spreadsheets, creating far fewer files")
+    Upload uploadType;
+
+    @Option(names = {"-j", "--jobs"}, defaultValue = "4", description = "The amount of files to upload at once")
+    int jobs;
+
+    @Option(names = {"--maxChunks"}, defaultValue = "4", description = "The maximum amount of chunks uploading at once across all files")
+    int maxChunks;
+
+    @Option(names = {"--maxBytes"}, defaultValue = "64000000", description = "The maximum amount of bytes of chunks uploading at once across all files. Defaults to 64MB")
+    long maxBytes;
+
+    @Option(names = {"--pack"}, description = "Packs small files into shared containers instead of uploading each on its own")
+    boolean pack;
+
+    @Option(names = {"--packThreshold"}, defaultValue = "1000000", description = "The maximum size in bytes of a file to pack, when packing. Defaults to 1MB")
+    long packThreshold;
+
+    @Option(names = {"--containerSize"}, defaultValue = "100000000", description = "The size in bytes a container is closed at, when packing. Defaults to 100MB")
+    long containerSize;
+
+    @Option(names = {"--cacheDir"}, description = "A directory to cache downloaded sheets in, so downloading them again is read from disk")
+    File cacheDir;
+
+    @Option(names = {"--cacheSize"}, defaultValue = "1000000000", description = "The maximum size in bytes of the sheet cache, when caching. Defaults to 1GB")
+    long cacheSize;
+
+    @Option(names = {"--parity"}, defaultValue = "0", description = "The amount of parity sheets to upload for each group of sheets, so a download can rebuild as many sheets of the group that are slow or fail. Defaults to none")
+    int parity;
+
+    @Option(names = {"--parityGroup"}, defaultValue = "8", description = "The amount of sheets in each group parity is computed over, at most 12")
+    int parityGroup;
+
+    @Option(names = {"--hedgePercentile"}, defaultValue = "95", description = "The percentile of recent sheet download times after which a slow download is sent again, using whichever finishes first. 0 never sends downloads again. Defaults to 95")
+    double hedgePercentile;
+
+    @Option(names = {"--hedgeRatio"}, defaultValue = "0.05", description = "The largest fraction of sheet downloads that may be sent again. Defaults to 0.05")
+    double hedgeRatio;
+
+    @Option(names = {"--key"}, description = "A file holding the key to encrypt uploads with and decrypt downloads with. Uploading generates a new key if the file doesn't exist")
+    File key;
+
+    @Option(names = {"--stripe"}, description = "Stripes uploaded sheets across another Google account, taking the given share of sheets to this account's 1. The account is authorized in the browser the first time its name is used. Repeat for more accounts. Downloading or removing a striped file needs the same accounts", paramLabel = "<name>=<weight>")
+    Map<String, Integer> stripe;
+
+    @Option(names = {"--sweep"}, description = "Finishes or trashes uploads left processing for over 6 hours, such as by a crash. A daemon does this on its own")
+    boolean sweep;
+
+    @Option(names = {"--no-daemon"}, description = "Runs the command in this process, even if a daemon started with -g and -z is running")
+    boolean noDaemon;
+
     @ArgGroup(multiplicity = "0..1")
     RequiresParam param;
 
@@ -87,8 +161,11 @@ public class CommandHandler implements Runnable {
         @Option(names = {"-e", "--clone"}, arity = "1..*", description = "Clones the remote file ID to Google Sheets", paramLabel = "<id/name>")
         List<String> clone;
 
-        @Option(names = {"-u", "--upload"}, arity = "1..*", description = "Upload the local file", paramLabel = "<file>")
+        @Option(names = {"-u", "--upload"}, arity = "1..*", description = "Upload the local file, or every file in the local directory under folders mirroring it", paramLabel = "<file>")
         File[] upload;
+
+        @Option(names = {"--update"}, arity = "1..*", description = "Updates the remote file with the local file, only uploading the sheets that changed", paramLabel = "<id/name>=<file>")
+        Map<String, File> update;
     }
 
     @Override
@@ -97,7 +174,11 @@ public class CommandHandler implements Runnable {
 
         if (grpc > 0) {
             holySheet.init(localAuth ? credentials : null);
-            holySheet.getGrpcClient().start(grpc);
+            holySheet.getGrpcClient().start(grpc, localAuth);
+            return;
+        }
+
+        if (!noDaemon && forwardToDaemon()) {
             return;
         }
 
@@ -106,11 +187,39 @@ public class CommandHandler implements Runnable {
         sheetManager = new SheetManager(authManager.getDrive(), authManager.getSheets());
         sheetIO = sheetManager.getSheetIO();
 
+        if (cacheDir != null) {
+            sheetIO.setChunkCache(new ChunkCache(cacheDir.toPath(), cacheSize));
+        }
+
+        if (parity > 0) {
+            sheetIO.setParity(parityGroup, parity);
+        }
+
+        sheetIO.setExportHedger(hedgePercentile > 0 ? new ExportHedger(hedgePercentile / 100, hedgeRatio) : null);
+
+        if (stripe != null && !loadStripes()) {
+            return;
+        }
+
+        if (key != null && !loadKey()) {
+            return;
+        }
+
         if (list) {
             list();
             return;
         }
 
+        if (search != null) {
+            search();
+            return;
+        }
+
+        if (sweep) {
+            sweep();
+            return;
+        }
+
         if (param.upload != null) {
             upload();
             return;
@@ -130,9 +239,165 @@ public class CommandHandler implements Runnable {
             cloneFiles();
             return;
         }
+
+        if (param.update != null) {
+            update();
+            return;
+        }
+    }
+
+    /**
+     * Loads the key given by --key into the {@link SheetIO}, generating it first if uploading and it doesn't exist.
+     *
+     * @return If the key was loaded
+     */
+    private boolean loadKey() {
+        if (pack && param != null && param.upload != null) {
+            LOGGER.error("Packed files can't be encrypted");
+            return false;
+        }
+
+        try {
+            EncryptionKey encryptionKey;
+            if (!key.exists() && param != null && param.upload != null) {
+                encryptionKey = EncryptionKey.generate(key.toPath());
+                LOGGER.info("Generated key {} in {}, keep it safe as encrypted uploads can't be downloaded without it", encryptionKey.getId(), key.getAbsolutePath());
+            } else {
+                encryptionKey = EncryptionKey.load(key.toPath());
+            }
+
+            sheetIO.setEncryptionKey(encryptionKey);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Couldn't load the key " + key.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Authorizes the accounts given by --stripe into the {@link SheetIO}, to stripe uploads across along with this one.
+     *
+     * @return If every account was authorized
+     */
+    private boolean loadStripes() {
+        var pool = new StripePool(1);
+        for (var entry : stripe.entrySet()) {
+            var name = entry.getKey();
+            if (name.equals(LocalAuthManager.DEFAULT_ACCOUNT)) {
+                LOGGER.error("The account name {} is taken by this account", name);
+                return false;
+            }
+
+            try {
+                var authManager = new LocalAuthManager(credentials, name);
+                authManager.initialize();
+                pool.add(new DriveChunkBackend(name, authManager.getDrive()), entry.getValue());
+            } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+                LOGGER.error("Couldn't set up the account " + name, e);
+                return false;
+            }
+        }
+
+        sheetIO.setStripePool(pool);
+        return true;
+    }
+
+    /**
+     * Runs the command on a running daemon, if there is one and it can run it.
+     *
+     * @return If the command was run
+     */
+    private boolean forwardToDaemon() {
+        // The daemon has no key or other accounts, so only runs unencrypted transfers in its own account
+        var forwardable = list || (key == null && stripe == null && param != null && ((param.upload != null && !pack && parity == 0 && Arrays.stream(param.upload).noneMatch(File::isDirectory)) || param.download != null || param.remove != null));
+        if (!forwardable) {
+            return false;
+        }
+
+        var daemonFile = DaemonFile.read();
+        if (daemonFile.isEmpty()) {
+            return false;
+        }
+
+        LOGGER.info("Forwarding to the daemon on port {}", daemonFile.get().getPort());
+
+        try (var daemon = new DaemonClient(daemonFile.get())) {
+            if (list) {
+                printUploads(daemon.listUploads());
+            } else if (param.upload != null) {
+                forwardUpload(daemon);
+            } else if (param.download != null) {
+                for (var idName : param.download) {
+                    long start = System.currentTimeMillis();
+                    var item = daemon.download(getDaemonId(daemon, idName));
+                    LOGGER.info("Downloaded {} in {}ms", item.getName(), System.currentTimeMillis() - start);
+                }
+            } else {
+                for (var idName : param.remove) {
+                    daemon.remove(getDaemonId(daemon, idName));
+                }
+            }
+        } catch (StatusRuntimeException | IOException e) {
+            LOGGER.error("An error occurred on the daemon", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return true;
+    }
+
+    private void forwardUpload(DaemonClient daemon) {
+        long start = System.currentTimeMillis();
+        var executor = Executors.newFixedThreadPool(jobs);
+
+        CompletableFuture.allOf(Arrays.stream(param.upload).map(file -> CompletableFuture.runAsync(() -> {
+            if (!file.isFile()) {
+                LOGGER.error("File '{}' does not exist!", file.getAbsolutePath());
+                return;
+            }
+
+            try {
+                var item = daemon.upload(file, sheetSize, compression ? ZIP : NONE, uploadType);
+                LOGGER.info("Uploaded {} in {}ms", item.getId(), System.currentTimeMillis() - start);
+            } catch (StatusRuntimeException e) {
+                LOGGER.error("Error uploading file " + file.getName(), e);
+            }
+        }, executor)).toArray(CompletableFuture[]::new)).join();
+
+        executor.shutdown();
+        LOGGER.info("Finished the uploading of {} file{} in {}ms", param.upload.length, param.upload.length == 1 ? "" : "s", System.currentTimeMillis() - start);
+    }
+
+    private String getDaemonId(DaemonClient daemon, String idName) {
+        if (ID_PATTERN.matcher(idName).matches()) {
+            return idName;
+        }
+
+        return daemon.getIdOfName(idName).orElse(idName);
     }
 
     private void list() {
+        printUploads(sheetManager.listUploads());
+    }
+
+    private void sweep() {
+        try {
+            var swept = new UploadSweeper(sheetManager, holySheet.getAuthManager().getDrive(), UploadSweeper.DEFAULT_GRACE_MS).sweep();
+            LOGGER.info("Swept {} stale uploads", swept);
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while sweeping stale uploads", e);
+        }
+    }
+
+    private void search() {
+        try {
+            printUploads(sheetIO.getUploadIndex().search(search, false, null, false, false, UploadIndex.Sort.NAME, false, -1));
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while searching uploads", e);
+        }
+    }
+
+    private void printUploads(List<com.google.api.services.drive.model.File> uploads) {
         var table = new ConsoleTableBuilder()
                 .addColumn("Name", 20)
                 .addColumn("Size", 8)
@@ -142,8 +407,6 @@ public class CommandHandler implements Runnable {
                 .addColumn("Id", 33)
                 .setHorizontalSpacing(3);
 
-        var uploads = sheetManager.listUploads();
-
         System.out.println("\n");
         System.out.println(table.generateTable(uploads
                 .stream()
@@ -157,7 +420,7 @@ public class CommandHandler implements Runnable {
                 )).collect(Collectors.toList()), List.of(
                 "Total",
                 humanReadableByteCountSI(uploads.stream().mapToLong(file -> Long.parseLong(file.getProperties().get("size"))).sum()),
-                String.valueOf(uploads.stream().mapToInt(CommandHandler::getSheetCount).sum()),
+                String.valueOf(uploads.stream().mapToInt(Utility::getSheetCount).sum()),
                 "",
                 "",
                 ""
@@ -167,37 +430,142 @@ public class CommandHandler implements Runnable {
     private void upload() {
         long start = System.currentTimeMillis();
         var upload = param.upload;
+        var scheduler = new UploadScheduler(sheetIO, jobs, new UploadBudget(maxChunks, maxBytes));
+        var packWriter = pack ? new PackWriter(sheetIO, sheetSize, containerSize, compression ? ZIP : NONE, uploadType) : null;
+
+        // A pack is written in order, so packed files are queued to a single thread instead of holding up the walk
+        var packer = pack ? Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "holysheet-packer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        // Interrupting the process trashes partial uploads instead of leaving them processing
+        var cancelHook = new Thread(() -> {
+            LOGGER.info("Cancelling uploads...");
+            scheduler.cancel();
+            if (packWriter != null) {
+                packer.shutdownNow();
+                packWriter.cancel();
+            }
+
+            scheduler.awaitCompletion();
+        });
+        Runtime.getRuntime().addShutdownHook(cancelHook);
+
         for (var file : upload) {
-            uploadFile(file);
+            if (file.isDirectory()) {
+                uploadDirectory(scheduler, packer, packWriter, file);
+            } else if (packWriter != null && file.isFile() && file.length() <= packThreshold) {
+                packFile(packer, packWriter, file, "/");
+            } else {
+                uploadFile(scheduler, file);
+            }
+        }
+
+        if (packWriter != null) {
+            try {
+                packer.shutdown();
+                packer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                packWriter.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted waiting for files to pack");
+            } catch (IOException e) {
+                LOGGER.error("Error closing the current container", e);
+            }
         }
+
+        scheduler.awaitCompletion();
+        Runtime.getRuntime().removeShutdownHook(cancelHook);
         LOGGER.info("Finished the uploading of {} file{} in {}ms", upload.length, upload.length == 1 ? "" : "s", System.currentTimeMillis() - start);
     }
 
-    private void uploadFile(File file) {
+    private void uploadFile(UploadScheduler scheduler, File file) {
+        uploadFile(scheduler, file, "/");
+    }
+
+    private void uploadFile(UploadScheduler scheduler, File file, String path) {
         if (!file.isFile()) {
             LOGGER.error("File '{}' does not exist!", file.getAbsolutePath());
             return;
         }
 
-        LOGGER.info("Uploading {}...", file.getName());
+        LOGGER.info("Queueing {}...", file.getName());
 
-        try {
-            long start = System.currentTimeMillis();
-            var name = FilenameUtils.getName(file.getAbsolutePath());
+        long start = System.currentTimeMillis();
+        scheduler.submit(file, path, sheetSize, compression ? ZIP : NONE, uploadType).whenComplete((ups, t) -> {
+            if (t != null) {
+                LOGGER.error("Error reading and uploading file " + file.getName(), t);
+            } else {
+                LOGGER.info("Uploaded {} in {}ms", ups.getId(), System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    /**
+     * Queues a file to be packed on the packing thread, the only thread adding to the {@link PackWriter}.
+     */
+    private void packFile(ExecutorService packer, PackWriter packWriter, File file, String path) {
+        packer.execute(() -> {
+            try {
+                packWriter.add(file, path);
+            } catch (IOException e) {
+                LOGGER.error("Error reading and packing file " + file.getName(), e);
+            }
+        });
+    }
 
-            var ups = sheetIO.uploadDataFile(name, "/", file.length(), sheetSize, compression ? ZIP : NONE, MULTIPART, new FileInputStream(file));
+    /**
+     * Uploads every file in a directory, walking it in parallel and queueing each file as it's found. Files keep their
+     * place in the tree through folders mirroring its directories. The walk never waits on an upload or the packer, so
+     * it's kept off of the I/O threads the uploads need.
+     */
+    private void uploadDirectory(UploadScheduler scheduler, ExecutorService packer, PackWriter packWriter, File directory) {
+        LOGGER.info("Walking {}...", directory.getAbsolutePath());
 
-            LOGGER.info("Uploaded {} in {}ms", ups.getId(), System.currentTimeMillis() - start);
-        } catch (IOException e) {
-            LOGGER.error("Error reading and uploading file", e);
-        }
+        long start = System.currentTimeMillis();
+        var files = new AtomicInteger();
+        var walkers = Executors.newFixedThreadPool(WALK_THREADS, runnable -> {
+            var thread = new Thread(runnable, "holysheet-walker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        new DirectoryWalker(walkers).walk(directory.toPath(), "/", new DirectoryWalker.Visitor() {
+            @Override
+            public void directory(String path) {
+                try {
+                    sheetIO.createFolder(path);
+                } catch (IOException e) {
+                    LOGGER.error("Couldn't create the folder " + path, e);
+                }
+            }
+
+            @Override
+            public void file(Path file, String path) {
+                files.incrementAndGet();
+                if (packWriter != null && file.toFile().length() <= packThreshold) {
+                    packFile(packer, packWriter, file.toFile(), path);
+                } else {
+                    uploadFile(scheduler, file.toFile(), path);
+                }
+            }
+        }).exceptionally(t -> {
+            LOGGER.error("Error walking " + directory.getAbsolutePath(), t);
+            return null;
+        }).join();
+
+        walkers.shutdown();
+
+        LOGGER.info("Walked {} files in {} in {}ms", files.get(), directory.getName(), System.currentTimeMillis() - start);
     }
 
     private void download() {
-        ForkJoinPool.commonPool().invokeAll(Arrays
+        CompletableFuture.allOf(Arrays
                 .stream(param.download)
                 .map(this::downloadIdName)
-                .map(f -> (Callable<Void>) f::join).collect(Collectors.toList()));
+                .toArray(CompletableFuture[]::new)).join();
     }
 
     private CompletableFuture<Void> downloadIdName(String idName) {
@@ -238,6 +606,25 @@ public class CommandHandler implements Runnable {
         });
     }
 
+    private void update() {
+        param.update.forEach((idName, file) -> {
+            if (!file.isFile()) {
+                LOGGER.error("File '{}' does not exist!", file.getAbsolutePath());
+                return;
+            }
+
+            var id = ID_PATTERN.matcher(idName).matches() ? idName : sheetManager.getIdOfName(idName).orElse(idName);
+
+            long start = System.currentTimeMillis();
+            try (var in = new FileInputStream(file)) {
+                var updated = sheetIO.updateDataFile(id, file.length(), sheetSize, in, null);
+                LOGGER.info("Updated {} in {}ms", updated.getId(), System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                LOGGER.error("An error occurred while updating the file " + idName, e);
+            }
+        });
+    }
+
     private void cloneFiles() {
         for (String idName : param.clone) {
             if (!ID_PATTERN.matcher(idName).matches()) {
@@ -263,36 +650,4 @@ public class CommandHandler implements Runnable {
             }
         }, 1, 3, TimeUnit.SECONDS);
     }
-
-    public static int getSheetCount(com.google.api.services.drive.model.File file) {
-        var string = file.getProperties().get("sheets");
-        if (!StringUtils.isNumeric(string)) {
-            return 0;
-        }
-
-        return Integer.parseInt(string);
-    }
-
-    public static String getPath(com.google.api.services.drive.model.File file) {
-        var path = file.getProperties().get("path");
-        if (path == null) {
-            return "";
-        }
-
-        return path;
-    }
-
-    public static boolean isStarred(com.google.api.services.drive.model.File file) {
-        var string = file.getProperties().get("starred");
-        return string != null && string.equals("true");
-    }
-
-    public static long getSize(com.google.api.services.drive.model.File file) {
-        var string = file.getProperties().get("size");
-        if (!StringUtils.isNumeric(string)) {
-            return 0;
-        }
-
-        return Long.parseLong(string);
-    }
 }
@@ -0,0 +1,161 @@
+package com.uddernetworks.holysheet.command;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.User;
+import com.uddernetworks.grpc.HolySheetServiceGrpc;
+import com.uddernetworks.grpc.HolySheetServiceGrpc.HolySheetServiceBlockingStub;
+import com.uddernetworks.grpc.HolysheetService.ListItem;
+import com.uddernetworks.grpc.HolysheetService.ListRequest;
+import com.uddernetworks.grpc.HolysheetService.RemoveRequest;
+import com.uddernetworks.grpc.HolysheetService.SearchRequest;
+import com.uddernetworks.grpc.HolysheetService.StreamDownloadRequest;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Compression;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
+import com.uddernetworks.holysheet.grpc.DaemonFile;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs CLI commands on a running daemon (See {@link com.uddernetworks.holysheet.grpc.DaemonFile}), which is already
+ * authenticated and keeps its connections and caches between commands. The daemon shares this machine, so uploads are
+ * read by it from their local paths, while downloads are streamed back to be written here.
+ */
+public class DaemonClient implements AutoCloseable {
+
+    private final ManagedChannel channel;
+    private final HolySheetServiceBlockingStub stub;
+
+    public DaemonClient(DaemonFile daemon) {
+        // Every call presents the daemon's secret, as it refuses any that don't
+        var headers = new Metadata();
+        headers.put(DaemonFile.SECRET_HEADER, daemon.getSecret());
+
+        this.channel = ManagedChannelBuilder.forAddress(InetAddress.getLoopbackAddress().getHostAddress(), daemon.getPort())
+                .usePlaintext()
+                .intercept(MetadataUtils.newAttachHeadersInterceptor(headers))
+                .build();
+        this.stub = HolySheetServiceGrpc.newBlockingStub(channel);
+    }
+
+    /**
+     * Lists the uploads at the root path.
+     *
+     * @return The uploads, with the fields of a {@link ListItem}
+     */
+    public List<File> listUploads() {
+        return stub.listFiles(ListRequest.newBuilder().setPath("/").build())
+                .getItemsList()
+                .stream()
+                .map(DaemonClient::toFile)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds the ID of an upload by name, preferring an exact name over one only containing it.
+     *
+     * @param name The name to match
+     * @return {@link Optional} wrapping the {@link String} id
+     */
+    public Optional<String> getIdOfName(String name) {
+        var items = stub.searchFiles(SearchRequest.newBuilder().setQuery(name).build()).getItemsList();
+        return items.stream()
+                .filter(item -> item.getName().equals(name))
+                .findFirst()
+                .or(() -> items.stream().findFirst())
+                .map(ListItem::getId);
+    }
+
+    /**
+     * Uploads a local file to the root path, blocking until complete.
+     *
+     * @param file        The file to upload
+     * @param sheetSize   The maximum size in bytes of a sheet
+     * @param compression The compression setting
+     * @param upload      The upload type
+     * @return The uploaded file
+     */
+    public ListItem upload(java.io.File file, long sheetSize, Compression compression, Upload upload) {
+        var responses = stub.uploadFile(UploadRequest.newBuilder()
+                .setName(file.getName())
+                .setPath("/")
+                .setLocalPath(file.getAbsolutePath())
+                .setFileSize(file.length())
+                .setSheetSize(sheetSize)
+                .setCompression(compression)
+                .setUpload(upload)
+                .build());
+
+        var item = ListItem.getDefaultInstance();
+        while (responses.hasNext()) {
+            var response = responses.next();
+            if (response.hasItem()) {
+                item = response.getItem();
+            }
+        }
+
+        return item;
+    }
+
+    /**
+     * Downloads an upload into the working directory, under its name.
+     *
+     * @param id The ID of the upload
+     * @return The downloaded file
+     * @throws IOException If writing the file fails
+     */
+    public ListItem download(String id) throws IOException {
+        var responses = stub.streamFile(StreamDownloadRequest.newBuilder().setId(id).build());
+        var item = responses.next().getItem();
+
+        try (var out = new FileOutputStream(item.getName())) {
+            while (responses.hasNext()) {
+                responses.next().getData().writeTo(out);
+            }
+        }
+
+        return item;
+    }
+
+    /**
+     * Moves an upload to the trash.
+     *
+     * @param id The ID of the upload
+     */
+    public void remove(String id) {
+        stub.removeFile(RemoveRequest.newBuilder().setId(id).build());
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static File toFile(ListItem item) {
+        return new File()
+                .setId(item.getId())
+                .setName(item.getName())
+                .setModifiedTime(new DateTime(item.getDate()))
+                .setOwners(List.of(new User().setDisplayName(item.getOwner()).setMe(item.getSelfOwned())))
+                .setWebViewLink(item.getDriveLink())
+                .setTrashed(item.getTrashed())
+                .setProperties(Map.of(
+                        "path", item.getPath(),
+                        "size", String.valueOf(item.getSize()),
+                        "sheets", String.valueOf(item.getSheets()),
+                        "starred", String.valueOf(item.getStarred())
+                ));
+    }
+}
@@ -0,0 +1,110 @@
+package com.uddernetworks.holysheet.encoding;
+
+import java.io.ByteArrayOutputStream;
+
+import static com.uddernetworks.holysheet.encoding.DecodingOutputStream.BASE;
+import static com.uddernetworks.holysheet.encoding.DecodingOutputStream.DECODING_TABLE;
+
+/**
+ * A single chunk decoded independently of the others, given the bit offset it starts at in the unencoded data (See
+ * {@link EncodingOutputStream#getChunkBitOffset()}). As chunks are not split on byte boundaries, the first byte may
+ * only hold the high bits of a byte shared with the previous chunk (The rest being zero), and the low bits of a byte
+ * shared with the next chunk are kept separately as the tail.
+ */
+public class DecodedChunk {
+
+    private final long position;
+    private final byte[] bytes;
+    private final int headBits;
+    private final int tail;
+    private final int tailBits;
+
+    private DecodedChunk(long position, byte[] bytes, int headBits, int tail, int tailBits) {
+        this.position = position;
+        this.bytes = bytes;
+        this.headBits = headBits;
+        this.tail = tail;
+        this.tailBits = tailBits;
+    }
+
+    /**
+     * Decodes a chunk's encoded bytes, ignoring newline/carriage returns.
+     *
+     * @param encoded   The encoded bytes of the chunk
+     * @param bitOffset The bit offset of the chunk in the unencoded data
+     * @param last      If this is the last chunk, meaning any trailing bits are padding
+     * @return The decoded chunk
+     */
+    public static DecodedChunk decode(byte[] encoded, long bitOffset, boolean last) {
+        var out = new ByteArrayOutputStream((int) (encoded.length * 0.82));
+        int headBits = (int) (bitOffset % 8);
+
+        // The low bits of the first byte belong to the previous chunk, so are left as zero
+        int dbq = 0;
+        int dn = headBits;
+        int dv = -1;
+
+        for (byte b : encoded) {
+            if (b == 10 || b == 13) continue;
+
+            if (dv == -1) {
+                dv = DECODING_TABLE[b & 255];
+            } else {
+                dv += DECODING_TABLE[b & 255] * BASE;
+                dbq |= dv << dn;
+                dn += (dv & 8191) > 88 ? 13 : 14;
+                do {
+                    out.write((byte) dbq);
+                    dbq >>= 8;
+                    dn -= 8;
+                } while (dn > 7);
+                dv = -1;
+            }
+        }
+
+        if (last) {
+            if (dv != -1) {
+                out.write((byte) (dbq | dv << dn));
+            }
+
+            return new DecodedChunk(bitOffset / 8, out.toByteArray(), headBits, 0, 0);
+        }
+
+        return new DecodedChunk(bitOffset / 8, out.toByteArray(), headBits, dbq & ((1 << dn) - 1), dn);
+    }
+
+    /**
+     * @return The byte position of the first decoded byte in the unencoded data
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The decoded bytes, the first of which is partial if {@link #getHeadBits()} is above 0
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The amount of low bits of the first byte belonging to the previous chunk
+     */
+    public int getHeadBits() {
+        return headBits;
+    }
+
+    /**
+     * @return The low bits of the byte directly after {@link #getBytes()}, shared with the next chunk
+     */
+    public int getTail() {
+        return tail;
+    }
+
+    /**
+     * @return The amount of bits in {@link #getTail()}
+     */
+    public int getTailBits() {
+        return tailBits;
+    }
+}
@@ -24,19 +24,23 @@ public class EncodingOutputStream extends FilterOutputStream {
 //    public static final int CELL_WIDTH = 0x7FFF; // Half of 0xFFFF
 //    public static final int CELL_WIDTH = 5; // Half of 0xFFFF
 
-    private final long maxLength;
+    private volatile long maxLength;
     private int chunkIndex = 0;
 
     private BiConsumer<Integer, byte[]> chunkConsumer;
     private Runnable onClose;
 
     private long length = 0;
+    private long inputLength = 0;
+    private long chunkBitOffset = 0;
     private int bufferLength = 0;
     private int lineIndex = 0;
 
     private int ebq = 0;
     private int en = 0;
 
+    private volatile boolean cancelled;
+
     private ByteArrayOutputStream buffer;
 
     public EncodingOutputStream(long maxLength) {
@@ -52,18 +56,22 @@ public class EncodingOutputStream extends FilterOutputStream {
 
     @Override
     public void write(int b) {
+        inputLength++;
         ebq |= (b & 255) << en;
         en += 8;
         if (en > 13) {
             int ev = ebq & 8191;
+            int bits;
 
             if (ev > 88) {
                 ebq >>= 13;
                 en -= 13;
+                bits = 13;
             } else {
                 ev = ebq & 16383;
                 ebq >>= 14;
                 en -= 14;
+                bits = 14;
             }
 
             var first = ENCODING_TABLE[ev % BASE];
@@ -77,6 +85,9 @@ public class EncodingOutputStream extends FilterOutputStream {
                         bufferLength = 0;
                         chunkConsumer.accept(chunkIndex++, buffer.toByteArray());
                         buffer.reset();
+
+                        // The next chunk starts with the current pair, so excludes its bits and any still queued
+                        chunkBitOffset = inputLength * 8 - en - bits;
                     } else {
                         buffer.write('\n');
                         length++;
@@ -96,13 +107,17 @@ public class EncodingOutputStream extends FilterOutputStream {
 
     @Override
     public void write(byte[] data, int offset, int length) throws IOException {
-        for (int i = offset; i < length; ++i) {
+        throwIfCancelled();
+
+        for (int i = offset; i < offset + length; ++i) {
             write(data[i]);
         }
     }
 
     @Override
     public void flush() throws IOException {
+        throwIfCancelled();
+
         if (en > 0) {
             buffer.write(ENCODING_TABLE[ebq % BASE]);
             length++;
@@ -123,6 +138,39 @@ public class EncodingOutputStream extends FilterOutputStream {
         }
     }
 
+    /**
+     * Cancels the stream. The next write or flush drops any buffered data and throws, so no more chunks are given to
+     * the consumer. This may be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void throwIfCancelled() throws IOException {
+        if (cancelled) {
+            buffer = new ByteArrayOutputStream(0);
+            bufferLength = 0;
+            throw new IOException("Stream has been cancelled");
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Sets the size chunks are split at, taking effect from the current chunk.
+     *
+     * @param maxLength The length in bytes a chunk is ended at
+     */
+    public void setMaxLength(long maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    public long getMaxLength() {
+        return maxLength;
+    }
+
     public void setChunkConsumer(BiConsumer<Integer, byte[]> chunkConsumer) {
         this.chunkConsumer = chunkConsumer;
     }
@@ -135,6 +183,26 @@ public class EncodingOutputStream extends FilterOutputStream {
         return length;
     }
 
+    /**
+     * Gets the amount of unencoded bytes written to the stream.
+     *
+     * @return The unencoded length
+     */
+    public long getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * Gets the offset in bits into the unencoded data at which the current chunk starts. When read inside of the
+     * chunk consumer, this is the offset of the chunk being consumed. As chunks are not split on byte boundaries, the
+     * first and last byte of a chunk may be shared with its neighbours.
+     *
+     * @return The bit offset of the current chunk
+     */
+    public long getChunkBitOffset() {
+        return chunkBitOffset;
+    }
+
     public int getChunkIndex() {
         return chunkIndex;
     }
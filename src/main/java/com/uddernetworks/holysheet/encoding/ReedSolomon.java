@@ -0,0 +1,219 @@
+package com.uddernetworks.holysheet.encoding;
+
+/**
+ * A systematic Reed-Solomon erasure code over GF(256). Data is split into a fixed number of data shards, from which
+ * parity shards are computed such that any data shards lost can be rebuilt from any others, as long as as many shards
+ * remain as there are data shards.
+ *
+ * The coding matrix is a Vandermonde matrix multiplied by the inverse of its top square, so encoding leaves the data
+ * shards unchanged and any square picked from its rows stays invertible.
+ */
+public class ReedSolomon {
+
+    private static final int POLYNOMIAL = 0x11D;
+
+    private static final int[] EXP = new int[510];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MULTIPLY = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            EXP[i + 255] = x;
+            LOG[x] = i;
+
+            x <<= 1;
+            if (x >= 256) {
+                x ^= POLYNOMIAL;
+            }
+        }
+
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                MULTIPLY[a][b] = (byte) multiply(a, b);
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final int[][] matrix;
+
+    /**
+     * Creates a {@link ReedSolomon} code.
+     *
+     * @param dataShards   The amount of data shards
+     * @param parityShards The amount of parity shards
+     */
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards <= 0 || parityShards < 0 || dataShards + parityShards > 256) {
+            throw new IllegalArgumentException("Invalid shard counts " + dataShards + "+" + parityShards);
+        }
+
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+
+        var vandermonde = new int[dataShards + parityShards][dataShards];
+        for (int row = 0; row < vandermonde.length; row++) {
+            for (int column = 0; column < dataShards; column++) {
+                vandermonde[row][column] = power(row, column);
+            }
+        }
+
+        var top = new int[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = multiply(vandermonde, invert(top));
+    }
+
+    /**
+     * Computes the parity shards of data shards.
+     *
+     * @param data   The data shards, each at least the given length
+     * @param length The length of every shard
+     * @return The parity shards
+     */
+    public byte[][] encode(byte[][] data, int length) {
+        var parity = new byte[parityShards][length];
+        for (int i = 0; i < parityShards; i++) {
+            var row = matrix[dataShards + i];
+            for (int column = 0; column < dataShards; column++) {
+                multiplyAdd(MULTIPLY[row[column]], data[column], parity[i], length);
+            }
+        }
+
+        return parity;
+    }
+
+    /**
+     * Rebuilds missing data shards in place, from any data shards and parity shards present.
+     *
+     * @param shards The data shards followed by the parity shards, those missing being null
+     * @param length The length of every shard
+     * @throws IllegalArgumentException If fewer shards are present than there are data shards
+     */
+    public void reconstruct(byte[][] shards, int length) {
+        var rows = new int[dataShards];
+        int present = 0;
+        for (int i = 0; i < shards.length && present < dataShards; i++) {
+            if (shards[i] != null) {
+                rows[present++] = i;
+            }
+        }
+
+        if (present < dataShards) {
+            throw new IllegalArgumentException("Only " + present + " of the " + dataShards + " shards needed are present");
+        }
+
+        var square = new int[dataShards][];
+        for (int i = 0; i < dataShards; i++) {
+            square[i] = matrix[rows[i]];
+        }
+
+        var decode = invert(square);
+        for (int shard = 0; shard < dataShards; shard++) {
+            if (shards[shard] != null) {
+                continue;
+            }
+
+            var rebuilt = new byte[length];
+            for (int i = 0; i < dataShards; i++) {
+                multiplyAdd(MULTIPLY[decode[shard][i]], shards[rows[i]], rebuilt, length);
+            }
+
+            shards[shard] = rebuilt;
+        }
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    private static void multiplyAdd(byte[] table, byte[] in, byte[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            out[i] ^= table[in[i] & 255];
+        }
+    }
+
+    private static int multiply(int a, int b) {
+        return a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int power(int a, int n) {
+        if (n == 0) {
+            return 1;
+        }
+
+        return a == 0 ? 0 : EXP[(LOG[a] * n) % 255];
+    }
+
+    private static int[][] multiply(int[][] a, int[][] b) {
+        var result = new int[a.length][b[0].length];
+        for (int row = 0; row < a.length; row++) {
+            for (int column = 0; column < b[0].length; column++) {
+                int sum = 0;
+                for (int i = 0; i < b.length; i++) {
+                    sum ^= multiply(a[row][i], b[i][column]);
+                }
+
+                result[row][column] = sum;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Inverts a square matrix by Gauss-Jordan elimination.
+     */
+    private static int[][] invert(int[][] matrix) {
+        int size = matrix.length;
+        var work = new int[size][size * 2];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(matrix[row], 0, work[row], 0, size);
+            work[row][size + row] = 1;
+        }
+
+        for (int column = 0; column < size; column++) {
+            int pivot = column;
+            while (pivot < size && work[pivot][column] == 0) {
+                pivot++;
+            }
+
+            if (pivot == size) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+
+            var swap = work[column];
+            work[column] = work[pivot];
+            work[pivot] = swap;
+
+            int scale = EXP[255 - LOG[work[column][column]]];
+            for (int i = 0; i < size * 2; i++) {
+                work[column][i] = multiply(work[column][i], scale);
+            }
+
+            for (int row = 0; row < size; row++) {
+                int factor = work[row][column];
+                if (row == column || factor == 0) {
+                    continue;
+                }
+
+                for (int i = 0; i < size * 2; i++) {
+                    work[row][i] ^= multiply(factor, work[column][i]);
+                }
+            }
+        }
+
+        var inverse = new int[size][size];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(work[row], size, inverse[row], 0, size);
+        }
+
+        return inverse;
+    }
+}
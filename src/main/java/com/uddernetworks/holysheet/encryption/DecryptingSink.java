@@ -0,0 +1,140 @@
+package com.uddernetworks.holysheet.encryption;
+
+import com.uddernetworks.holysheet.io.ByteSink;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static com.uddernetworks.holysheet.encryption.SegmentCipher.SEALED_SEGMENT_SIZE;
+
+/**
+ * Decrypts data encrypted by an {@link EncryptingOutputStream} as it's written, writing the decrypted data to another
+ * {@link ByteSink} in order. Writes must start at the beginning of a segment, but not necessarily the first, so a
+ * range of the data can be read by only decrypting the segments it covers. Segments are opened on the given executor,
+ * several at once, with writes only held back once too many are waiting to be written. Data ending before the last
+ * segment fails {@link #finish()}, so a truncated file is never taken as complete.
+ */
+public class DecryptingSink implements ByteSink {
+
+    private static final int MAX_OPENING = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final SegmentCipher cipher;
+    private final long sealedSize;
+    private final ByteSink sink;
+    private final Executor executor;
+
+    private final Deque<CompletableFuture<Void>> opening = new ArrayDeque<>();
+    private CompletableFuture<Void> written = DONE;
+    private byte[] segment = new byte[SEALED_SEGMENT_SIZE];
+    private int length;
+    private long index;
+    private long skip;
+    private boolean lastOpened;
+
+    /**
+     * Creates a {@link DecryptingSink}.
+     *
+     * @param cipher       The cipher the data was encrypted with
+     * @param firstSegment The index of the segment the first write starts at
+     * @param sealedSize   The size of all the encrypted data, not only what will be written
+     * @param skip         The amount of decrypted bytes of the first segment to not write on
+     * @param sink         The {@link ByteSink} to write the decrypted data to
+     * @param executor     The executor to open segments on
+     */
+    public DecryptingSink(SegmentCipher cipher, long firstSegment, long sealedSize, long skip, ByteSink sink, Executor executor) {
+        this.cipher = cipher;
+        this.index = firstSegment;
+        this.sealedSize = sealedSize;
+        this.skip = skip;
+        this.sink = sink;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the index of the segment holding a decrypted byte.
+     *
+     * @param position The position of the byte in the decrypted data
+     * @return The index of the segment
+     */
+    public static long getSegment(long position) {
+        return position / SegmentCipher.SEGMENT_SIZE;
+    }
+
+    /**
+     * Gets the position of a segment in the encrypted data.
+     *
+     * @param segment The index of the segment
+     * @return The position of the segment's first byte
+     */
+    public static long getSealedPosition(long segment) {
+        return segment * SEALED_SEGMENT_SIZE;
+    }
+
+    @Override
+    public CompletableFuture<Void> write(byte[] bytes, int offset, int length) {
+        boolean last = false;
+        while (length > 0) {
+            int copy = (int) Math.min(length, getSegmentLength() - this.length);
+            System.arraycopy(bytes, offset, segment, this.length, copy);
+            this.length += copy;
+            offset += copy;
+            length -= copy;
+
+            if (this.length == getSegmentLength()) {
+                last = isLast();
+                open(last);
+            }
+        }
+
+        // Once the last segment is opened, the data is only fully written once every segment is
+        if (last) {
+            return written;
+        }
+
+        opening.removeIf(CompletableFuture::isDone);
+        return opening.size() > MAX_OPENING ? opening.peek() : DONE;
+    }
+
+    /**
+     * Gets a future completed once every segment has been written, to be called once no more data is coming.
+     *
+     * @return A {@link CompletableFuture} completed once everything is written, or failed if the data ended before
+     * the last segment, as when it's been truncated
+     */
+    public CompletableFuture<Void> finish() {
+        if (!lastOpened) {
+            long received = getSealedPosition(index) + length;
+            return CompletableFuture.failedFuture(new IOException("Encrypted data ended at byte " + received + " of " + sealedSize + ", it may have been truncated"));
+        }
+
+        return written;
+    }
+
+    private void open(boolean last) {
+        lastOpened |= last;
+        var sealed = segment;
+        int sealedLength = length;
+        long segmentIndex = index++;
+        int from = (int) skip;
+
+        var plain = CompletableFuture.supplyAsync(() -> cipher.open(segmentIndex, sealed, 0, sealedLength, last), executor);
+        written = written.thenCompose($ -> plain).thenCompose(bytes -> from >= bytes.length ? DONE : sink.write(bytes, from, bytes.length - from));
+        opening.add(written);
+
+        segment = new byte[SEALED_SEGMENT_SIZE];
+        length = 0;
+        skip = 0;
+    }
+
+    private boolean isLast() {
+        return getSealedPosition(index + 1) >= sealedSize;
+    }
+
+    private long getSegmentLength() {
+        return Math.min(SEALED_SEGMENT_SIZE, sealedSize - getSealedPosition(index));
+    }
+}
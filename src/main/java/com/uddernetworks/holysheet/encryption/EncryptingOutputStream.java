@@ -0,0 +1,139 @@
+package com.uddernetworks.holysheet.encryption;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static com.uddernetworks.holysheet.encryption.SegmentCipher.SEGMENT_SIZE;
+
+/**
+ * Encrypts everything written to it with a {@link SegmentCipher} before writing it on. Full segments are sealed on the
+ * given executor, several at once, and written on in order, so encryption keeps up with the data as long as there are
+ * cores to spare. A segment is only sealed once more data follows it, as the last segment is sealed differently.
+ *
+ * The last segment is only written by {@link #finish()}. {@link #flush()} does nothing, as flushing the stream being
+ * written to may end it, such as with an {@link com.uddernetworks.holysheet.encoding.EncodingOutputStream}.
+ */
+public class EncryptingOutputStream extends FilterOutputStream {
+
+    private static final int MAX_SEALING = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final SegmentCipher cipher;
+    private final Executor executor;
+
+    private final Deque<CompletableFuture<byte[]>> sealing = new ArrayDeque<>();
+    private byte[] segment = new byte[SEGMENT_SIZE];
+    private int length;
+    private long index;
+    private long inputLength;
+    private boolean finished;
+
+    /**
+     * Creates an {@link EncryptingOutputStream}.
+     *
+     * @param out      The stream to write the encrypted data to
+     * @param cipher   The cipher to encrypt with, used for nothing else
+     * @param executor The executor to seal segments on
+     */
+    public EncryptingOutputStream(OutputStream out, SegmentCipher cipher, Executor executor) {
+        super(out);
+        this.cipher = cipher;
+        this.executor = executor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+
+        inputLength += len;
+        while (len > 0) {
+            if (length == SEGMENT_SIZE) {
+                seal(false);
+            }
+
+            int copy = Math.min(len, SEGMENT_SIZE - length);
+            System.arraycopy(b, off, segment, length, copy);
+            length += copy;
+            off += copy;
+            len -= copy;
+        }
+    }
+
+    /**
+     * Does nothing, see {@link #finish()}.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Seals the last segment and writes every segment left, without flushing or closing the underlying stream.
+     *
+     * @throws IOException If writing fails
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+        seal(true);
+        while (!sealing.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+
+    /**
+     * @return The amount of bytes written to this stream, before encryption
+     */
+    public long getInputLength() {
+        return inputLength;
+    }
+
+    private void seal(boolean last) throws IOException {
+        var plain = segment;
+        int plainLength = length;
+        long segmentIndex = index++;
+
+        sealing.add(CompletableFuture.supplyAsync(() -> cipher.seal(segmentIndex, plain, 0, plainLength, last), executor));
+        segment = new byte[SEGMENT_SIZE];
+        length = 0;
+
+        while (sealing.size() > MAX_SEALING) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        byte[] sealed;
+        try {
+            sealed = sealing.remove().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+
+        out.write(sealed);
+    }
+}
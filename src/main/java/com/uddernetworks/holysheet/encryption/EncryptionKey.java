@@ -0,0 +1,115 @@
+package com.uddernetworks.holysheet.encryption;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.EnumSet;
+
+/**
+ * A 256-bit AES key kept in a local file, as raw bytes or Base64. The key never leaves this machine; uploads only
+ * reference it by its ID, derived from a hash of the key.
+ */
+public class EncryptionKey {
+
+    private static final int KEY_SIZE = 32;
+    private static final int ID_LENGTH = 16;
+
+    private final SecretKeySpec key;
+    private final String id;
+
+    private EncryptionKey(byte[] bytes) {
+        if (bytes.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Keys must be " + KEY_SIZE + " bytes, found " + bytes.length);
+        }
+
+        this.key = new SecretKeySpec(bytes, "AES");
+        this.id = createId(bytes);
+    }
+
+    /**
+     * Loads a key from a file.
+     *
+     * @param path The file holding the key
+     * @return The key
+     * @throws IOException If the file can't be read
+     */
+    public static EncryptionKey load(Path path) throws IOException {
+        var bytes = Files.readAllBytes(path);
+        if (bytes.length == KEY_SIZE) {
+            return new EncryptionKey(bytes);
+        }
+
+        try {
+            return new EncryptionKey(Base64.getDecoder().decode(new String(bytes, StandardCharsets.US_ASCII).trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid key file " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Generates a new random key, writing it to a file readable only by its owner where supported.
+     *
+     * @param path The file to write the key to, which must not exist
+     * @return The key
+     * @throws IOException If the file already exists, or can't be written
+     */
+    public static EncryptionKey generate(Path path) throws IOException {
+        var bytes = new byte[KEY_SIZE];
+        new SecureRandom().nextBytes(bytes);
+
+        var encoded = ByteBuffer.wrap(Base64.getEncoder().encode(bytes));
+        try (var channel = createPrivate(path)) {
+            while (encoded.hasRemaining()) {
+                channel.write(encoded);
+            }
+        }
+
+        return new EncryptionKey(bytes);
+    }
+
+    /**
+     * Creates a file that doesn't exist yet, created readable only by its owner so it's never readable by others, even
+     * briefly.
+     */
+    private static SeekableByteChannel createPrivate(Path path) throws IOException {
+        var options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            return Files.newByteChannel(path, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ignored) {
+            // Not a POSIX filesystem
+            return Files.newByteChannel(path, options);
+        }
+    }
+
+    private static String createId(byte[] bytes) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update("holysheet-key-id".getBytes(StandardCharsets.US_ASCII));
+            var hash = digest.digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, ID_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    SecretKeySpec getKey() {
+        return key;
+    }
+
+    /**
+     * @return The ID of the key, recorded on what it encrypted to find the key needed
+     */
+    public String getId() {
+        return id;
+    }
+}
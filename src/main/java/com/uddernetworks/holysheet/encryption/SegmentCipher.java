@@ -0,0 +1,154 @@
+package com.uddernetworks.holysheet.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Encrypts data as a sequence of independently sealed AES-GCM segments, so segments can be encrypted and decrypted in
+ * parallel and any range read by only decrypting the segments it covers. Every segment is {@link #SEGMENT_SIZE} bytes
+ * but the last, and is followed by its tag.
+ *
+ * Each segment's nonce is a random prefix chosen per upload, followed by the segment's index and a flag set only on
+ * the last segment. Segments therefore can't be reordered, and the data can't be truncated at a segment boundary.
+ * The prefix and the key's ID are recorded on the parent, see {@link #getProperties()}.
+ */
+public class SegmentCipher {
+
+    public static final String SCHEME = "aes-gcm-1m";
+    public static final int SEGMENT_SIZE = 1 << 20;
+    public static final int TAG_SIZE = 16;
+    public static final int SEALED_SEGMENT_SIZE = SEGMENT_SIZE + TAG_SIZE;
+
+    private static final int PREFIX_SIZE = 7;
+    private static final int NONCE_SIZE = 12;
+
+    private final EncryptionKey key;
+    private final byte[] noncePrefix;
+
+    private SegmentCipher(EncryptionKey key, byte[] noncePrefix) {
+        this.key = key;
+        this.noncePrefix = noncePrefix;
+    }
+
+    /**
+     * Creates a cipher for a new upload, with a new random nonce prefix. A cipher must never encrypt two uploads.
+     *
+     * @param key The key to encrypt with
+     * @return The cipher
+     */
+    public static SegmentCipher create(EncryptionKey key) {
+        var prefix = new byte[PREFIX_SIZE];
+        new SecureRandom().nextBytes(prefix);
+        return new SegmentCipher(key, prefix);
+    }
+
+    /**
+     * Gets the cipher an upload was encrypted with, from its parent's properties.
+     *
+     * @param properties The parent's properties
+     * @param key        The key to decrypt with, or null if none was given
+     * @return The cipher
+     */
+    public static SegmentCipher forProperties(Map<String, String> properties, EncryptionKey key) {
+        var scheme = properties.get("encryption");
+        if (!SCHEME.equals(scheme)) {
+            throw new RuntimeException("Unsupported encryption " + scheme);
+        }
+
+        var keyId = properties.get("keyId");
+        if (key == null) {
+            throw new RuntimeException("The file is encrypted with key " + keyId + ", but no key was given");
+        }
+
+        if (!key.getId().equals(keyId)) {
+            throw new RuntimeException("The file is encrypted with key " + keyId + ", not the given key " + key.getId());
+        }
+
+        return new SegmentCipher(key, Base64.getUrlDecoder().decode(properties.get("nonce")));
+    }
+
+    /**
+     * Checks if an upload is encrypted.
+     *
+     * @param properties The parent's properties
+     * @return If encrypted
+     */
+    public static boolean isEncrypted(Map<String, String> properties) {
+        return properties.containsKey("encryption");
+    }
+
+    /**
+     * @return The properties to record on the parent to decrypt it again
+     */
+    public Map<String, String> getProperties() {
+        return Map.of(
+                "encryption", SCHEME,
+                "keyId", key.getId(),
+                "nonce", Base64.getUrlEncoder().withoutPadding().encodeToString(noncePrefix)
+        );
+    }
+
+    /**
+     * Encrypts a segment.
+     *
+     * @param segment The index of the segment
+     * @param plain   The array holding the segment
+     * @param offset  The offset of the segment in the array
+     * @param length  The length of the segment, {@link #SEGMENT_SIZE} unless last
+     * @param last    If this is the last segment
+     * @return The encrypted segment followed by its tag
+     */
+    public byte[] seal(long segment, byte[] plain, int offset, int length, boolean last) {
+        try {
+            var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key.getKey(), new GCMParameterSpec(TAG_SIZE * 8, getNonce(segment, last)));
+            return cipher.doFinal(plain, offset, length);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Couldn't encrypt segment " + segment, e);
+        }
+    }
+
+    /**
+     * Decrypts and authenticates a segment.
+     *
+     * @param segment The index of the segment
+     * @param sealed  The array holding the encrypted segment and its tag
+     * @param offset  The offset of the segment in the array
+     * @param length  The length of the segment and its tag
+     * @param last    If this is the last segment
+     * @return The decrypted segment
+     */
+    public byte[] open(long segment, byte[] sealed, int offset, int length, boolean last) {
+        try {
+            var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key.getKey(), new GCMParameterSpec(TAG_SIZE * 8, getNonce(segment, last)));
+            return cipher.doFinal(sealed, offset, length);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Segment " + segment + " couldn't be decrypted, it may have been modified", e);
+        }
+    }
+
+    private byte[] getNonce(long segment, boolean last) {
+        return ByteBuffer.allocate(NONCE_SIZE)
+                .put(noncePrefix)
+                .putInt((int) segment)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    /**
+     * Gets the encrypted size of data.
+     *
+     * @param plainSize The size of the data
+     * @return The size once encrypted, including every segment's tag
+     */
+    public static long getSealedSize(long plainSize) {
+        long segments = Math.max(1, (plainSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        return plainSize + segments * TAG_SIZE;
+    }
+}
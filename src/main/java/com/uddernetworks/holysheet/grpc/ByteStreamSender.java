@@ -0,0 +1,103 @@
+package com.uddernetworks.holysheet.grpc;
+
+import com.google.protobuf.ByteString;
+import com.uddernetworks.grpc.HolysheetService.StreamDownloadResponse;
+import com.uddernetworks.holysheet.io.ByteSink;
+import io.grpc.stub.ServerCallStreamObserver;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link ByteSink} sending bytes to a client as {@link StreamDownloadResponse}s, split into messages small enough
+ * for gRPC. Messages are only sent while the client is ready to receive them, and a write only completes once all of
+ * its bytes are sent, so a slow client holds back the download instead of being buffered for.
+ */
+class ByteStreamSender implements ByteSink {
+
+    private static final int MESSAGE_SIZE = 64 * 1024;
+
+    private final ServerCallStreamObserver<StreamDownloadResponse> response;
+
+    private byte[] pending;
+    private int pendingOffset;
+    private int pendingEnd;
+    private long position;
+    private CompletableFuture<Void> pendingWrite;
+    private boolean cancelled;
+
+    /**
+     * Creates a {@link ByteStreamSender}. This must be created during the call, as it sets the call's on ready handler.
+     *
+     * @param response The response to send to
+     * @param position The position in the file of the first byte sent
+     */
+    ByteStreamSender(ServerCallStreamObserver<StreamDownloadResponse> response, long position) {
+        this.response = response;
+        this.position = position;
+        response.setOnReadyHandler(this::drain);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(byte[] bytes, int offset, int length) {
+        var write = new CompletableFuture<Void>();
+        synchronized (this) {
+            if (cancelled) {
+                write.completeExceptionally(new CancellationException("Client cancelled the stream"));
+                return write;
+            }
+
+            pending = bytes;
+            pendingOffset = offset;
+            pendingEnd = offset + length;
+            pendingWrite = write;
+        }
+
+        drain();
+        return write;
+    }
+
+    /**
+     * Fails any write waiting on the client, once the client has cancelled.
+     */
+    void cancel() {
+        CompletableFuture<Void> write;
+        synchronized (this) {
+            cancelled = true;
+            write = pendingWrite;
+            pending = null;
+            pendingWrite = null;
+        }
+
+        if (write != null) {
+            write.completeExceptionally(new CancellationException("Client cancelled the stream"));
+        }
+    }
+
+    private void drain() {
+        CompletableFuture<Void> completed;
+        synchronized (this) {
+            while (pending != null && pendingOffset < pendingEnd && response.isReady()) {
+                int length = Math.min(MESSAGE_SIZE, pendingEnd - pendingOffset);
+                response.onNext(StreamDownloadResponse.newBuilder()
+                        .setOffset(position)
+                        .setData(ByteString.copyFrom(pending, pendingOffset, length))
+                        .build());
+
+                pendingOffset += length;
+                position += length;
+            }
+
+            if (pending == null || pendingOffset < pendingEnd) {
+                return;
+            }
+
+            // Completed outside of the lock, as completing may write again
+            completed = pendingWrite;
+            pending = null;
+            pendingWrite = null;
+        }
+
+        completed.complete(null);
+    }
+}
@@ -0,0 +1,36 @@
+package com.uddernetworks.holysheet.grpc;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Rejects calls to an advertised daemon that don't present its secret (See {@link DaemonFile}), so only those able to
+ * read the daemon file can use the account it serves.
+ */
+class DaemonAuthInterceptor implements ServerInterceptor {
+
+    private final byte[] secret;
+
+    DaemonAuthInterceptor(String secret) {
+        this.secret = secret.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        var given = headers.get(DaemonFile.SECRET_HEADER);
+
+        // Compared in constant time, so the secret can't be guessed a byte at a time
+        if (given == null || !MessageDigest.isEqual(secret, given.getBytes(StandardCharsets.US_ASCII))) {
+            call.close(Status.UNAUTHENTICATED.withDescription("Missing or wrong daemon secret"), new Metadata());
+            return new ServerCall.Listener<>() {};
+        }
+
+        return next.startCall(call, headers);
+    }
+}
@@ -0,0 +1,153 @@
+package com.uddernetworks.holysheet.grpc;
+
+import io.grpc.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Optional;
+
+/**
+ * The file a locally authenticated gRPC server advertises itself in, holding its port, process ID and a secret, so CLI
+ * commands can forward to it instead of starting up and authenticating themselves. A file left behind by a server that
+ * died is ignored, as its process is no longer alive.
+ *
+ * The daemon serves its account to any call without a token, so it only listens on the loopback address, and every
+ * call must present the secret (See {@link DaemonAuthInterceptor}). The file is readable only by its owner, so only
+ * the user running the daemon can use it.
+ */
+public class DaemonFile {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonFile.class);
+
+    /**
+     * The header calls to the daemon present its secret in.
+     */
+    public static final Metadata.Key<String> SECRET_HEADER = Metadata.Key.of("holysheet-daemon-secret", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final int CONNECT_TIMEOUT_MS = 500;
+    private static final int SECRET_SIZE = 32;
+    private static final Path PATH = Paths.get(System.getProperty("user.home"), ".holysheet", "daemon");
+
+    private final int port;
+    private final String secret;
+
+    private DaemonFile(int port, String secret) {
+        this.port = port;
+        this.secret = secret;
+    }
+
+    /**
+     * @return A new random secret for a daemon
+     */
+    public static String createSecret() {
+        var bytes = new byte[SECRET_SIZE];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Advertises this process as the daemon on the given port, until it exits.
+     *
+     * @param port   The port of the gRPC server
+     * @param secret The secret calls must present, from {@link #createSecret()}
+     */
+    public static void write(int port, String secret) {
+        var pid = ProcessHandle.current().pid();
+
+        try {
+            if (!Files.isDirectory(PATH.getParent())) {
+                createPrivateDirectory(PATH.getParent());
+            }
+
+            // Replaced rather than written over, so a file left readable by others is never reused
+            Files.deleteIfExists(PATH);
+
+            var contents = ByteBuffer.wrap((port + " " + pid + " " + secret).getBytes(StandardCharsets.US_ASCII));
+            try (var channel = createPrivate(PATH)) {
+                while (contents.hasRemaining()) {
+                    channel.write(contents);
+                }
+            }
+
+            PATH.toFile().deleteOnExit();
+            LOGGER.info("Advertising daemon on port {}", port);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't write the daemon file " + PATH, e);
+        }
+    }
+
+    /**
+     * Reads the daemon file of a running daemon that is accepting connections.
+     *
+     * @return The {@link DaemonFile}, if a daemon is running
+     */
+    public static Optional<DaemonFile> read() {
+        if (!Files.isRegularFile(PATH)) {
+            return Optional.empty();
+        }
+
+        try {
+            var parts = Files.readString(PATH).trim().split(" ");
+            if (parts.length != 3 || !ProcessHandle.of(Long.parseLong(parts[1])).map(ProcessHandle::isAlive).orElse(false)) {
+                return Optional.empty();
+            }
+
+            // The process ID may have been reused, so make sure the server is still listening
+            var port = Integer.parseInt(parts[0]);
+            try (var socket = new Socket()) {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+
+            return Optional.of(new DaemonFile(port, parts[2]));
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Ignoring unreadable daemon file {}", PATH);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Creates a file that doesn't exist yet, readable only by its owner from the start where supported.
+     */
+    private static SeekableByteChannel createPrivate(Path path) throws IOException {
+        var options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            return Files.newByteChannel(path, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ignored) {
+            // Not a POSIX filesystem
+            return Files.newByteChannel(path, options);
+        }
+    }
+
+    private static void createPrivateDirectory(Path path) throws IOException {
+        try {
+            Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException ignored) {
+            Files.createDirectories(path);
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+}
@@ -5,11 +5,14 @@ import com.uddernetworks.holysheet.HolySheet;
 import com.uddernetworks.holysheet.SheetManager;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
-import io.grpc.ServerProvider;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.concurrent.TimeUnit;
 
 public class GRPCClient {
@@ -26,11 +29,33 @@ public class GRPCClient {
     }
 
     public void start(int port) {
+        start(port, false);
+    }
+
+    /**
+     * Starts the server, blocking until it's shut down.
+     *
+     * @param port      The port to listen on
+     * @param advertise If the server should be advertised in the {@link DaemonFile} for CLI commands to forward to,
+     *                  only listening on the loopback address and to calls presenting its secret
+     */
+    public void start(int port, boolean advertise) {
         try {
-            server = ServerBuilder.forPort(port)
-                    .addService(service)
-                    .addService(sheetyGUIService)
-                    .build();
+            String secret = null;
+            if (advertise) {
+                // Serves the local account without a token, so must only be reachable by this machine's user
+                secret = DaemonFile.createSecret();
+                var interceptor = new DaemonAuthInterceptor(secret);
+                server = NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+                        .addService(ServerInterceptors.intercept(service, interceptor))
+                        .addService(ServerInterceptors.intercept(sheetyGUIService, interceptor))
+                        .build();
+            } else {
+                server = ServerBuilder.forPort(port)
+                        .addService(service)
+                        .addService(sheetyGUIService)
+                        .build();
+            }
 
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 // Use stderr here since the logger may have been reset by its JVM shutdown hook.
@@ -49,6 +74,10 @@ public class GRPCClient {
             // App threads are running in the background.
             LOGGER.info("gRPC Server started");
 
+            if (advertise) {
+                DaemonFile.write(port, secret);
+            }
+
             // Don't exit the main thread. Wait until server is terminated.
             server.awaitTermination();
         } catch (IOException | InterruptedException e) {
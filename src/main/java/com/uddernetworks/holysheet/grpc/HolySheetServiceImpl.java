@@ -12,6 +12,8 @@ import com.uddernetworks.grpc.HolysheetService.DownloadResponse.DownloadStatus;
 import com.uddernetworks.grpc.HolysheetService.FileChunk;
 import com.uddernetworks.grpc.HolysheetService.FolderResponse;
 import com.uddernetworks.grpc.HolysheetService.ListItem;
+import com.uddernetworks.grpc.HolysheetService.ListPage;
+import com.uddernetworks.grpc.HolysheetService.ListPageRequest;
 import com.uddernetworks.grpc.HolysheetService.ListRequest;
 import com.uddernetworks.grpc.HolysheetService.ListResponse;
 import com.uddernetworks.grpc.HolysheetService.MoveFileRequest;
@@ -22,8 +24,12 @@ import com.uddernetworks.grpc.HolysheetService.RenameRequest;
 import com.uddernetworks.grpc.HolysheetService.RenameResponse;
 import com.uddernetworks.grpc.HolysheetService.RestoreRequest;
 import com.uddernetworks.grpc.HolysheetService.RestoreResponse;
+import com.uddernetworks.grpc.HolysheetService.SearchRequest;
+import com.uddernetworks.grpc.HolysheetService.SearchResponse;
 import com.uddernetworks.grpc.HolysheetService.StarRequest;
 import com.uddernetworks.grpc.HolysheetService.StarResponse;
+import com.uddernetworks.grpc.HolysheetService.StreamDownloadRequest;
+import com.uddernetworks.grpc.HolysheetService.StreamDownloadResponse;
 import com.uddernetworks.grpc.HolysheetService.UploadRequest;
 import com.uddernetworks.grpc.HolysheetService.UploadResponse;
 import com.uddernetworks.grpc.HolysheetService.UploadResponse.UploadStatus;
@@ -31,10 +37,18 @@ import com.uddernetworks.holysheet.AuthManager;
 import com.uddernetworks.holysheet.HolySheet;
 import com.uddernetworks.holysheet.RemoteAuthManager;
 import com.uddernetworks.holysheet.SheetManager;
-import com.uddernetworks.holysheet.command.CommandHandler;
 import com.uddernetworks.holysheet.encoding.EncodingOutputStream;
+import com.uddernetworks.holysheet.io.CancellationToken;
+import com.uddernetworks.holysheet.io.ProgressTracker;
 import com.uddernetworks.holysheet.io.SheetIO;
+import com.uddernetworks.holysheet.io.UploadIndex;
+import com.uddernetworks.holysheet.io.UploadSweeper;
+import com.uddernetworks.holysheet.utility.Utility;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,16 +61,46 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.uddernetworks.holysheet.utility.Utility.DRIVE_FIELDS;
+
 public class HolySheetServiceImpl extends HolySheetServiceImplBase {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HolySheetServiceImpl.class);
-    private static final Map<String, Processor> processing = new ConcurrentHashMap<>();
+
+    private static final int MAX_UPLOAD_SESSIONS = 64;
+    private static final long MAX_SESSION_BYTES = 128_000_000; // Two 64MB sheets
+    private static final long MAX_BUFFERED_BYTES = Math.min(1_000_000_000, Runtime.getRuntime().maxMemory() / 2);
+    private static final long SESSION_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final UploadSessions sessions = new UploadSessions(MAX_UPLOAD_SESSIONS, MAX_SESSION_BYTES, MAX_BUFFERED_BYTES, SESSION_IDLE_TIMEOUT_MS);
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // The page token of the first page of packed files, which are listed from their containers rather than by Drive.
+    // Later pages of them are this followed by the offset of their first file, as in "packed:200"
+    private static final String PACKED_PAGE_TOKEN = "packed";
+
+    // Remote clients' managers by account, so their upload indices outlive a single search and the token it was made
+    // with. Guarded by itself, the least recently searched accounts evicted first
+    private static final int MAX_SEARCH_ACCOUNTS = 100;
+    private static final Map<String, SearchAccount> searchAccounts = new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SearchAccount> eldest) {
+            return size() > MAX_SEARCH_ACCOUNTS;
+        }
+    };
 
     private final AuthManager authManager;
     private final SheetManager localSheetManager;
@@ -65,6 +109,9 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
         SheetManager sheetManager = null;
         if ((this.authManager = authManager) != null) {
             sheetManager = new SheetManager(authManager.getDrive(), authManager.getSheets());
+
+            // Long running, so cleans up after uploads of this or other processes that never finished
+            new UploadSweeper(sheetManager, authManager.getDrive(), UploadSweeper.DEFAULT_GRACE_MS).start(UploadSweeper.DEFAULT_INTERVAL_MS);
         }
         this.localSheetManager = sheetManager;
     }
@@ -105,17 +152,155 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
                 .map(this::getListItem)
                 .collect(Collectors.toUnmodifiableList());
 
-        response.onNext(ListResponse.newBuilder()
-                .addAllItems(files)
-                .addAllFolders(sheetIO.getFolders())
-                .build());
+        try {
+            var folderIndex = sheetIO.getFolderIndex();
+            var folderVersion = folderIndex.refresh();
+            var builder = ListResponse.newBuilder()
+                    .addAllItems(files)
+                    .setFolderVersion(folderVersion);
+
+            // Clients that send no version get the folders as before
+            if (!request.getFolderVersion().isEmpty() && request.getFolderVersion().equals(folderVersion)) {
+                builder.setFoldersUnchanged(true);
+            } else {
+                builder.addAllFolders(folderIndex.getFolders());
+            }
+
+            response.onNext(builder.build());
+            response.onCompleted();
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while listing folders", e);
+            response.onError(e);
+        }
+    }
+
+    @Override
+    public void listFilesPaged(ListPageRequest request, StreamObserver<ListPage> response) {
+        var sheetManager = getSheetManager(request, response);
+        var serverResponse = (ServerCallStreamObserver<ListPage>) response;
+        var pageSize = request.getPageSize() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, request.getPageSize());
+        var fields = getDriveFields(request.getFieldsList());
+        var lastToken = request.getStarred() ? "" : PACKED_PAGE_TOKEN;
+
+        try {
+            var pageToken = request.getPageToken();
+            while (!isPackedPageToken(pageToken)) {
+                if (serverResponse.isCancelled()) {
+                    return;
+                }
+
+                var page = sheetManager.listUploadsPage(request.getPath(), request.getStarred(), request.getTrashed(), pageSize, pageToken, fields);
+                pageToken = page.getNextPageToken() == null ? lastToken : page.getNextPageToken();
+
+                var files = page.getFiles() == null ? List.<com.google.api.services.drive.model.File>of() : page.getFiles();
+                response.onNext(ListPage.newBuilder()
+                        .addAllItems(files.stream().map(this::getListItem).collect(Collectors.toUnmodifiableList()))
+                        .setNextPageToken(pageToken)
+                        .build());
+
+                if (pageToken.isEmpty()) {
+                    response.onCompleted();
+                    return;
+                }
+            }
+
+            // Sorted so an offset from an earlier call picks up where it left off
+            var path = request.getPath().isBlank() || !SheetManager.PATH_REGEX.matcher(request.getPath()).matches() ? "/" : request.getPath();
+            var packed = sheetManager.getSheetIO().listPacked(path, request.getTrashed());
+            packed.sort(Comparator.comparing(com.google.api.services.drive.model.File::getId));
+
+            var offset = Math.min(packed.size(), getPackedOffset(pageToken));
+            do {
+                if (serverResponse.isCancelled()) {
+                    return;
+                }
+
+                var end = Math.min(packed.size(), offset + pageSize);
+                pageToken = end < packed.size() ? PACKED_PAGE_TOKEN + ":" + end : "";
+
+                response.onNext(ListPage.newBuilder()
+                        .addAllItems(packed.subList(offset, end)
+                                .stream()
+                                .map(file -> getListItem(maskFields(file, request.getFieldsList())))
+                                .collect(Collectors.toUnmodifiableList()))
+                        .setNextPageToken(pageToken)
+                        .build());
+
+                offset = end;
+            } while (!pageToken.isEmpty());
+
+            response.onCompleted();
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while listing files", e);
+            response.onError(e);
+        }
+    }
+
+    /**
+     * Gets the {@link SheetManager} of a remote client's account to search with, reusing the account's last one so
+     * its upload index is kept. A reused manager is switched to the given token, as the one it was made with may have
+     * since expired.
+     *
+     * @param token The client's access token
+     * @return The {@link SheetManager}
+     */
+    private SheetManager getSearchManager(String token) {
+        var authManager = new RemoteAuthManager();
+        authManager.useToken(token);
+
+        var account = authManager.getAccount();
+        if (account == null) {
+            return new SheetManager(authManager.getDrive(), authManager.getSheets());
+        }
+
+        synchronized (searchAccounts) {
+            var cached = searchAccounts.get(account);
+            if (cached != null) {
+                cached.authManager.setAccessToken(token);
+                return cached.sheetManager;
+            }
+
+            var sheetManager = new SheetManager(authManager.getDrive(), authManager.getSheets());
+            searchAccounts.put(account, new SearchAccount(authManager, sheetManager));
+            return sheetManager;
+        }
+    }
+
+    @Override
+    public void searchFiles(SearchRequest request, StreamObserver<SearchResponse> response) {
+        var sheetManager = localSheetManager != null ? localSheetManager : getSearchManager(request.getToken());
+        var uploadIndex = sheetManager.getSheetIO().getUploadIndex();
+
+        try {
+            var path = request.getPath().isBlank() ? null : request.getPath();
+            var limit = request.getLimit() <= 0 ? -1 : request.getLimit();
+            var files = uploadIndex.search(request.getQuery(), request.getPrefix(), path, request.getStarred(), request.getTrashed(),
+                    UploadIndex.Sort.valueOf(request.getSort().name()), request.getDescending(), limit);
 
-        response.onCompleted();
+            response.onNext(SearchResponse.newBuilder()
+                    .addAllItems(files.stream().map(this::getListItem).collect(Collectors.toUnmodifiableList()))
+                    .build());
+            response.onCompleted();
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while searching files", e);
+            response.onError(e);
+        }
+    }
+
+    private static class SearchAccount {
+        private final RemoteAuthManager authManager;
+        private final SheetManager sheetManager;
+
+        private SearchAccount(RemoteAuthManager authManager, SheetManager sheetManager) {
+            this.authManager = authManager;
+            this.sheetManager = sheetManager;
+        }
     }
 
     static class Processor {
         private final String processingId;
         private final EncodingOutputStream encodingOut;
+        private final CancellationToken cancellation = new CancellationToken();
         private final Consumer<com.google.api.services.drive.model.File> onComplete;
 
         public Processor(String processingId, long maxLength, Consumer<com.google.api.services.drive.model.File> onComplete) {
@@ -124,6 +309,18 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
             this.onComplete = onComplete;
         }
 
+        public CancellationToken getCancellation() {
+            return cancellation;
+        }
+
+        /**
+         * Cancels the upload, dropping its buffer and trashing what has been uploaded so far.
+         */
+        public void cancel() {
+            sessions.close(processingId);
+            cancellation.cancel();
+        }
+
         public String getProcessingId() {
             return processingId;
         }
@@ -159,18 +356,23 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
                 var dataOptional = sheetIO.downloadFile(cloneId);
                 if (dataOptional.isPresent()) {
                     var fileData = dataOptional.get();
-                    var data = fileData.getIn();
                     var fileSize = fileData.getSize();
 
                     long start = System.currentTimeMillis();
 
-                    var uploaded = sheetIO.uploadDataFile(name, path, fileSize, request.getSheetSize(), request.getCompression(), request.getUpload(), data);
+                    var progress = createProgress(request.getProgressInterval(), uploadProgress(response));
+
+                    com.google.api.services.drive.model.File uploaded;
+                    try (var data = fileData.getIn()) {
+                        uploaded = sheetIO.uploadDataFile(name, path, fileSize, request.getSheetSize(), request.getCompression(), request.getUpload(), data, progress, new CancellationToken());
+                    }
 
                     LOGGER.info("Uploaded cloned file {} in {}ms", uploaded.getId(), System.currentTimeMillis() - start);
 
                     sheetIO.createFolder(path);
 
                     response.onNext(UploadResponse.newBuilder()
+                            .setUploadStatus(UploadStatus.COMPLETE)
                             .setItem(getListItem(uploaded))
                             .build());
 
@@ -182,17 +384,28 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
 
                 long start = System.currentTimeMillis();
 
-                var uploaded = sheetIO.uploadDataFile(name, path, localFile.length(), request.getSheetSize(), request.getCompression(), request.getUpload(), new FileInputStream(localFile));
-
-                LOGGER.info("Uploaded local file \"{}\" in {}ms", localPathString, System.currentTimeMillis() - start);
+                var in = new FileInputStream(localFile);
+                var progress = createProgress(request.getProgressInterval(), uploadProgress(response));
+                sheetIO.uploadDataFileAsync(name, path, localFile.length(), request.getSheetSize(), request.getCompression(), request.getUpload(), in, progress).thenAccept(uploaded -> {
+                    LOGGER.info("Uploaded local file \"{}\" in {}ms", localPathString, System.currentTimeMillis() - start);
 
-                sheetIO.createFolder(path);
+                    try {
+                        sheetIO.createFolder(path);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
 
-                response.onNext(UploadResponse.newBuilder()
-                        .setItem(getListItem(uploaded))
-                        .build());
+                    response.onNext(UploadResponse.newBuilder()
+                            .setUploadStatus(UploadStatus.COMPLETE)
+                            .setItem(getListItem(uploaded))
+                            .build());
 
-                response.onCompleted();
+                    response.onCompleted();
+                }).exceptionally(t -> {
+                    LOGGER.error("An error has occurred while uploading a file", t);
+                    response.onError(t);
+                    return null;
+                }).whenComplete(($, t) -> IOUtils.closeQuietly(in));
                 return;
             }
 
@@ -210,10 +423,34 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
                 response.onCompleted();
             });
 
-            processing.put(request.getProcessingId(), processor);
+            try {
+                sessions.open(processor, request.getSheetSize());
+            } catch (StatusRuntimeException e) {
+                LOGGER.warn("Refusing upload {}: {}", request.getProcessingId(), e.getStatus().getDescription());
+                response.onError(e);
+                return;
+            }
 
-            sheetIO.uploadDataStream(name, path, request.getFileSize(), request.getSheetSize(), request.getCompression(), request.getUpload(), processor.getEncodingOut())
-                    .thenAccept(processor::complete);
+            ((ServerCallStreamObserver<UploadResponse>) response).setOnCancelHandler(processor::cancel);
+
+            sheetIO.uploadDataStream(name, path, request.getFileSize(), request.getSheetSize(), request.getCompression(), request.getUpload(), processor.getEncodingOut(), processor.getCancellation())
+                    .thenAccept(file -> {
+                        sessions.close(request.getProcessingId());
+                        processor.complete(file);
+                    })
+                    .exceptionally(t -> {
+                        sessions.close(request.getProcessingId());
+
+                        if (processor.getCancellation().isCancelled()) {
+                            LOGGER.info("Upload {} was cancelled", request.getProcessingId());
+                            response.onError(Status.CANCELLED.withDescription("Upload cancelled").asRuntimeException());
+                        } else {
+                            LOGGER.error("An error has occurred while uploading a file", t);
+                            response.onError(t);
+                        }
+
+                        return null;
+                    });
 
             response.onNext(UploadResponse.newBuilder()
                     .setUploadStatus(UploadStatus.READY)
@@ -228,21 +465,43 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
     @Override
     public StreamObserver<FileChunk> sendFile(StreamObserver<ChunkResponse> response) {
         AtomicReference<Processor> processor = new AtomicReference<>();
+
+        // Set once a response has ended the call, after which any chunks still arriving are ignored
+        var closed = new AtomicBoolean();
         return new StreamObserver<>() {
             @Override
             public void onNext(FileChunk chunk) {
-                if (!processing.containsKey(chunk.getProcessingId())) {
+                if (closed.get()) {
+                    return;
+                }
+
+                var session = sessions.get(chunk.getProcessingId());
+                if (session.isEmpty()) {
+                    // Never opened, or closed after going idle
                     LOGGER.error("Unknown processing ID: {}", chunk.getProcessingId());
+                    closed.set(true);
+                    response.onError(Status.NOT_FOUND.withDescription("No upload in progress with the given processing ID").asRuntimeException());
                     return;
                 }
 
-                processor.set(processing.get(chunk.getProcessingId()));
+                processor.set(session.get());
 
+                if (chunk.getStatus() == FileChunk.ChunkStatus.Terminated) {
+                    LOGGER.info("Terminating upload {}", chunk.getProcessingId());
+                    processor.get().cancel();
+                    closed.set(true);
+                    response.onCompleted();
+                    return;
+                }
+
+                // Writing may upload a sheet, which can take longer than the session may idle
+                sessions.startWrite(chunk.getProcessingId());
                 try {
                     processor.get().getEncodingOut().write(chunk.getContent().toByteArray());
 
                     if (chunk.getStatus() == FileChunk.ChunkStatus.Complete) {
                         processor.get().getEncodingOut().close();
+                        closed.set(true);
                         response.onCompleted();
                     } else {
                         response.onNext(ChunkResponse.newBuilder()
@@ -250,20 +509,39 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
                                 .build());
                     }
                 } catch (IOException e) {
+                    // Such as once cancelled, so the client stops sending the rest
                     LOGGER.error("An error occurred while writing data", e);
+                    processor.get().cancel();
+                    closed.set(true);
+                    response.onError(Status.fromThrowable(e).asRuntimeException());
+                } finally {
+                    sessions.finishWrite(chunk.getProcessingId());
                 }
             }
 
             @Override
             public void onError(Throwable t) {
                 LOGGER.error("An error has occurred while sending file", t);
-                response.onError(t);
+
+                // The client is gone, so the rest of the file is never coming
+                if (processor.get() != null) {
+                    processor.get().cancel();
+                }
+
+                if (closed.compareAndSet(false, true)) {
+                    response.onError(t);
+                }
             }
 
             @Override
             public void onCompleted() {
-                LOGGER.info("Complete with {}", processor.get().getProcessingId());
-                response.onCompleted();
+                if (processor.get() != null) {
+                    LOGGER.info("Complete with {}", processor.get().getProcessingId());
+                }
+
+                if (closed.compareAndSet(false, true)) {
+                    response.onCompleted();
+                }
             }
         };
     }
@@ -297,11 +575,17 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
                     .setPercentage(0)
                     .build());
 
-            sheetManager.getSheetIO().downloadData(destination, id, percentage ->
+            var cancellation = new CancellationToken();
+            ((ServerCallStreamObserver<DownloadResponse>) response).setOnCancelHandler(cancellation::cancel);
+
+            var progress = createProgress(request.getProgressInterval(), (percentage, update) ->
                     response.onNext(DownloadResponse.newBuilder()
                             .setStatus(DownloadStatus.DOWNLOADING)
                             .setPercentage(percentage)
-                            .build()))
+                            .setProgress(update)
+                            .build()));
+
+            sheetManager.getSheetIO().downloadData(destination, id, progress, cancellation)
                     .thenAccept(file -> {
                         LOGGER.info("Downloaded in {}ms", System.currentTimeMillis() - start);
 
@@ -324,22 +608,100 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
         }
     }
 
+    /**
+     * Creates a {@link ProgressTracker} sending updates to a response stream, at most once per the interval a request
+     * asked for. Updates are never sent concurrently, and none are sent once the transfer completes, so the stream can
+     * be completed right after.
+     *
+     * @param intervalMs The minimum milliseconds between updates, or 0 for the default
+     * @param onProgress Sends the 0-1 percentage and progress of an update
+     * @return The {@link ProgressTracker}
+     */
+    private static ProgressTracker createProgress(int intervalMs, BiConsumer<Double, HolysheetService.Progress> onProgress) {
+        return new ProgressTracker(intervalMs > 0 ? intervalMs : ProgressTracker.DEFAULT_INTERVAL_MS, progress ->
+                onProgress.accept(progress.getFraction(), HolysheetService.Progress.newBuilder()
+                        .setBytes(progress.getBytes())
+                        .setSize(progress.getSize())
+                        .setBytesPerSecond(progress.getBytesPerSecond())
+                        .setEtaMillis(progress.getEtaMillis())
+                        .build()));
+    }
+
+    private static BiConsumer<Double, HolysheetService.Progress> uploadProgress(StreamObserver<UploadResponse> response) {
+        return (percentage, update) -> response.onNext(UploadResponse.newBuilder()
+                .setUploadStatus(UploadStatus.UPLOADING)
+                .setProgress(update)
+                .build());
+    }
+
     @Override
-    public void removeFile(RemoveRequest request, StreamObserver<RemoveResponse> response) {
+    public void streamFile(StreamDownloadRequest request, StreamObserver<StreamDownloadResponse> response) {
         var sheetManager = getSheetManager(request, response);
-        var sheetIO = sheetManager.getSheetIO();
+        var serverResponse = (ServerCallStreamObserver<StreamDownloadResponse>) response;
+
+        var sender = new ByteStreamSender(serverResponse, request.getOffset());
+        var cancellation = new CancellationToken();
+        serverResponse.setOnCancelHandler(() -> {
+            cancellation.cancel();
+            sender.cancel();
+        });
 
         try {
-            sheetIO.deleteData(request.getId(), false, request.getPermanent());
+            var id = request.getId();
+            var file = sheetManager.getFile(id, DRIVE_FIELDS);
 
-            response.onNext(RemoveResponse.newBuilder().build());
-            response.onCompleted();
-        } catch (Exception e) {
+            if (file == null) {
+                response.onError(new FileNotFoundException("No file could be found with the given ID \"" + id + "\""));
+                return;
+            }
+
+            var size = SheetIO.getPlainSize(file);
+            if (request.getOffset() < 0 || request.getOffset() > size) {
+                response.onError(Status.OUT_OF_RANGE.withDescription("Offset " + request.getOffset() + " is outside of the file's " + size + " bytes").asException());
+                return;
+            }
+
+            response.onNext(StreamDownloadResponse.newBuilder()
+                    .setItem(getListItem(file))
+                    .setSize(size)
+                    .setOffset(request.getOffset())
+                    .build());
+
+            long start = System.currentTimeMillis();
+            sheetManager.getSheetIO().streamData(file, request.getOffset(), sender, cancellation)
+                    .thenRun(() -> {
+                        LOGGER.info("Streamed in {}ms", System.currentTimeMillis() - start);
+                        response.onCompleted();
+                    }).exceptionally(t -> {
+                if (cancellation.isCancelled()) {
+                    LOGGER.info("Stream of {} cancelled", id);
+                } else {
+                    LOGGER.error("An error occurred while streaming a file", t);
+                    response.onError(new RuntimeException(t));
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while streaming a file", e);
             response.onError(e);
-            LOGGER.error("An error occurred while deleting file ID \"" + request.getId() + "\"", e);
         }
     }
 
+    @Override
+    public void removeFile(RemoveRequest request, StreamObserver<RemoveResponse> response) {
+        var sheetManager = getSheetManager(request, response);
+        var sheetIO = sheetManager.getSheetIO();
+
+        sheetIO.deleteDataAsync(request.getId(), request.getPermanent()).thenRun(() -> {
+            response.onNext(RemoveResponse.newBuilder().build());
+            response.onCompleted();
+        }).exceptionally(t -> {
+            response.onError(t);
+            LOGGER.error("An error occurred while deleting file ID \"" + request.getId() + "\"", t);
+            return null;
+        });
+    }
+
     @Override
     public void restoreFile(RestoreRequest request, StreamObserver<RestoreResponse> response) {
         var sheetManager = getSheetManager(request, response);
@@ -423,21 +785,137 @@ public class HolySheetServiceImpl extends HolySheetServiceImplBase {
         }
     }
 
+    /**
+     * Converts a file to a {@link ListItem}, leaving any fields that weren't requested from Drive unset.
+     *
+     * @param file The file
+     * @return The {@link ListItem}
+     */
     ListItem getListItem(com.google.api.services.drive.model.File file) {
-        var owner = file.getOwners().get(0);
-        return ListItem.newBuilder()
-                .setName(file.getName())
+        var builder = ListItem.newBuilder().setId(file.getId());
+
+        if (file.getName() != null) {
+            builder.setName(file.getName());
+        }
+
+        if (file.getProperties() != null) {
+            builder.setPath(Utility.getPath(file))
+                    .setSize(Utility.getSize(file))
+                    .setSheets(Utility.getSheetCount(file))
+                    .setStarred(Utility.isStarred(file));
+        }
+
+        if (file.getModifiedTime() != null) {
+            builder.setDate(file.getModifiedTime().getValue());
+        }
+
+        if (file.getOwners() != null && !file.getOwners().isEmpty()) {
+            var owner = file.getOwners().get(0);
+            builder.setSelfOwned(Boolean.TRUE.equals(owner.getMe()))
+                    .setOwner(owner.getDisplayName());
+        }
+
+        if (file.getWebViewLink() != null) {
+            builder.setDriveLink(file.getWebViewLink());
+        }
+
+        if (file.getTrashed() != null) {
+            builder.setTrashed(file.getTrashed());
+        }
+
+        return builder.build();
+    }
+
+    private static boolean isPackedPageToken(String pageToken) {
+        return pageToken.equals(PACKED_PAGE_TOKEN) || pageToken.startsWith(PACKED_PAGE_TOKEN + ":");
+    }
+
+    private static int getPackedOffset(String pageToken) {
+        if (pageToken.equals(PACKED_PAGE_TOKEN)) {
+            return 0;
+        }
+
+        try {
+            return Utility.tryParse(pageToken.substring(PACKED_PAGE_TOKEN.length() + 1), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copies only the requested fields of a file, for files not listed by Drive, as {@link #getDriveFields(List)}
+     * does for those that are.
+     *
+     * @param file   The file
+     * @param fields The requested fields, empty for all of them
+     * @return The file with only the requested fields set
+     */
+    private static com.google.api.services.drive.model.File maskFields(com.google.api.services.drive.model.File file, List<ListPageRequest.Field> fields) {
+        if (fields.isEmpty()) {
+            return file;
+        }
+
+        var masked = new com.google.api.services.drive.model.File()
                 .setId(file.getId())
-                .setPath(CommandHandler.getPath(file))
-                .setSize(CommandHandler.getSize(file))
-                .setSheets(CommandHandler.getSheetCount(file))
-                .setDate(file.getModifiedTime().getValue())
-                .setSelfOwned(owner.getMe())
-                .setOwner(owner.getDisplayName())
-                .setDriveLink(file.getWebViewLink())
-                .setStarred(CommandHandler.isStarred(file))
-                .setTrashed(file.getTrashed())
-                .build();
+                .setMimeType(file.getMimeType());
+
+        for (var field : fields) {
+            switch (field) {
+                case NAME:
+                    masked.setName(file.getName());
+                    break;
+                case PATH:
+                    masked.setProperties(file.getProperties());
+                    break;
+                case DATE:
+                    masked.setModifiedTime(file.getModifiedTime());
+                    break;
+                case OWNER:
+                    masked.setOwners(file.getOwners());
+                    break;
+                case DRIVE_LINK:
+                    masked.setWebViewLink(file.getWebViewLink());
+                    break;
+                case TRASHED:
+                    masked.setTrashed(file.getTrashed());
+                    break;
+            }
+        }
+
+        return masked;
+    }
+
+    private static String getDriveFields(List<ListPageRequest.Field> fields) {
+        if (fields.isEmpty()) {
+            return DRIVE_FIELDS;
+        }
+
+        // The mime type is needed to filter out anything that isn't an upload
+        var driveFields = new LinkedHashSet<>(List.of("id", "mimeType"));
+        for (var field : fields) {
+            switch (field) {
+                case NAME:
+                    driveFields.add("name");
+                    break;
+                case PATH:
+                    driveFields.add("properties");
+                    break;
+                case DATE:
+                    driveFields.add("modifiedTime");
+                    break;
+                case OWNER:
+                    driveFields.add("owners");
+                    break;
+                case DRIVE_LINK:
+                    driveFields.add("webViewLink");
+                    break;
+                case TRASHED:
+                    driveFields.add("trashed");
+                    break;
+            }
+        }
+
+        return String.join(", ", driveFields);
     }
 
     static class AuthException extends RuntimeException {
@@ -0,0 +1,201 @@
+package com.uddernetworks.holysheet.grpc;
+
+import com.uddernetworks.holysheet.grpc.HolySheetServiceImpl.Processor;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.uddernetworks.holysheet.utility.Utility.humanReadableByteCountSI;
+
+/**
+ * The streamed uploads in progress, by processing ID. Each session reserves the most memory it may buffer when
+ * opened, and new sessions are refused once too many are open or the reservations would pass the budget. Sessions
+ * that go idle, such as when a client disconnects without cancelling, are cancelled so their buffers are released. A
+ * session writing data is never idle, however long uploading the sheets it fills takes.
+ */
+public class UploadSessions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadSessions.class);
+
+    private static final long SWEEP_INTERVAL_MS = 30_000;
+
+    private final int maxSessions;
+    private final long maxSessionBytes;
+    private final long maxBufferedBytes;
+    private final long idleTimeoutMs;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private long reservedBytes;
+
+    /**
+     * Creates an {@link UploadSessions}, sweeping idle sessions in the background.
+     *
+     * @param maxSessions      The maximum amount of sessions open at once
+     * @param maxSessionBytes  The maximum bytes a single session may reserve
+     * @param maxBufferedBytes The maximum bytes reserved by all sessions
+     * @param idleTimeoutMs    The milliseconds a session may go without data before it's cancelled
+     */
+    public UploadSessions(int maxSessions, long maxSessionBytes, long maxBufferedBytes, long idleTimeoutMs) {
+        this.maxSessions = maxSessions;
+        this.maxSessionBytes = maxSessionBytes;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "holysheet-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a session for a processor, if there's room for it.
+     *
+     * @param processor The processor of the upload
+     * @param sheetSize The maximum size in bytes of the upload's sheets
+     * @throws io.grpc.StatusRuntimeException With {@link Status#RESOURCE_EXHAUSTED} if the session can't be admitted,
+     *                                        {@link Status#ALREADY_EXISTS} if the processing ID is in use, or
+     *                                        {@link Status#INVALID_ARGUMENT} if the sheet size isn't positive
+     */
+    public void open(Processor processor, long sheetSize) {
+        // Would reserve nothing, escaping the budget
+        if (sheetSize <= 0) {
+            throw Status.INVALID_ARGUMENT.withDescription("Sheet size must be positive, was " + sheetSize).asRuntimeException();
+        }
+
+        // A sheet is buffered while the one before it is still being uploaded
+        long reserve = sheetSize * 2;
+        if (reserve > maxSessionBytes) {
+            throw Status.RESOURCE_EXHAUSTED.withDescription("A sheet size of " + humanReadableByteCountSI(sheetSize) + " would buffer more than the " + humanReadableByteCountSI(maxSessionBytes) + " allowed per upload").asRuntimeException();
+        }
+
+        synchronized (this) {
+            if (sessions.containsKey(processor.getProcessingId())) {
+                throw Status.ALREADY_EXISTS.withDescription("Processing ID is already in use").asRuntimeException();
+            }
+
+            if (sessions.size() >= maxSessions) {
+                throw Status.RESOURCE_EXHAUSTED.withDescription("Too many uploads in progress, " + maxSessions + " at most").asRuntimeException();
+            }
+
+            if (reservedBytes + reserve > maxBufferedBytes) {
+                throw Status.RESOURCE_EXHAUSTED.withDescription("Too much upload data buffered, " + humanReadableByteCountSI(reservedBytes) + " of " + humanReadableByteCountSI(maxBufferedBytes) + " reserved").asRuntimeException();
+            }
+
+            reservedBytes += reserve;
+            sessions.put(processor.getProcessingId(), new Session(processor, reserve));
+        }
+
+        LOGGER.debug("Opened upload session {}, {} open", processor.getProcessingId(), sessions.size());
+    }
+
+    /**
+     * Gets the processor of an open session, marking it as used.
+     *
+     * @param processingId The processing ID
+     * @return The processor, if its session is open
+     */
+    public Optional<Processor> get(String processingId) {
+        var session = sessions.get(processingId);
+        if (session == null) {
+            return Optional.empty();
+        }
+
+        session.lastUsed = System.currentTimeMillis();
+        return Optional.of(session.processor);
+    }
+
+    /**
+     * Marks a session as writing, so it isn't swept as idle until {@link #finishWrite(String)}, such as while a
+     * write waits on a sheet to upload.
+     *
+     * @param processingId The processing ID
+     */
+    public void startWrite(String processingId) {
+        var session = sessions.get(processingId);
+        if (session != null) {
+            session.writes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks a write started by {@link #startWrite(String)} as finished, the session being used as of now.
+     *
+     * @param processingId The processing ID
+     */
+    public void finishWrite(String processingId) {
+        var session = sessions.get(processingId);
+        if (session != null) {
+            session.lastUsed = System.currentTimeMillis();
+            session.writes.decrementAndGet();
+        }
+    }
+
+    /**
+     * Closes a session, releasing its reservation. Closing a session that isn't open does nothing.
+     *
+     * @param processingId The processing ID
+     */
+    public void close(String processingId) {
+        synchronized (this) {
+            var session = sessions.remove(processingId);
+            if (session == null) {
+                return;
+            }
+
+            reservedBytes -= session.reserved;
+        }
+
+        LOGGER.debug("Closed upload session {}, {} open", processingId, sessions.size());
+    }
+
+    /**
+     * @return The bytes currently buffered by all open sessions, at most the reserved bytes
+     */
+    public long getBufferedBytes() {
+        return sessions.values().stream().mapToLong(session -> session.processor.getEncodingOut().getBufferLength()).sum();
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void sweep() {
+        if (size() > 0) {
+            LOGGER.debug("{} upload sessions open, buffering {} of {} reserved", size(), humanReadableByteCountSI(getBufferedBytes()), humanReadableByteCountSI(getReservedBytes()));
+        }
+
+        long now = System.currentTimeMillis();
+        sessions.values().stream()
+                .filter(session -> session.writes.get() == 0 && now - session.lastUsed > idleTimeoutMs)
+                .forEach(session -> {
+                    LOGGER.warn("Cancelling upload {}, idle for {}ms", session.processor.getProcessingId(), now - session.lastUsed);
+                    session.processor.cancel();
+                });
+    }
+
+    private static class Session {
+        private final Processor processor;
+        private final long reserved;
+        private final AtomicInteger writes = new AtomicInteger();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Session(Processor processor, long reserved) {
+            this.processor = processor;
+            this.reserved = reserved;
+        }
+    }
+}
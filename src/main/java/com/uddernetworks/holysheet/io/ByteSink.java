@@ -0,0 +1,21 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An asynchronous destination of bytes, such as a client stream, which applies backpressure by only completing a write
+ * once it can take more.
+ */
+@FunctionalInterface
+public interface ByteSink {
+
+    /**
+     * Writes bytes. The bytes may not be modified until the returned future completes.
+     *
+     * @param bytes  The array holding the bytes
+     * @param offset The offset of the first byte to write
+     * @param length The amount of bytes to write
+     * @return A {@link CompletableFuture} completed once more bytes may be written
+     */
+    CompletableFuture<Void> write(byte[] bytes, int offset, int length);
+}
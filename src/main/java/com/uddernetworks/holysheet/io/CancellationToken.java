@@ -0,0 +1,110 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cooperatively cancels a transfer. Work checks the token between steps, and anything that can't check it itself,
+ * such as an encoder blocked on a client, registers a listener to be run once cancelled.
+ */
+public class CancellationToken {
+
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels the token, running all listeners on the calling thread. Cancelling more than once does nothing.
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+
+            cancelled = true;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+
+        toRun.forEach(Runnable::run);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException If the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Transfer cancelled");
+        }
+    }
+
+    /**
+     * Adds a listener to run once cancelled, or runs it now if already cancelled. Work that finishes before the token
+     * is cancelled should unregister its listeners, so they neither run for it nor keep what they reference alive.
+     *
+     * @param listener The listener
+     * @return The {@link Registration} of the listener
+     */
+    public Registration onCancel(Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                // Wrapped, so registering the same listener twice gives two registrations
+                Runnable registered = listener::run;
+                listeners.add(registered);
+                return () -> unregister(registered);
+            }
+        }
+
+        listener.run();
+        return () -> {};
+    }
+
+    private synchronized void unregister(Runnable registered) {
+        listeners.remove(registered);
+    }
+
+    /**
+     * Wraps a future of work using this token, so that cancelling the returned future cancels the token.
+     *
+     * @param work The future of the work
+     * @param <T>  The result type
+     * @return A future completed with the work's result
+     */
+    public <T> CompletableFuture<T> bind(CompletableFuture<T> work) {
+        var result = new CompletableFuture<T>();
+        work.whenComplete((value, t) -> {
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(value);
+            }
+        });
+
+        result.whenComplete(($, t) -> {
+            if (result.isCancelled()) {
+                cancel();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * A listener added to a {@link CancellationToken}.
+     */
+    @FunctionalInterface
+    public interface Registration {
+
+        /**
+         * Removes the listener, so it isn't run if the token is cancelled later. Does nothing once it's run.
+         */
+        void unregister();
+    }
+}
@@ -0,0 +1,64 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+
+import java.io.IOException;
+
+/**
+ * Stores the chunks of uploads somewhere other than the account the upload's parent is in, such as another Google
+ * account, so chunks can be striped across several accounts (See {@link StripePool}). Chunks are found again by the ID
+ * returned when uploading them, which the parent records in its {@link StripeManifest}.
+ */
+public interface ChunkBackend {
+
+    /**
+     * @return The name of the backend, recorded for each chunk it stores so it can be found again when downloading
+     */
+    String getName();
+
+    /**
+     * Uploads a chunk of an upload.
+     *
+     * @param chunk        The chunk, along with the parent it belongs to
+     * @param cancellation The {@link CancellationToken} to abort the upload with
+     * @return The ID to export the chunk by
+     * @throws IOException If the upload fails
+     */
+    String upload(FileChunk chunk, CancellationToken cancellation) throws IOException;
+
+    /**
+     * Exports a chunk as the encoded bytes it was uploaded with.
+     *
+     * @param id           The ID returned when the chunk was uploaded
+     * @param cancellation The {@link CancellationToken} to abort the export with
+     * @return The exported bytes
+     * @throws IOException If the export fails
+     */
+    byte[] export(String id, CancellationToken cancellation) throws IOException;
+
+    /**
+     * Gets when a chunk of an upload was last stored, so an upload still writing to the backend isn't taken as stale.
+     *
+     * @param parent The parent of the upload
+     * @return The milliseconds since the epoch the newest chunk was stored at, or 0 if none are stored
+     * @throws IOException If the request fails
+     */
+    long getLastModified(File parent) throws IOException;
+
+    /**
+     * Forgets anything kept for an upload while its chunks were being stored, once it's finished. Does nothing by
+     * default.
+     *
+     * @param parent The parent of the upload
+     */
+    default void finish(File parent) {
+    }
+
+    /**
+     * Permanently removes every chunk stored for an upload, such as once it's deleted or cancelled.
+     *
+     * @param parent The parent of the upload
+     * @throws IOException If removing fails
+     */
+    void remove(File parent) throws IOException;
+}
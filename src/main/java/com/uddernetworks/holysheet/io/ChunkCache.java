@@ -0,0 +1,185 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static com.uddernetworks.holysheet.utility.Utility.humanReadableByteCountSI;
+
+/**
+ * A size-bounded local cache of exported sheets, keyed by a sheet's ID and modified time so a changed sheet is never
+ * served stale. The least recently used sheets are evicted once over budget. Use times are kept as the files' modified
+ * times, so the order survives between runs.
+ */
+public class ChunkCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkCache.class);
+
+    private static final String EXTENSION = ".tsv";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // File name to size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private long totalBytes;
+
+    /**
+     * Creates a {@link ChunkCache}, indexing any sheets already in the directory.
+     *
+     * @param directory The directory to cache sheets in, created if it doesn't exist
+     * @param maxBytes  The maximum amount of bytes to cache
+     */
+    public ChunkCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+
+            try (var files = Files.list(directory)) {
+                var cached = files.sorted(Comparator.comparing(this::getLastModified)).collect(Collectors.toList());
+
+                for (var path : cached) {
+                    var name = path.getFileName().toString();
+                    if (name.endsWith(TEMP_EXTENSION)) {
+                        // Left behind by a run that died while writing
+                        Files.deleteIfExists(path);
+                    } else if (name.endsWith(EXTENSION)) {
+                        var size = Files.size(path);
+                        entries.put(name, size);
+                        totalBytes += size;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        LOGGER.info("Chunk cache has {} sheets totalling {}", entries.size(), humanReadableByteCountSI(totalBytes));
+
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * Gets the cached export of a sheet.
+     *
+     * @param sheet The sheet, with its ID and modified time
+     * @return The exported sheet, if cached
+     */
+    public Optional<byte[]> get(File sheet) {
+        var name = getName(sheet);
+        if (name == null) {
+            return Optional.empty();
+        }
+
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                return Optional.empty();
+            }
+        }
+
+        var path = directory.resolve(name);
+        try {
+            var bytes = Files.readAllBytes(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(bytes);
+        } catch (NoSuchFileException e) {
+            // Evicted while being read
+            return Optional.empty();
+        } catch (IOException e) {
+            LOGGER.error("Couldn't read cached sheet " + name, e);
+            remove(name);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Caches the export of a sheet, evicting the least recently used sheets if over budget.
+     *
+     * @param sheet The sheet, with its ID and modified time
+     * @param bytes The exported sheet
+     */
+    public void put(File sheet, byte[] bytes) {
+        var name = getName(sheet);
+        if (name == null || bytes.length > maxBytes) {
+            return;
+        }
+
+        try {
+            // Written beside the cache first, so a partial file is never read
+            var temp = Files.createTempFile(directory, "partial", TEMP_EXTENSION);
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't cache sheet " + name, e);
+            return;
+        }
+
+        synchronized (this) {
+            var previous = entries.put(name, (long) bytes.length);
+            totalBytes += bytes.length - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    private synchronized void remove(String name) {
+        var size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            LOGGER.error("Couldn't delete cached sheet " + name, e);
+        }
+    }
+
+    private void evict() {
+        var iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                LOGGER.error("Couldn't delete cached sheet " + eldest.getKey(), e);
+            }
+        }
+    }
+
+    private String getName(File sheet) {
+        if (sheet.getId() == null || sheet.getModifiedTime() == null) {
+            return null;
+        }
+
+        return sheet.getId() + "-" + sheet.getModifiedTime().getValue() + EXTENSION;
+    }
+
+    private FileTime getLastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
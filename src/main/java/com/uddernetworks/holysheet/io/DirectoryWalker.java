@@ -0,0 +1,93 @@
+package com.uddernetworks.holysheet.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Walks a local directory tree, listing its directories in parallel and handing each file to a {@link Visitor} as
+ * soon as it's found, so files can be uploading long before the walk ends. Every directory is given the remote path
+ * mirroring its place in the tree. Symbolic links aren't followed, so a link can't make the walk loop.
+ */
+public class DirectoryWalker {
+
+    private final Executor executor;
+
+    /**
+     * Creates a {@link DirectoryWalker}.
+     *
+     * @param executor The executor to list directories on
+     */
+    public DirectoryWalker(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Walks a directory, its contents going under a folder of its own name.
+     *
+     * @param root    The directory to walk
+     * @param path    The clean remote path to mirror the directory under
+     * @param visitor The {@link Visitor} to give what's found to, called from several threads at once
+     * @return A {@link CompletableFuture} completed once every directory has been listed
+     */
+    public CompletableFuture<Void> walk(Path root, String path, Visitor visitor) {
+        return walkDirectory(root, path + toPathSegment(root) + "/", visitor);
+    }
+
+    private CompletableFuture<Void> walkDirectory(Path directory, String path, Visitor visitor) {
+        return CompletableFuture.supplyAsync(() -> {
+            visitor.directory(path);
+
+            var children = new ArrayList<CompletableFuture<Void>>();
+            try (var entries = Files.newDirectoryStream(directory)) {
+                for (var entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        children.add(walkDirectory(entry, path + toPathSegment(entry) + "/", visitor));
+                    } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        visitor.file(entry, path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return CompletableFuture.allOf(children.toArray(CompletableFuture[]::new));
+        }, executor).thenCompose(Function.identity());
+    }
+
+    /**
+     * Gets the name of a local file or directory as a segment of a remote path, which may only hold word characters
+     * and dashes.
+     *
+     * @param file The local file or directory
+     * @return The path segment
+     */
+    public static String toPathSegment(Path file) {
+        var name = file.getFileName() == null ? "root" : file.getFileName().toString();
+        return name.replaceAll("[^\\w-]", "_");
+    }
+
+    public interface Visitor {
+
+        /**
+         * Accepts a directory, before any of its contents.
+         *
+         * @param path The clean remote path of the directory
+         */
+        void directory(String path);
+
+        /**
+         * Accepts a regular file.
+         *
+         * @param file The local file
+         * @param path The clean remote path of the directory it's in
+         */
+        void file(Path file, String path);
+    }
+}
@@ -0,0 +1,180 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.holysheet.Mime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ChunkBackend} storing chunks as sheets in another Google account. Each upload's chunks are kept in a folder
+ * of their own under the account's "sheetStripes" folder, marked with the ID of the upload's parent so they can be
+ * found again to remove. The folder of an upload is only remembered until it's finished or removed. Requests go
+ * through the account's own {@link Drive}, so are limited by its own quota.
+ */
+public class DriveChunkBackend implements ChunkBackend {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DriveChunkBackend.class);
+
+    private static final String ROOT_NAME = "sheetStripes";
+
+    private final String name;
+    private final Drive drive;
+
+    // Keyed by the ID of the upload's parent
+    private final Map<String, String> folders = new ConcurrentHashMap<>();
+    private volatile String root;
+
+    public DriveChunkBackend(String name, Drive drive) {
+        this.name = name;
+        this.drive = drive;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String upload(FileChunk chunk, CancellationToken cancellation) throws IOException {
+        cancellation.throwIfCancelled();
+
+        var content = new ByteArrayContent("text/tab-separated-values", chunk.getBytes());
+        var request = drive.files().create(new File()
+                .setMimeType(Mime.SHEET.getMime())
+                .setName(chunk.getName())
+                .setProperties(chunk.getProperties())
+                .setParents(Collections.singletonList(getFolder(chunk.getParent()))), content)
+                .setFields("id");
+
+        request.getMediaHttpUploader().setProgressListener(uploader -> {
+            if (cancellation.isCancelled()) {
+                throw new IOException("Upload cancelled");
+            }
+        });
+
+        var id = request.execute().getId();
+        LOGGER.debug("Uploaded {} of {} to {}", chunk.getName(), chunk.getParent().getId(), name);
+        return id;
+    }
+
+    @Override
+    public byte[] export(String id, CancellationToken cancellation) throws IOException {
+        cancellation.throwIfCancelled();
+
+        var byteOut = new ByteArrayOutputStream();
+        drive.files().export(id, "text/tab-separated-values").executeMediaAndDownloadTo(byteOut);
+
+        cancellation.throwIfCancelled();
+        return byteOut.toByteArray();
+    }
+
+    @Override
+    public long getLastModified(File parent) throws IOException {
+        long modified = 0;
+        for (var folder : findFolders(parent)) {
+            var newest = drive.files().list()
+                    .setQ("'" + folder.getId() + "' in parents and trashed = false")
+                    .setOrderBy("modifiedTime desc")
+                    .setPageSize(1)
+                    .setFields("files(modifiedTime)")
+                    .execute()
+                    .getFiles();
+
+            if (newest != null && !newest.isEmpty() && newest.get(0).getModifiedTime() != null) {
+                modified = Math.max(modified, newest.get(0).getModifiedTime().getValue());
+            }
+        }
+
+        return modified;
+    }
+
+    @Override
+    public void finish(File parent) {
+        folders.remove(parent.getId());
+    }
+
+    @Override
+    public void remove(File parent) throws IOException {
+        var found = findFolders(parent);
+        for (var folder : found) {
+            drive.files().delete(folder.getId()).execute();
+        }
+
+        folders.remove(parent.getId());
+        LOGGER.info("Removed {} stripe folders of {} from {}", found.size(), parent.getId(), name);
+    }
+
+    /**
+     * Lists every folder of an upload's chunks, a page at a time.
+     */
+    private List<File> findFolders(File parent) throws IOException {
+        var found = new ArrayList<File>();
+        String pageToken = null;
+        do {
+            var list = drive.files().list()
+                    .setQ("properties has { key='stripeOf' and value='" + parent.getId() + "' } and mimeType = '" + Mime.FOLDER.getMime() + "'")
+                    .setFields("nextPageToken, files(id)")
+                    .setPageToken(pageToken)
+                    .execute();
+
+            if (list.getFiles() != null) {
+                found.addAll(list.getFiles());
+            }
+
+            pageToken = list.getNextPageToken();
+        } while (pageToken != null);
+
+        return found;
+    }
+
+    private String getFolder(File parent) {
+        return folders.computeIfAbsent(parent.getId(), $ -> {
+            try {
+                return drive.files().create(new File()
+                        .setMimeType(Mime.FOLDER.getMime())
+                        .setName(parent.getName())
+                        .setProperties(Map.of("stripeOf", parent.getId()))
+                        .setParents(Collections.singletonList(getRoot())))
+                        .setFields("id")
+                        .execute()
+                        .getId();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private synchronized String getRoot() throws IOException {
+        if (root != null) {
+            return root;
+        }
+
+        var existing = drive.files().list()
+                .setQ("name = '" + ROOT_NAME + "' and mimeType = '" + Mime.FOLDER.getMime() + "' and trashed = false")
+                .setFields("files(id)")
+                .execute()
+                .getFiles();
+
+        if (existing != null && !existing.isEmpty()) {
+            return root = existing.get(0).getId();
+        }
+
+        return root = drive.files().create(new File()
+                .setMimeType(Mime.FOLDER.getMime())
+                .setName(ROOT_NAME))
+                .setFields("id")
+                .execute()
+                .getId();
+    }
+}
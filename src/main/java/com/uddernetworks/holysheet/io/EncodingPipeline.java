@@ -0,0 +1,260 @@
+package com.uddernetworks.holysheet.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Moves an upload's encoding off of the thread reading its input. Written bytes are gathered into blocks, which are
+ * written to the encoder in order on the CPU executor, a block at a time. The encoder's chunk consumer hands each
+ * chunk's upload to {@link #upload(Runnable)}, running it on the I/O executor so no CPU thread waits on a request.
+ *
+ * Both stages are bounded, the writer waiting while too many blocks are waiting to be encoded or too many chunks are
+ * uploading, so a slow stage holds the rest back instead of buffering the input in memory. The first failure of
+ * either stage is thrown to the writer, and no more blocks are encoded after it.
+ */
+class EncodingPipeline extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream encoder;
+    private final Executor cpu;
+    private final Executor io;
+    private final Semaphore blocks;
+    private final int maxUploads;
+
+    // Only touched by the writer
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int length;
+    private CompletableFuture<Void> encoding = CompletableFuture.completedFuture(null);
+
+    // Guarded by this
+    private int uploading;
+    private Throwable failure;
+
+    /**
+     * Creates an {@link EncodingPipeline}.
+     *
+     * @param encoder    The stream to encode with, only ever written to on the CPU executor
+     * @param cpu        The executor to encode on
+     * @param io         The executor to upload on
+     * @param maxBlocks  The amount of blocks that may wait to be encoded before the writer waits
+     * @param maxUploads The amount of chunks that may be uploading before the writer waits
+     */
+    EncodingPipeline(OutputStream encoder, Executor cpu, Executor io, int maxBlocks, int maxUploads) {
+        this.encoder = encoder;
+        this.cpu = cpu;
+        this.io = io;
+        this.blocks = new Semaphore(maxBlocks);
+        this.maxUploads = maxUploads;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[length++] = (byte) b;
+        if (length == block.length) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int copied = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, copied);
+            length += copied;
+            off += copied;
+            len -= copied;
+
+            if (length == block.length) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Uploads a chunk on the I/O executor. Called by the encoder's chunk consumer, in the order the chunks are
+     * encoded.
+     *
+     * @param upload The upload of the chunk
+     */
+    void upload(Runnable upload) {
+        synchronized (this) {
+            uploading++;
+        }
+
+        CompletableFuture.runAsync(upload, io).whenComplete(($, t) -> {
+            synchronized (this) {
+                if (t != null && failure == null) {
+                    failure = unwrap(t);
+                }
+
+                uploading--;
+                notifyAll();
+            }
+        });
+    }
+
+    /**
+     * Encodes the rest of the written bytes and flushes the encoder, waiting for it and every upload to finish.
+     *
+     * @throws IOException If encoding or an upload failed
+     */
+    public void finish() throws IOException {
+        if (length > 0) {
+            submit();
+        }
+
+        encode(encoder::flush);
+        try {
+            encoding.join();
+        } catch (CompletionException | CancellationException ignored) {
+            // Recorded as the failure
+        }
+
+        await();
+    }
+
+    /**
+     * Waits for every upload handed off so far to finish.
+     *
+     * @throws IOException If encoding or an upload failed
+     */
+    public void await() throws IOException {
+        awaitUploads(0);
+        throwIfFailed();
+    }
+
+    /**
+     * Waits for anything still encoding or uploading to stop, ignoring failures, so a failed upload can be cleaned up
+     * without a chunk being written after it.
+     */
+    public void abort() {
+        synchronized (this) {
+            if (failure == null) {
+                failure = new CancellationException("Upload aborted");
+            }
+        }
+
+        try {
+            encoding.join();
+        } catch (CompletionException | CancellationException ignored) {
+            // Already failed
+        }
+
+        synchronized (this) {
+            while (uploading > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void submit() throws IOException {
+        throwIfFailed();
+
+        try {
+            blocks.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to encode");
+        }
+
+        try {
+            awaitUploads(maxUploads);
+        } catch (IOException e) {
+            blocks.release();
+            throw e;
+        }
+
+        var data = block;
+        var dataLength = length;
+        block = new byte[BLOCK_SIZE];
+        length = 0;
+
+        // Released however the block ends, even skipped after a failure
+        encode(() -> encoder.write(data, 0, dataLength)).whenComplete(($, t) -> blocks.release());
+    }
+
+    private CompletableFuture<Void> encode(EncodeTask task) {
+        return encoding = encoding.thenRunAsync(() -> {
+            synchronized (this) {
+                if (failure != null) {
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, cpu).whenComplete(($, t) -> {
+            if (t != null) {
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = unwrap(t);
+                    }
+
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    private synchronized void awaitUploads(int max) throws IOException {
+        while (uploading > max && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for uploads");
+            }
+        }
+
+        throwIfFailed();
+    }
+
+    private synchronized void throwIfFailed() throws IOException {
+        if (failure == null) {
+            return;
+        }
+
+        if (failure instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) failure).getCause();
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+
+        throw new IOException(failure);
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+
+        return t;
+    }
+
+    @FunctionalInterface
+    private interface EncodeTask {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,187 @@
+package com.uddernetworks.holysheet.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Hedges slow requests, such as sheet exports that occasionally take many times longer than the rest. Once a request
+ * has taken longer than a percentile of recent requests, a duplicate is sent and whichever answers first is used, the
+ * other being cancelled. Hedges are capped to a fraction of all requests, so a link that's slow for everything isn't
+ * made slower by doubling its load.
+ *
+ * Requests run on a bounded pool of threads of their own, so the caller can stop waiting on one that's stalled before
+ * sending anything. The losing attempt of a hedged request is interrupted once the other succeeds.
+ */
+public class ExportHedger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportHedger.class);
+
+    private static final int WINDOW = 256;
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_DELAY_MS = 500;
+
+    private static final ExportHedger DEFAULT = new ExportHedger(0.95, 0.05);
+
+    // Enough for every download lane of several transfers along with their hedges, queueing past that
+    private static final int MAX_REQUESTS = 64;
+
+    private static final ExecutorService REQUESTS = createRequestPool();
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(daemon("holysheet-hedge-timer"));
+
+    private final LatencyTracker latencies = new LatencyTracker(WINDOW, MIN_SAMPLES);
+    private final double percentile;
+    private final double maxHedgeRatio;
+    private long requests;
+    private long hedges;
+
+    /**
+     * Creates an {@link ExportHedger}.
+     *
+     * @param percentile    The percentile of recent latencies after which a request is hedged, from 0 to 1
+     * @param maxHedgeRatio The largest fraction of requests that may be hedged
+     */
+    public ExportHedger(double percentile, double maxHedgeRatio) {
+        this.percentile = percentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    public static ExportHedger getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Makes a request, hedging it if slow, blocking until either attempt succeeds or both fail.
+     *
+     * @param request      The request, given a token cancelled once its result isn't needed
+     * @param cancellation The {@link CancellationToken} to abort the request with
+     * @param <T>          The result type
+     * @return The result of the first attempt to succeed
+     */
+    public <T> T call(Function<CancellationToken, T> request, CancellationToken cancellation) {
+        synchronized (this) {
+            requests++;
+        }
+
+        long start = System.currentTimeMillis();
+        var result = new CompletableFuture<T>();
+        var started = new AtomicInteger();
+
+        // Stop waiting as soon as cancelled, even on an attempt stalled before sending anything
+        var registration = cancellation.onCancel(() -> result.completeExceptionally(new CancellationException("Transfer cancelled")));
+        result.whenComplete(($, t) -> registration.unregister());
+        var failed = new AtomicInteger();
+
+        attempt(request, cancellation, result, started, failed);
+        result.whenComplete(($, t) -> {
+            if (t == null) {
+                latencies.record(System.currentTimeMillis() - start);
+            }
+        });
+
+        var delay = latencies.getPercentile(percentile);
+        if (delay.isPresent()) {
+            var timer = TIMER.schedule(() -> {
+                if (!result.isDone() && tryHedge()) {
+                    LOGGER.info("Request taking over {}ms, hedging it", delay.getAsLong());
+                    attempt(request, cancellation, result, started, failed);
+                }
+            }, Math.max(MIN_DELAY_MS, delay.getAsLong()), TimeUnit.MILLISECONDS);
+
+            result.whenComplete(($, t) -> timer.cancel(false));
+        }
+
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private <T> void attempt(Function<CancellationToken, T> request, CancellationToken cancellation, CompletableFuture<T> result, AtomicInteger started, AtomicInteger failed) {
+        var token = new CancellationToken();
+        var registration = cancellation.onCancel(token::cancel);
+        started.incrementAndGet();
+
+        var attempt = new CompletableFuture<T>();
+        var task = REQUESTS.submit(() -> {
+            try {
+                attempt.complete(request.apply(token));
+            } catch (Throwable t) {
+                attempt.completeExceptionally(t);
+            }
+        });
+
+        // The losing attempt is dropped if still queued, or interrupted if already sending
+        result.whenComplete(($, t) -> {
+            registration.unregister();
+            token.cancel();
+            if (!attempt.isDone()) {
+                task.cancel(true);
+            }
+        });
+
+        attempt.whenComplete((value, t) -> {
+            if (t == null) {
+                result.complete(value);
+            } else if (failed.incrementAndGet() == started.get()) {
+                // Only fails once no other attempt may still succeed
+                result.completeExceptionally(t);
+            }
+        });
+    }
+
+    private synchronized boolean tryHedge() {
+        if (hedges + 1 > requests * maxHedgeRatio) {
+            return false;
+        }
+
+        hedges++;
+        return true;
+    }
+
+    /**
+     * @return The latencies of recent requests, as seen by their callers
+     */
+    public LatencyTracker getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return The amount of requests hedged so far
+     */
+    public synchronized long getHedges() {
+        return hedges;
+    }
+
+    private static ExecutorService createRequestPool() {
+        var pool = new ThreadPoolExecutor(MAX_REQUESTS, MAX_REQUESTS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemon("holysheet-export"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        var count = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -2,32 +2,101 @@ package com.uddernetworks.holysheet.io;
 
 import com.google.api.services.drive.model.File;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class FileChunk {
 
     private final File parent;
     private final byte[] bytes;
     private final int index;
+    private final long bitOffset;
 
-    public FileChunk(File parent, byte[] bytes, int index) {
+    // Set only for parity chunks, see ParityEncoder
+    private final int shard;
+    private final int[] lengths;
+
+    public FileChunk(File parent, byte[] bytes, int index, long bitOffset) {
+        this(parent, bytes, index, bitOffset, -1, null);
+    }
+
+    private FileChunk(File parent, byte[] bytes, int index, long bitOffset, int shard, int[] lengths) {
         this.parent = parent;
         this.bytes = bytes;
         this.index = index;
+        this.bitOffset = bitOffset;
+        this.shard = shard;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Creates a parity chunk, holding a parity shard of a group of data chunks.
+     *
+     * @param parent  The parent folder.
+     * @param bytes   The encoded parity shard.
+     * @param group   The index of the group.
+     * @param shard   The index of the parity shard in the group.
+     * @param lengths The lengths of the group's data shards, needed to rebuild them.
+     * @return The parity chunk.
+     */
+    public static FileChunk parity(File parent, byte[] bytes, int group, int shard, int[] lengths) {
+        return new FileChunk(parent, bytes, group, 0, shard, lengths);
     }
 
     /**
-     * Return a Map with the chunk's properties: index, size. All values are
-     * {@link String}s.
-     * @return immutable map implementation with the keys index and size.
+     * Return a Map with the chunk's properties: index, size, bitOffset, sha.
+     * All values are {@link String}s. Parity chunks instead have the keys
+     * parity (Their group), shard, lengths and size.
+     * @return immutable map implementation with the keys index, size, bitOffset and sha.
      */
     public Map<String, String> getProperties() {
+        if (isParity()) {
+            return Map.of(
+                    "parity", String.valueOf(index),
+                    "shard", String.valueOf(shard),
+                    "lengths", Arrays.stream(lengths).mapToObj(String::valueOf).collect(Collectors.joining(",")),
+                    "size", String.valueOf(bytes.length)
+            );
+        }
+
         return Map.of(
                 "index", String.valueOf(index),
-                "size", String.valueOf(bytes.length)
+                "size", String.valueOf(bytes.length),
+                "bitOffset", String.valueOf(bitOffset),
+                "sha", getHash()
         );
     }
 
+    /**
+     * Gets the SHA-256 hash of the chunk's encoded bytes, used to tell which
+     * chunks changed when updating a file.
+     *
+     * @return The hash in unpadded URL-safe Base64
+     */
+    public String getHash() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return The name of the chunk's sheet
+     */
+    public String getName() {
+        return isParity() ? "parity-" + index + "-" + shard : "chunk-" + index;
+    }
+
+    public boolean isParity() {
+        return lengths != null;
+    }
+
     public File getParent() {
         return parent;
     }
@@ -39,4 +108,8 @@ public class FileChunk {
     public int getIndex() {
         return index;
     }
+
+    public long getBitOffset() {
+        return bitOffset;
+    }
 }
@@ -0,0 +1,198 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.client.util.Data;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.holysheet.SheetManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The virtual folders of the sheetStore, each stored as an empty marker file named by its path. Adding a folder only
+ * creates its marker, so writers never overwrite each other. The folders are cached, and only looked for again once
+ * the sheetStore's "folderVersion" property changes, which is set to a new value after every added folder. Only
+ * markers created since the newest one seen are listed then, so adding a folder doesn't list every folder again. All
+ * markers are listed now and then, to drop any trashed outside of HolySheet.
+ *
+ * Folders in the legacy comma-joined "folders" property of the sheetStore are migrated to markers when first read.
+ */
+public class FolderIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderIndex.class);
+
+    private static final String MARKER = "folderMarker";
+    private static final String VERSION = "folderVersion";
+    private static final String LEGACY = "folders";
+    private static final String MARKER_MIME = "text/plain";
+
+    // How far before the newest marker seen to list from, for markers only listed some time after being created
+    private static final long OVERLAP_MS = 10_000;
+    private static final long FULL_LOAD_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final SheetManager sheetManager;
+    private final Drive drive;
+
+    private final Set<String> folders = ConcurrentHashMap.newKeySet();
+    private volatile String version;
+
+    // Guarded by this
+    private DateTime newest;
+    private long lastFullLoad;
+
+    public FolderIndex(SheetManager sheetManager, Drive drive) {
+        this.sheetManager = sheetManager;
+        this.drive = drive;
+    }
+
+    /**
+     * Brings the cache up to date with Drive, listing the folders again only if they've changed.
+     *
+     * @return The current version of the folders, or an empty string if none have been added
+     * @throws IOException If a drive request throws an exception
+     */
+    public synchronized String refresh() throws IOException {
+        var store = drive.files().get(sheetManager.getSheetStore().getId()).setFields("properties").execute();
+        var properties = store.getProperties() == null ? Collections.<String, String>emptyMap() : store.getProperties();
+        var current = properties.getOrDefault(VERSION, "");
+
+        if (version == null || System.currentTimeMillis() - lastFullLoad > FULL_LOAD_INTERVAL_MS) {
+            load(null);
+            lastFullLoad = System.currentTimeMillis();
+            version = current;
+        } else if (!current.equals(version)) {
+            load(getListedFrom());
+            version = current;
+        }
+
+        var legacy = properties.getOrDefault(LEGACY, "");
+        if (!legacy.isBlank()) {
+            migrate(legacy);
+        }
+
+        return version;
+    }
+
+    /**
+     * Adds a folder if it doesn't exist.
+     *
+     * @param path The clean path of the folder
+     * @throws IOException If a drive request throws an exception
+     */
+    public synchronized void add(String path) throws IOException {
+        refresh();
+
+        if (folders.contains(path)) {
+            return;
+        }
+
+        createMarker(path);
+
+        // Another writer's marker may have been created since the last listing, which the version written hides
+        load(getListedFrom());
+    }
+
+    /**
+     * Gets the cached folders, as of the last {@link #refresh()}.
+     *
+     * @return The sorted folder paths
+     */
+    public List<String> getFolders() {
+        return folders.stream().sorted().collect(Collectors.toUnmodifiableList());
+    }
+
+    public boolean contains(String path) {
+        return folders.contains(path);
+    }
+
+    /**
+     * Lists folder markers, merging them into the cache.
+     *
+     * @param since The time to list markers created after, or null to list every marker and drop any folders missing
+     * @throws IOException If a drive request throws an exception
+     */
+    private void load(DateTime since) throws IOException {
+        var loaded = new HashMap<String, String>();
+        var query = "'" + sheetManager.getSheetStore().getId() + "' in parents and properties has { key='" + MARKER + "' and value='true' } and trashed = false";
+        if (since != null) {
+            query += " and createdTime > '" + since.toStringRfc3339() + "'";
+        }
+
+        String pageToken = null;
+        do {
+            var result = drive.files().list()
+                    .setQ(query)
+                    .setFields("nextPageToken, files(id, name, createdTime)")
+                    .setPageSize(1000)
+                    .setPageToken(pageToken)
+                    .execute();
+
+            if (result.getFiles() != null) {
+                for (var file : result.getFiles()) {
+                    loaded.put(file.getName(), file.getId());
+                    if (file.getCreatedTime() != null && (newest == null || file.getCreatedTime().getValue() > newest.getValue())) {
+                        newest = file.getCreatedTime();
+                    }
+                }
+            }
+
+            pageToken = result.getNextPageToken();
+        } while (pageToken != null);
+
+        if (since == null) {
+            folders.retainAll(loaded.keySet());
+        }
+
+        folders.addAll(loaded.keySet());
+
+        LOGGER.debug("Loaded {} {}folders, {} in total", loaded.size(), since == null ? "" : "new ", folders.size());
+    }
+
+    private DateTime getListedFrom() {
+        return newest == null ? null : new DateTime(newest.getValue() - OVERLAP_MS);
+    }
+
+    private void createMarker(String path) throws IOException {
+        var marker = drive.files().create(new File()
+                .setMimeType(MARKER_MIME)
+                .setName(path)
+                .setProperties(Collections.singletonMap(MARKER, "true"))
+                .setParents(Collections.singletonList(sheetManager.getSheetStore().getId())))
+                .setFields("id")
+                .execute();
+
+        folders.add(path);
+
+        // A new value every time, so concurrent writers can't leave the version unchanged. The version written is
+        // already up to date here, so only another writer changing it lists again.
+        sheetManager.addProperties(sheetManager.getSheetStore().getId(), Collections.singletonMap(VERSION, marker.getId()));
+        version = marker.getId();
+    }
+
+    private void migrate(String legacy) throws IOException {
+        var paths = Arrays.stream(legacy.split(","))
+                .filter(path -> !path.isBlank() && !folders.contains(path))
+                .collect(Collectors.toList());
+
+        LOGGER.info("Migrating {} legacy folders", paths.size());
+
+        for (var path : paths) {
+            createMarker(path);
+        }
+
+        // Drive removes properties explicitly set to null
+        var properties = new HashMap<String, String>();
+        properties.put(LEGACY, Data.NULL_STRING);
+        sheetManager.addProperties(sheetManager.getSheetStore().getId(), properties);
+    }
+}
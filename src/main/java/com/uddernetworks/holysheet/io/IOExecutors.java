@@ -0,0 +1,86 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors {@link SheetIO} runs its work on, kept off of the common pool. Blocking Drive and Sheets requests run
+ * on the I/O executor, while encoding and decoding run on the CPU executor. Either may be swapped out, such as for an
+ * executor of virtual threads on runtimes that have them.
+ */
+public class IOExecutors {
+
+    private static final int IO_THREADS = 16;
+    private static final int CPU_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static IOExecutors defaultExecutors;
+
+    private final Executor io;
+    private final Executor cpu;
+    private final int cpuThreads;
+
+    /**
+     * Creates an {@link IOExecutors}, its CPU executor taken to run a task per processor.
+     *
+     * @param io  The executor for blocking requests
+     * @param cpu The executor for encoding and decoding
+     */
+    public IOExecutors(Executor io, Executor cpu) {
+        this(io, cpu, CPU_THREADS);
+    }
+
+    /**
+     * Creates an {@link IOExecutors}.
+     *
+     * @param io         The executor for blocking requests
+     * @param cpu        The executor for encoding and decoding
+     * @param cpuThreads The amount of tasks the CPU executor runs at once, bounding the work handed to it
+     */
+    public IOExecutors(Executor io, Executor cpu, int cpuThreads) {
+        this.io = io;
+        this.cpu = cpu;
+        this.cpuThreads = Math.max(1, cpuThreads);
+    }
+
+    /**
+     * Gets the shared default executors, bounded pools of daemon threads created on first use.
+     *
+     * @return The default {@link IOExecutors}
+     */
+    public static synchronized IOExecutors getDefault() {
+        if (defaultExecutors == null) {
+            defaultExecutors = new IOExecutors(createPool("holysheet-io", IO_THREADS), createPool("holysheet-cpu", CPU_THREADS), CPU_THREADS);
+        }
+
+        return defaultExecutors;
+    }
+
+    private static Executor createPool(String name, int threads) {
+        var count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            var thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        var pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public Executor getIo() {
+        return io;
+    }
+
+    public Executor getCpu() {
+        return cpu;
+    }
+
+    public int getCpuThreads() {
+        return cpuThreads;
+    }
+}
@@ -0,0 +1,61 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Keeps the latencies of the most recent requests of a kind, to tell how long a request usually takes.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    /**
+     * Creates a {@link LatencyTracker}.
+     *
+     * @param window     The amount of recent latencies kept
+     * @param minSamples The amount of latencies needed before a percentile is given
+     */
+    public LatencyTracker(int window, int minSamples) {
+        this.samples = new long[window];
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Records the latency of a request, replacing the oldest if the window is full.
+     *
+     * @param latencyMs The milliseconds the request took
+     */
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Gets a percentile of the recent latencies.
+     *
+     * @param percentile The percentile, from 0 to 1
+     * @return The latency in milliseconds, or empty if too few have been recorded
+     */
+    public OptionalLong getPercentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < minSamples) {
+                return OptionalLong.empty();
+            }
+
+            sorted = Arrays.copyOf(samples, count);
+        }
+
+        Arrays.sort(sorted);
+        return OptionalLong.of(sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)]);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,81 @@
+package com.uddernetworks.holysheet.io;
+
+import com.uddernetworks.holysheet.encoding.DecodedChunk;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes the decoded bytes of a file to a {@link ByteSink} in order, starting from a byte offset and ending at the
+ * file's size. The bytes of a {@link DecodedChunk} shared with the previous chunk are joined before being written, so
+ * the chunks must be given in order, starting from one whose shared first byte is before the offset.
+ */
+class OrderedChunkWriter {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ByteSink sink;
+    private final long offset;
+    private final long size;
+
+    // The low bits of the byte after the last chunk, to be joined with the next chunk's first byte
+    private int carry;
+    private boolean hasCarry;
+
+    /**
+     * Creates an {@link OrderedChunkWriter}.
+     *
+     * @param sink   The {@link ByteSink} to write to
+     * @param offset The offset of the first byte to write
+     * @param size   The size of the file, past which any decoded padding is dropped
+     */
+    OrderedChunkWriter(ByteSink sink, long offset, long size) {
+        this.sink = sink;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Writes the next chunk, joining its first byte with the previous chunk's last.
+     *
+     * @param chunk The {@link DecodedChunk}
+     * @return A {@link CompletableFuture} completed once the sink can take more
+     */
+    CompletableFuture<Void> write(DecodedChunk chunk) {
+        var bytes = chunk.getBytes();
+        long position = chunk.getPosition();
+        int start = 0;
+
+        if (chunk.getHeadBits() > 0 && bytes.length > 0) {
+            if (hasCarry) {
+                bytes[0] |= carry;
+            } else {
+                // Only the first chunk written has no previous chunk, and its shared byte is before the offset
+                start = 1;
+                position++;
+            }
+        }
+
+        hasCarry = chunk.getTailBits() > 0;
+        carry = chunk.getTail();
+
+        return write(position, bytes, start);
+    }
+
+    /**
+     * Writes whole decoded bytes.
+     *
+     * @param position The position of the first byte in the file
+     * @param bytes    The bytes
+     * @param start    The index of the first byte in the array
+     * @return A {@link CompletableFuture} completed once the sink can take more
+     */
+    CompletableFuture<Void> write(long position, byte[] bytes, int start) {
+        long from = Math.max(position, offset);
+        long to = Math.min(position + bytes.length - start, size);
+        if (from >= to) {
+            return DONE;
+        }
+
+        return sink.write(bytes, (int) (start + from - position), (int) (to - from));
+    }
+}
@@ -0,0 +1,150 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The index of files packed into a container, stored as the container's "packIndex" metadata sheet. Each entry is the
+ * name, path, offset and length of a file in the container's unencoded data.
+ */
+public class PackIndex {
+
+    public static final String METADATA = "packIndex";
+
+    // Separates the container ID and entry index in the ID of a packed file, which Drive IDs never contain
+    private static final String ID_SEPARATOR = "~";
+
+    private static final Gson GSON = new Gson();
+
+    private final List<Entry> entries;
+
+    public PackIndex() {
+        this(new ArrayList<>());
+    }
+
+    private PackIndex(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static String getEntryId(String containerId, int index) {
+        return containerId + ID_SEPARATOR + index;
+    }
+
+    public static boolean isEntryId(String id) {
+        return id.contains(ID_SEPARATOR);
+    }
+
+    public static String getContainerId(String entryId) {
+        return entryId.substring(0, entryId.indexOf(ID_SEPARATOR));
+    }
+
+    public static int getEntryIndex(String entryId) {
+        return Integer.parseInt(entryId.substring(entryId.indexOf(ID_SEPARATOR) + 1));
+    }
+
+    public static PackIndex fromBytes(byte[] bytes) {
+        List<Entry> entries = GSON.fromJson(new String(bytes, StandardCharsets.UTF_8), new TypeToken<List<Entry>>() {}.getType());
+        return new PackIndex(entries == null ? new ArrayList<>() : new ArrayList<>(entries));
+    }
+
+    public byte[] toBytes() {
+        return GSON.toJson(entries).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * Gets an entry by its index, which is part of its ID.
+     *
+     * @param index The index
+     * @return The entry, or null if it doesn't exist or has been removed
+     */
+    public Entry get(int index) {
+        if (index < 0 || index >= entries.size()) {
+            return null;
+        }
+
+        return entries.get(index);
+    }
+
+    /**
+     * Replaces an existing entry, such as to move it to another path.
+     *
+     * @param index The index
+     * @param entry The new entry
+     */
+    public void set(int index, Entry entry) {
+        if (get(index) == null) {
+            throw new IllegalArgumentException("No entry at index " + index);
+        }
+
+        entries.set(index, entry);
+    }
+
+    /**
+     * Removes an entry. Its place is kept, so the indices of other entries don't change.
+     *
+     * @param index The index
+     */
+    public void remove(int index) {
+        if (index >= 0 && index < entries.size()) {
+            entries.set(index, null);
+        }
+    }
+
+    /**
+     * @return All entries, with removed ones as null
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public boolean isEmpty() {
+        return entries.stream().allMatch(entry -> entry == null);
+    }
+
+    public static class Entry {
+        @SerializedName("n")
+        private final String name;
+
+        @SerializedName("p")
+        private final String path;
+
+        @SerializedName("o")
+        private final long offset;
+
+        @SerializedName("l")
+        private final long length;
+
+        public Entry(String name, String path, long offset, long length) {
+            this.name = name;
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Compression;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
+import com.uddernetworks.holysheet.encoding.EncodingOutputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Appends many small files into shared containers, so each file costs no Drive objects or requests of its own. A
+ * container is uploaded like any other file, and once it reaches its size it's closed and given a {@link PackIndex} of
+ * the files in it.
+ */
+public class PackWriter implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackWriter.class);
+
+    private final SheetIO sheetIO;
+    private final long maxSheetSize;
+    private final long containerSize;
+    private final Compression compress;
+    private final Upload uploadType;
+    private final CancellationToken cancellation = new CancellationToken();
+
+    private File container;
+    private EncodingOutputStream encodingOut;
+    private CompletableFuture<Void> uploaded;
+    private PackIndex index;
+
+    /**
+     * Creates a {@link PackWriter}.
+     *
+     * @param sheetIO       The {@link SheetIO} to upload with
+     * @param maxSheetSize  The maximum size in bytes of a sheet
+     * @param containerSize The unencoded size in bytes a container is closed at
+     * @param compress      The {@link Compression} to use
+     * @param uploadType    The {@link Upload} type to use
+     */
+    public PackWriter(SheetIO sheetIO, long maxSheetSize, long containerSize, Compression compress, Upload uploadType) {
+        this.sheetIO = sheetIO;
+        this.maxSheetSize = maxSheetSize;
+        this.containerSize = containerSize;
+        this.compress = compress;
+        this.uploadType = uploadType;
+    }
+
+    /**
+     * Appends a local file to the current container, opening a new one if needed.
+     *
+     * @param file The local file
+     * @param path The remote path of the file
+     * @throws IOException If reading the file or uploading fails
+     */
+    public void add(java.io.File file, String path) throws IOException {
+        cancellation.throwIfCancelled();
+
+        if (container == null) {
+            open();
+        }
+
+        long offset = encodingOut.getInputLength();
+        try (var in = new FileInputStream(file)) {
+            IOUtils.copy(in, encodingOut);
+        }
+
+        var name = FilenameUtils.getName(file.getAbsolutePath());
+        index.add(new PackIndex.Entry(name, sheetIO.cleanPath(path), offset, encodingOut.getInputLength() - offset));
+
+        LOGGER.info("Packed {} into {}", name, container.getName());
+
+        if (encodingOut.getInputLength() >= containerSize) {
+            finish();
+        }
+    }
+
+    private void open() throws IOException {
+        index = new PackIndex();
+        encodingOut = new EncodingOutputStream(maxSheetSize);
+        container = sheetIO.createParent("container-" + System.currentTimeMillis(), "/", compress, uploadType, true);
+        uploaded = sheetIO.processRawStream(encodingOut, containerSize, (int) maxSheetSize, container, uploadType, cancellation);
+
+        LOGGER.info("Opened container {} ({})", container.getName(), container.getId());
+    }
+
+    private void finish() throws IOException {
+        encodingOut.flush();
+        uploaded.join();
+        sheetIO.savePackIndex(container, index);
+
+        LOGGER.info("Closed container {} with {} files", container.getName(), index.getEntries().size());
+
+        container = null;
+        encodingOut = null;
+        uploaded = null;
+        index = null;
+    }
+
+    /**
+     * Cancels packing, trashing the current container. Containers already closed are kept.
+     */
+    public void cancel() {
+        cancellation.cancel();
+    }
+
+    /**
+     * Closes the current container, if any.
+     *
+     * @throws IOException If uploading fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (container != null && !cancellation.isCancelled()) {
+            finish();
+        }
+    }
+}
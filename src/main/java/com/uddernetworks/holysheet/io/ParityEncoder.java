@@ -0,0 +1,151 @@
+package com.uddernetworks.holysheet.io;
+
+import com.uddernetworks.holysheet.encoding.ReedSolomon;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Computes the parity shards of an upload's chunks as they're uploaded, a group at a time. Shards are the chunks'
+ * encoded bytes without newlines, the same as they decode from whatever line endings a sheet is exported with, and
+ * padded with zeros to the longest of their group. The last group may have fewer chunks, the rest taken as empty.
+ *
+ * A group is held in memory until its last chunk, so its shards are reserved from the upload's {@link UploadBudget} as
+ * the group starts and released once its parity is computed.
+ */
+class ParityEncoder {
+
+    private final ReedSolomon code;
+    private final ParityConsumer consumer;
+    private final UploadBudget budget;
+    private final long groupSize;
+    private final byte[][] data;
+    private int count;
+    private int group;
+    private boolean reserved;
+
+    /**
+     * Creates a {@link ParityEncoder}.
+     *
+     * @param code      The code to compute the parity with, its data shards being the chunks of a group
+     * @param consumer  The consumer of each group's parity shards, on the thread adding its last chunk
+     * @param budget    The {@link UploadBudget} to reserve each group from, or null for no limit
+     * @param chunkSize The largest size in bytes of a chunk
+     */
+    ParityEncoder(ReedSolomon code, ParityConsumer consumer, UploadBudget budget, long chunkSize) {
+        this.code = code;
+        this.consumer = consumer;
+        this.budget = budget;
+        this.groupSize = chunkSize * code.getDataShards();
+        this.data = new byte[code.getDataShards()][];
+    }
+
+    /**
+     * Adds the next chunk, computing its group's parity if it's the group's last. The first chunk of a group blocks
+     * until the budget has room for the group.
+     *
+     * @param chunk The encoded bytes of the chunk
+     */
+    void add(byte[] chunk) {
+        if (count == 0) {
+            reserve();
+        }
+
+        data[count++] = toShard(chunk);
+        if (count == data.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Computes the parity of the last group, if it has any chunks.
+     */
+    void finish() {
+        if (count > 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Releases the current group's reservation without computing its parity, for an upload that has failed.
+     */
+    void abort() {
+        Arrays.fill(data, null);
+        count = 0;
+        release();
+    }
+
+    private void reserve() {
+        if (budget == null) {
+            return;
+        }
+
+        try {
+            budget.acquireBuffer(groupSize);
+            reserved = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to buffer parity group " + group, e);
+        }
+    }
+
+    private void release() {
+        if (reserved) {
+            reserved = false;
+            budget.releaseBuffer(groupSize);
+        }
+    }
+
+    private void flush() {
+        var lengths = new int[data.length];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            lengths[i] = data[i].length;
+            length = Math.max(length, lengths[i]);
+        }
+
+        var padded = new byte[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            padded[i] = i < count ? Arrays.copyOf(data[i], length) : new byte[length];
+        }
+
+        Arrays.fill(data, null);
+        count = 0;
+
+        try {
+            consumer.accept(group++, lengths, code.encode(padded, length));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Gets the shard of a chunk, its encoded bytes without newlines.
+     *
+     * @param encoded The encoded bytes, as uploaded or exported
+     * @return The shard
+     */
+    static byte[] toShard(byte[] encoded) {
+        var out = new ByteArrayOutputStream(encoded.length);
+        for (byte b : encoded) {
+            if (b != '\n' && b != '\r') {
+                out.write(b);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    interface ParityConsumer {
+
+        /**
+         * Accepts the parity of a group.
+         *
+         * @param group   The index of the group
+         * @param lengths The lengths of the group's data shards before padding, 0 past the last chunk
+         * @param parity  The parity shards
+         */
+        void accept(int group, int[] lengths, byte[][] parity);
+    }
+}
@@ -0,0 +1,233 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.holysheet.encoding.ReedSolomon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Downloads a group of data sheets along with their parity sheets (See {@link ParityEncoder}), all at once. Data
+ * sheets are written as they arrive, and once as many sheets have arrived as there are data sheets, any still missing
+ * are rebuilt from what arrived and the stragglers are aborted. A slow or failing sheet therefore only holds up a group
+ * if more sheets are slow than there are parity sheets.
+ */
+class ParityGroup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParityGroup.class);
+
+    private final ReedSolomon code;
+    private final List<File> data;
+    private final File[] parity;
+    private final int[] lengths;
+    private final BiFunction<File, CancellationToken, byte[]> downloader;
+    private final BiConsumer<File, byte[]> writer;
+    private final Executor io;
+    private final Executor cpu;
+
+    // Aborts the downloads still running once the group can be written without them
+    private final CancellationToken stragglers = new CancellationToken();
+
+    // The data shards followed by the parity shards, null until arrived
+    private final byte[][] shards;
+    private final boolean[] written;
+    private final List<CompletableFuture<Void>> writes = new ArrayList<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private int arrived;
+    private int failed;
+    private int writtenCount;
+    private boolean rebuilding;
+
+    /**
+     * Creates a {@link ParityGroup}.
+     *
+     * @param code       The code the parity was computed with
+     * @param data       The data sheets of the group, at most as many as the code has data shards
+     * @param parity     The parity sheets of the group by shard, null where missing
+     * @param lengths    The lengths of the data shards recorded on the parity sheets, or null if there are none
+     * @param downloader Downloads a sheet, giving the shard of a parity sheet or the encoded bytes of a data sheet
+     * @param writer     Decodes and writes the encoded bytes of a data sheet
+     * @param io         The executor to download on
+     * @param cpu        The executor to rebuild and write on
+     */
+    ParityGroup(ReedSolomon code, List<File> data, File[] parity, int[] lengths, BiFunction<File, CancellationToken, byte[]> downloader, BiConsumer<File, byte[]> writer, Executor io, Executor cpu) {
+        this.code = code;
+        this.data = data;
+        this.parity = lengths == null ? new File[parity.length] : parity;
+        this.lengths = lengths;
+        this.downloader = downloader;
+        this.writer = writer;
+        this.io = io;
+        this.cpu = cpu;
+        this.shards = new byte[code.getDataShards() + code.getParityShards()][];
+        this.written = new boolean[code.getDataShards()];
+
+        // Shards past the last chunk are empty, so are known without downloading
+        for (int i = data.size(); i < written.length; i++) {
+            shards[i] = new byte[0];
+            written[i] = true;
+            writtenCount++;
+            arrived++;
+        }
+    }
+
+    /**
+     * Starts downloading every sheet of the group.
+     *
+     * @param cancellation The {@link CancellationToken} to abort the download with
+     * @return A {@link CompletableFuture} completed once every data sheet has arrived or been rebuilt
+     */
+    CompletableFuture<Void> start(CancellationToken cancellation) {
+        // Stragglers are cancelled once the group is ready, so the download's token needn't keep the group after
+        var registration = cancellation.onCancel(stragglers::cancel);
+        ready.whenComplete(($, t) -> registration.unregister());
+
+        for (int i = 0; i < data.size(); i++) {
+            int shard = i;
+            download(data.get(i)).thenAccept(bytes -> onData(shard, bytes));
+        }
+
+        for (int i = 0; i < parity.length; i++) {
+            if (parity[i] != null) {
+                int shard = written.length + i;
+                download(parity[i]).thenAccept(bytes -> onParity(shard, bytes));
+            }
+        }
+
+        return ready;
+    }
+
+    /**
+     * @return A {@link CompletableFuture} completed once every data sheet has been written
+     */
+    CompletableFuture<Void> getComplete() {
+        return ready.thenCompose($ -> {
+            synchronized (this) {
+                return CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new));
+            }
+        });
+    }
+
+    private CompletableFuture<byte[]> download(File file) {
+        return CompletableFuture.supplyAsync(() -> downloader.apply(file, stragglers), io).exceptionally(t -> {
+            onFailure(file, t);
+            return null;
+        });
+    }
+
+    private void onData(int shard, byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+
+        var encoded = ParityEncoder.toShard(bytes);
+        synchronized (this) {
+            // Anything arriving once rebuilding has started is left to the rebuild
+            if (written[shard] || rebuilding) {
+                return;
+            }
+
+            if (lengths != null && encoded.length != lengths[shard]) {
+                LOGGER.warn("Sheet {} is {} bytes instead of {}, rebuilding it instead", data.get(shard).getName(), encoded.length, lengths[shard]);
+                onFailure(data.get(shard), null);
+                return;
+            }
+
+            shards[shard] = encoded;
+            write(shard, encoded);
+            arrived++;
+            progress();
+        }
+    }
+
+    private void onParity(int shard, byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (bytes.length != Arrays.stream(lengths).max().orElse(0)) {
+                LOGGER.warn("Parity sheet {} is {} bytes, ignoring it", parity[shard - written.length].getName(), bytes.length);
+                onFailure(parity[shard - written.length], null);
+                return;
+            }
+
+            shards[shard] = bytes;
+            arrived++;
+            progress();
+        }
+    }
+
+    private synchronized void onFailure(File file, Throwable t) {
+        if (ready.isDone()) {
+            return;
+        }
+
+        failed++;
+        if (t != null) {
+            LOGGER.warn("Couldn't download " + file.getName() + ", rebuilding it if possible", t);
+        }
+
+        long available = data.size() + Arrays.stream(parity).filter(sheet -> sheet != null).count() + (written.length - data.size());
+        if (available - failed < written.length) {
+            stragglers.cancel();
+            ready.completeExceptionally(new RuntimeException("Only " + (available - failed) + " sheets of a group of " + written.length + " could be downloaded", t));
+        }
+    }
+
+    private void progress() {
+        if (writtenCount == written.length) {
+            stragglers.cancel();
+            ready.complete(null);
+            return;
+        }
+
+        if (arrived < written.length || rebuilding || lengths == null) {
+            return;
+        }
+
+        rebuilding = true;
+        stragglers.cancel();
+
+        var present = shards.clone();
+        writes.add(CompletableFuture.runAsync(() -> rebuild(present), cpu));
+        ready.complete(null);
+    }
+
+    private void rebuild(byte[][] present) {
+        int length = Arrays.stream(lengths).max().orElse(0);
+        for (int i = 0; i < present.length; i++) {
+            if (present[i] != null && present[i].length != length) {
+                present[i] = Arrays.copyOf(present[i], length);
+            }
+        }
+
+        code.reconstruct(present, length);
+
+        for (int i = 0; i < data.size(); i++) {
+            synchronized (this) {
+                if (written[i]) {
+                    continue;
+                }
+
+                written[i] = true;
+            }
+
+            LOGGER.info("Rebuilt {} from parity", data.get(i).getName());
+            writer.accept(data.get(i), Arrays.copyOf(present[i], lengths[i]));
+        }
+    }
+
+    private void write(int shard, byte[] encoded) {
+        written[shard] = true;
+        writtenCount++;
+        writes.add(CompletableFuture.runAsync(() -> writer.accept(data.get(shard), encoded), cpu));
+    }
+}
@@ -0,0 +1,90 @@
+package com.uddernetworks.holysheet.io;
+
+import com.uddernetworks.holysheet.encoding.DecodedChunk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A download destination that is preallocated to its final size, and accepts {@link DecodedChunk}s in any order from
+ * any thread, writing each at its own position. Bytes shared between two chunks are written once both halves are in.
+ */
+public class PositionalFileSink implements Closeable {
+
+    private static final int HEAD = 0x100;
+    private static final int TAIL = 0x200;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long length;
+
+    // Shared bytes waiting on their other half, flagged with HEAD and/or TAIL
+    private final Map<Long, Integer> partials = new ConcurrentHashMap<>();
+
+    public PositionalFileSink(java.io.File destination, long length) throws IOException {
+        this.file = new RandomAccessFile(destination, "rw");
+        this.file.setLength(length);
+        this.channel = file.getChannel();
+        this.length = length;
+    }
+
+    /**
+     * Writes a decoded chunk at its position.
+     *
+     * @param chunk The {@link DecodedChunk}
+     * @throws IOException If writing to the file fails
+     */
+    public void write(DecodedChunk chunk) throws IOException {
+        var bytes = chunk.getBytes();
+        int start = 0;
+
+        if (chunk.getHeadBits() > 0 && bytes.length > 0) {
+            writePartial(chunk.getPosition(), (bytes[0] & 255) | HEAD);
+            start = 1;
+        }
+
+        var buffer = ByteBuffer.wrap(bytes, start, bytes.length - start);
+        long position = chunk.getPosition() + start;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        if (chunk.getTailBits() > 0) {
+            writePartial(chunk.getPosition() + bytes.length, chunk.getTail() | TAIL);
+        }
+    }
+
+    private void writePartial(long position, int half) throws IOException {
+        int merged = partials.merge(position, half, (a, b) -> a | b);
+        if ((merged & (HEAD | TAIL)) == (HEAD | TAIL)) {
+            partials.remove(position);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) merged}), position);
+        }
+    }
+
+    /**
+     * @return The length the file was preallocated to
+     */
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!partials.isEmpty()) {
+                throw new IOException("Missing chunk data for " + partials.size() + " shared bytes");
+            }
+
+            // The last chunk may decode padding past the real end
+            channel.truncate(length);
+        } finally {
+            file.close();
+        }
+    }
+}
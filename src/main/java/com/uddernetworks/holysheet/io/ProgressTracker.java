@@ -0,0 +1,229 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the progress of a transfer as bytes move over the network, rather than as whole sheets finish, so even a
+ * single sheet reports progress along the way. Progress is counted in units of the transfer's choosing, such as
+ * encoded bytes sent, and reported scaled to the size of the file. Updates are coalesced to at most one per interval,
+ * as listeners such as gRPC streams would otherwise get one per buffer written, with the last update always sent
+ * once the transfer completes.
+ *
+ * Parts of the transfer that may be retried or hedged report their own progress by key, of which only the furthest
+ * is counted, so a part fetched twice isn't counted twice.
+ */
+public class ProgressTracker {
+
+    public static final long DEFAULT_INTERVAL_MS = 250;
+
+    private static final double SMOOTHING = 0.3;
+
+    // Until complete, progress stops short of done, as the total may have been estimated
+    private static final double MAX_INCOMPLETE = 0.99;
+
+    private final long intervalMs;
+    private final Consumer<Progress> listener;
+
+    private final Map<Object, Long> parts = new ConcurrentHashMap<>();
+    private final AtomicLong units = new AtomicLong();
+    private volatile long size;
+    private volatile long totalUnits;
+
+    // Written while holding this, read without it to skip updates cheaply
+    private volatile long lastUpdate = System.currentTimeMillis();
+    // Guarded by this
+    private long lastUnits;
+    private double rate; // Units per millisecond, an exponentially weighted average, 0 until measured
+    private boolean completed;
+
+    /**
+     * Creates a {@link ProgressTracker}, reporting nothing until it's started.
+     *
+     * @param intervalMs The minimum milliseconds between updates, 0 to send each as it happens
+     * @param listener   Accepts each update. Updates are never given concurrently.
+     */
+    public ProgressTracker(long intervalMs, Consumer<Progress> listener) {
+        this.intervalMs = intervalMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a {@link ProgressTracker} reporting just the 0-1 fraction done, at the default interval.
+     *
+     * @param statusUpdate Accepts the fraction done, or null to report nothing
+     * @return The {@link ProgressTracker}
+     */
+    public static ProgressTracker of(Consumer<Double> statusUpdate) {
+        return new ProgressTracker(DEFAULT_INTERVAL_MS, progress -> {
+            if (statusUpdate != null) {
+                statusUpdate.accept(progress.getFraction());
+            }
+        });
+    }
+
+    /**
+     * Starts tracking once the size of the transfer is known, sending an update of no progress.
+     *
+     * @param size       The size in bytes of the file being transferred
+     * @param totalUnits The units the whole transfer is expected to take, which may be an estimate
+     */
+    public void start(long size, long totalUnits) {
+        this.size = size;
+        this.totalUnits = totalUnits;
+
+        synchronized (this) {
+            lastUpdate = System.currentTimeMillis();
+            listener.accept(toProgress());
+        }
+    }
+
+    /**
+     * Adds units done, sending an update if the interval has passed since the last one.
+     *
+     * @param done The units done
+     */
+    public void add(long done) {
+        units.addAndGet(done);
+
+        long now = System.currentTimeMillis();
+        if (now - lastUpdate < intervalMs) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!completed && now - lastUpdate >= intervalMs) {
+                update(now);
+            }
+        }
+    }
+
+    /**
+     * Sets the units done of a single part, of which only the furthest reported counts.
+     *
+     * @param part The key of the part, such as the ID of a sheet
+     * @param done The units of the part done so far
+     */
+    public void update(Object part, long done) {
+        var added = new long[1];
+        parts.compute(part, (key, previous) -> {
+            long before = previous == null ? 0 : previous;
+            added[0] = Math.max(0, done - before);
+            return Math.max(before, done);
+        });
+
+        if (added[0] > 0) {
+            add(added[0]);
+        }
+    }
+
+    /**
+     * Completes the transfer, sending a final update of it being done. Nothing is sent after this.
+     */
+    public synchronized void complete() {
+        if (completed) {
+            return;
+        }
+
+        completed = true;
+        units.set(Math.max(units.get(), totalUnits));
+        update(System.currentTimeMillis());
+    }
+
+    /**
+     * @return The current progress, which may be newer than the last update sent
+     */
+    public synchronized Progress getProgress() {
+        return toProgress();
+    }
+
+    private void update(long now) {
+        long current = units.get();
+        long elapsed = now - lastUpdate;
+        if (elapsed > 0) {
+            double sample = (current - lastUnits) / (double) elapsed;
+            rate = rate == 0 ? sample : rate + SMOOTHING * (sample - rate);
+        }
+
+        lastUpdate = now;
+        lastUnits = current;
+        listener.accept(toProgress());
+    }
+
+    private Progress toProgress() {
+        long total = totalUnits;
+        long current = units.get();
+
+        double fraction;
+        if (completed) {
+            fraction = 1;
+        } else if (total <= 0) {
+            fraction = 0;
+        } else {
+            fraction = Math.min(MAX_INCOMPLETE, current / (double) total);
+        }
+
+        // Units per millisecond, to bytes of the file per second
+        double unitBytes = total > 0 ? size / (double) total : 1;
+        double bytesPerSecond = rate * unitBytes * 1000;
+        long etaMillis = fraction >= 1 ? 0 : rate > 0 ? (long) (Math.max(0, total - current) / rate) : -1;
+
+        return new Progress((long) (fraction * size), size, fraction, bytesPerSecond, etaMillis);
+    }
+
+    /**
+     * A single progress update of a transfer.
+     */
+    public static class Progress {
+        private final long bytes;
+        private final long size;
+        private final double fraction;
+        private final double bytesPerSecond;
+        private final long etaMillis;
+
+        Progress(long bytes, long size, double fraction, double bytesPerSecond, long etaMillis) {
+            this.bytes = bytes;
+            this.size = size;
+            this.fraction = fraction;
+            this.bytesPerSecond = bytesPerSecond;
+            this.etaMillis = etaMillis;
+        }
+
+        /**
+         * @return The bytes of the file transferred so far
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The size in bytes of the file
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return The 0-1 fraction of the transfer done, only 1 once it's complete
+         */
+        public double getFraction() {
+            return fraction;
+        }
+
+        /**
+         * @return The recent throughput in bytes of the file per second, 0 until measured
+         */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return The estimated milliseconds until the transfer completes, or -1 if not yet known
+         */
+        public long getEtaMillis() {
+            return etaMillis;
+        }
+    }
+}
@@ -1,25 +1,40 @@
 package com.uddernetworks.holysheet.io;
 
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.util.Data;
 import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveRequest;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.sheets.v4.Sheets;
 import com.uddernetworks.grpc.HolysheetService.UploadRequest.Compression;
 import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
 import com.uddernetworks.holysheet.Mime;
 import com.uddernetworks.holysheet.SheetManager;
+import com.uddernetworks.holysheet.encoding.DecodedChunk;
 import com.uddernetworks.holysheet.encoding.DecodingOutputStream;
 import com.uddernetworks.holysheet.encoding.EncodingOutputStream;
+import com.uddernetworks.holysheet.encoding.ReedSolomon;
+import com.uddernetworks.holysheet.encryption.DecryptingSink;
+import com.uddernetworks.holysheet.encryption.EncryptingOutputStream;
+import com.uddernetworks.holysheet.encryption.EncryptionKey;
+import com.uddernetworks.holysheet.encryption.SegmentCipher;
 import com.uddernetworks.holysheet.utility.Utility;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,16 +43,27 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.uddernetworks.holysheet.SheetManager.PATH_REGEX;
 import static com.uddernetworks.holysheet.utility.Utility.DRIVE_FIELDS;
+import static com.uddernetworks.holysheet.utility.Utility.getCollectionFirst;
 import static com.uddernetworks.holysheet.utility.Utility.humanReadableByteCountSI;
 
 public class SheetIO {
@@ -46,17 +72,51 @@ public class SheetIO {
 
     private static final int STAGGER_MS = 5000;
 
+    // Sheets downloaded and decoded at once by a single download
+    private static final int DOWNLOAD_THREADS = 4;
+
+    // Blocks of an upload read ahead of its encoding, and chunks uploaded at once before reading waits on them
+    private static final int ENCODE_BLOCKS_AHEAD = 4;
+    private static final int UPLOADS_AHEAD = 2;
+
+    // How far a clone's download may get ahead of its upload, about a sheet
+    private static final int CLONE_BUFFER_SIZE = 10000000;
+
 //    private static final int MB = 1000000;
 //    private static final int MAX_SHEET_SIZE = 10 * MB;
 
     private final SheetManager sheetManager;
     private final Drive drive;
     private final Sheets sheets;
+    private final SheetsValuesStore valuesStore;
+    private final IOExecutors executors;
+    private final FolderIndex folderIndex;
+    private final UploadIndex uploadIndex;
+    private volatile UploadTuner uploadTuner = UploadTuner.getDefault();
+    private volatile ChunkCache chunkCache;
+    private volatile EncryptionKey encryptionKey;
+    private volatile ReedSolomon parityCode;
+    private volatile ExportHedger exportHedger = ExportHedger.getDefault();
+    private volatile StripePool stripePool;
+
+    // Keyed by "containerId@modifiedTime"
+    private final Map<String, PackIndex> packIndices = new ConcurrentHashMap<>();
+
+    // Uploads and downloads running in this process, of any account, as they all share the same link
+    private static final AtomicInteger TRANSFERS = new AtomicInteger();
 
     public SheetIO(SheetManager sheetManager, Drive drive, Sheets sheets) {
+        this(sheetManager, drive, sheets, IOExecutors.getDefault());
+    }
+
+    public SheetIO(SheetManager sheetManager, Drive drive, Sheets sheets, IOExecutors executors) {
         this.sheetManager = sheetManager;
         this.drive = drive;
         this.sheets = sheets;
+        this.valuesStore = new SheetsValuesStore(drive, sheets);
+        this.executors = executors;
+        this.folderIndex = new FolderIndex(sheetManager, drive);
+        this.uploadIndex = new UploadIndex(sheetManager, this, drive, executors.getIo());
     }
 
     /**
@@ -77,11 +137,49 @@ public class SheetIO {
      * @param destination  Destination {@link java.io.File} to store the downloaded file in on the local system.
      * @param id           The id of the folder storing the chunks; i.e. the id of the file's parent folder.
      * @param statusUpdate {@link Consumer} to be accepted when a chunk has been downloaded.
-     * @return {@link CompletableFuture} downloaded and uncompressed file.
+     * @return {@link CompletableFuture} downloaded and uncompressed file. Cancelling it aborts the download.
      */
     public CompletableFuture<File> downloadData(java.io.File destination, String id, Consumer<Double> statusUpdate) {
+        var cancellation = new CancellationToken();
+        return cancellation.bind(downloadData(destination, id, statusUpdate, cancellation));
+    }
+
+    /**
+     * Download and uncompress a file stored by holysheet. If cancelled, the
+     * partially written destination is deleted.
+     *
+     * @param destination  Destination {@link java.io.File} to store the downloaded file in on the local system.
+     * @param id           The id of the folder storing the chunks; i.e. the id of the file's parent folder.
+     * @param statusUpdate {@link Consumer} to be accepted with the fraction downloaded.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return {@link CompletableFuture} downloaded and uncompressed file.
+     */
+    public CompletableFuture<File> downloadData(java.io.File destination, String id, Consumer<Double> statusUpdate, CancellationToken cancellation) {
+        return downloadData(destination, id, ProgressTracker.of(statusUpdate), cancellation);
+    }
+
+    /**
+     * Download and uncompress a file stored by holysheet. If cancelled, the
+     * partially written destination is deleted. Progress is counted by the
+     * bytes of each sheet exported so far, and completed once the file is
+     * fully written.
+     *
+     * @param destination  Destination {@link java.io.File} to store the downloaded file in on the local system.
+     * @param id           The id of the folder storing the chunks; i.e. the id of the file's parent folder.
+     * @param progress     The {@link ProgressTracker} to report progress to.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return {@link CompletableFuture} downloaded and uncompressed file.
+     */
+    public CompletableFuture<File> downloadData(java.io.File destination, String id, ProgressTracker progress, CancellationToken cancellation) {
+        TRANSFERS.incrementAndGet();
         return CompletableFuture.supplyAsync(() -> {
             try {
+                if (PackIndex.isEntryId(id)) {
+                    var packed = downloadPacked(destination, id, cancellation);
+                    progress.complete();
+                    return CompletableFuture.completedFuture(packed);
+                }
+
                 var parent = sheetManager.getFile(id, DRIVE_FIELDS);
 
                 if (parent == null) {
@@ -98,37 +196,584 @@ public class SheetIO {
 
                 LOGGER.info("File compression: {}", compression.name());
 
-                var files = sheetManager.getAllSheets(parent.getId());
+                // Chunks are stored in books if uploaded with the Sheets API, otherwise a spreadsheet per chunk
+                var values = Utility.tryParse(props.get("upload"), 0) == Upload.SHEETS_VALUE;
+
+                // Encrypted data must be decrypted in order, so it's streamed rather than written at offsets
+                if (SegmentCipher.isEncrypted(props)) {
+                    return downloadStreamed(destination, parent, progress, cancellation);
+                }
+
+                var files = getDataSheets(parent);
+
+                // Counted in the encoded bytes exported, of which the parent records the total
+                progress.start(getPlainSize(parent), Long.parseLong(props.get("size")));
 
                 LOGGER.info("Found {} children", files.size());
 
-                var encodingOut = new DecodingOutputStream<>(new FileOutputStream(destination));
-                var downloadedIndex = new double[]{0};
+                // Uploads before bit offsets were recorded can only be decoded in order
+                var rawSize = props.get("rawSize");
+                CompletableFuture<Void> downloaded;
+                if (rawSize != null && files.stream().allMatch(file -> file.getProperties() != null && file.getProperties().containsKey("bitOffset"))) {
+                    if (props.containsKey("parityShards") && !values) {
+                        downloaded = downloadWithParity(destination, parent, files, Long.parseLong(rawSize), progress, cancellation);
+                    } else {
+                        downloaded = downloadParallel(destination, files, Long.parseLong(rawSize), values, progress, cancellation);
+                    }
+                } else {
+                    try (var encodingOut = new DecodingOutputStream<>(new FileOutputStream(destination))) {
+                        files.forEach(file -> downloadChunkFile(file, values, encodingOut, progress, cancellation));
+                    }
 
-                files.stream().sorted(Comparator.comparingInt(file -> {
-                    var fp = file.getProperties();
-                    return fp == null ? -1 : Integer.parseInt(fp.get("index"));
-                })).forEach(file -> {
-                    downloadSheet(file, encodingOut);
-                    statusUpdate.accept(downloadedIndex[0]++ / (double) files.size());
+                    downloaded = CompletableFuture.completedFuture(null);
+                }
+
+                return downloaded.thenApply($ -> {
+                    LOGGER.info("Downloaded {} sheets", files.size());
+                    progress.complete();
+
+                    if (compression == Compression.ZIP) {
+                        LOGGER.error("Ignoring compression! This is only due to being in a development environment");
+//                        LOGGER.info("Uncompressing data...");
+//                        finalStream = CompressionUtils.uncompressToOutputStream(encodingOut.getOut().toByteArray());
+                    }
+
+                    LOGGER.info("Downloaded and unencoded {}", humanReadableByteCountSI(destination.length()));
+                    return parent;
                 });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executors.getIo()).thenCompose(Function.identity()).whenComplete(($, t) -> {
+            TRANSFERS.decrementAndGet();
+
+            if (t != null && cancellation.isCancelled() && destination.delete()) {
+                LOGGER.info("Download cancelled, deleted {}", destination.getAbsolutePath());
+            }
+        });
+    }
+
+    /**
+     * Downloads a file with {@link #streamData(File, long, ByteSink, CancellationToken)}, writing it to the
+     * destination in order.
+     */
+    private CompletableFuture<File> downloadStreamed(java.io.File destination, File parent, ProgressTracker progress, CancellationToken cancellation) throws IOException {
+        var out = new FileOutputStream(destination);
+
+        // Counted in the decrypted bytes written, as they're only written once their segment is whole
+        long size = getPlainSize(parent);
+        progress.start(size, size);
+
+        return streamData(parent, 0, (bytes, offset, length) -> {
+            try {
+                out.write(bytes, offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            progress.add(length);
+            return CompletableFuture.completedFuture(null);
+        }, cancellation).whenComplete(($, t) -> {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (t == null) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }).thenApply($ -> {
+            LOGGER.info("Downloaded and decrypted {}", humanReadableByteCountSI(destination.length()));
+            progress.complete();
+            return parent;
+        });
+    }
+
+    /**
+     * Gets the size of a file as it was uploaded, before it was encrypted or encoded.
+     *
+     * @param parent The file, as from {@link SheetManager#getFile(String, String)}.
+     * @return The size in bytes.
+     */
+    public static long getPlainSize(File parent) {
+        var props = parent.getProperties();
+        var size = props.getOrDefault("plainSize", props.getOrDefault("rawSize", props.get("size")));
+        return Long.parseLong(size);
+    }
+
+    /**
+     * Downloads and decodes all sheets concurrently, writing each at its own
+     * offset of the preallocated destination. Sheets are split between a few
+     * lanes on the I/O executor, each handing what it downloads off to the
+     * CPU executor to decode, no more at once than the CPU executor runs.
+     *
+     * @param destination  Destination {@link java.io.File} to store the downloaded file in.
+     * @param files        The sheets or books of the file, sorted by index.
+     * @param rawSize      The unencoded size of the file.
+     * @param values       If the files are books written with the Sheets API.
+     * @param progress     The {@link ProgressTracker} to report the bytes exported to.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return A {@link CompletableFuture} completed once the destination is fully written.
+     * @throws IOException If the destination can't be written to.
+     */
+    private CompletableFuture<Void> downloadParallel(java.io.File destination, List<File> files, long rawSize, boolean values, ProgressTracker progress, CancellationToken cancellation) throws IOException {
+        var sink = new PositionalFileSink(destination, rawSize);
+
+        // Each account of a striped file has its own quota, so gets its own lanes
+        var accounts = (int) files.stream().map(file -> file.getProperties() == null ? StripePool.PRIMARY : file.getProperties().getOrDefault("account", StripePool.PRIMARY)).distinct().count();
+        int lanes = Math.max(1, Math.min(files.size(), DOWNLOAD_THREADS * accounts));
+
+        // Lanes wait for a decode to finish before handing off more, so downloaded sheets never pile up in memory
+        var decoding = new Semaphore(executors.getCpuThreads());
+
+        var futures = new CompletableFuture[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            int first = lane;
+
+            futures[lane] = CompletableFuture.supplyAsync(() -> {
+                var decodes = new ArrayList<CompletableFuture<Void>>();
+
+                for (int i = first; i < files.size(); i += lanes) {
+                    var file = files.get(i);
+                    var last = i == files.size() - 1;
+
+                    var byteOut = new ByteArrayOutputStream();
+                    downloadChunkFile(file, values, byteOut, progress, cancellation);
+
+                    try {
+                        decoding.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Interrupted waiting to decode " + file.getName());
+                    }
+
+                    decodes.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            sink.write(DecodedChunk.decode(byteOut.toByteArray(), getBitOffset(file), last));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            decoding.release();
+                        }
+                    }, executors.getCpu()));
+                }
+
+                return CompletableFuture.allOf(decodes.toArray(CompletableFuture[]::new));
+            }, executors.getIo()).thenCompose(Function.identity());
+        }
+
+        return CompletableFuture.allOf(futures).whenComplete(($, t) -> {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (t == null) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads the sheets of a file uploaded with parity a group at a time,
+     * every sheet of a group at once along with its parity sheets (See
+     * {@link ParityGroup}). The next group starts as soon as the one before
+     * can be written without waiting on its stragglers.
+     *
+     * @param destination  Destination {@link java.io.File} to store the downloaded file in.
+     * @param parent       The parent folder.
+     * @param files        The data sheets of the file, sorted by index.
+     * @param rawSize      The unencoded size of the file.
+     * @param progress     The {@link ProgressTracker} to report the bytes of data sheets exported to.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return A {@link CompletableFuture} completed once the destination is fully written.
+     * @throws IOException If the destination can't be written to, or a drive request throws an exception.
+     */
+    private CompletableFuture<Void> downloadWithParity(java.io.File destination, File parent, List<File> files, long rawSize, ProgressTracker progress, CancellationToken cancellation) throws IOException {
+        var props = parent.getProperties();
+        var code = new ReedSolomon(Integer.parseInt(props.get("parityData")), Integer.parseInt(props.get("parityShards")));
+        var paritySheets = getParitySheets(parent);
+
+        var sink = new PositionalFileSink(destination, rawSize);
+        var lastFile = files.get(files.size() - 1);
+
+        BiFunction<File, CancellationToken, byte[]> downloader = (file, token) -> {
+            // Parity sheets aren't part of the total, so only count data sheets
+            var parity = file.getProperties().containsKey("parity");
+            var byteOut = new ByteArrayOutputStream();
+            downloadChunkFile(file, false, byteOut, parity ? null : progress, token);
+            return parity ? decodeWhole(byteOut.toByteArray()) : byteOut.toByteArray();
+        };
+
+        BiConsumer<File, byte[]> writer = (file, encoded) -> {
+            try {
+                sink.write(DecodedChunk.decode(encoded, getBitOffset(file), file == lastFile));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+
+        int groupSize = code.getDataShards();
+        int groups = (files.size() + groupSize - 1) / groupSize;
+        var completes = new CompletableFuture[groups];
+        CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < groups; i++) {
+            var parity = paritySheets.getOrDefault(i, new File[code.getParityShards()]);
+            var lengths = Arrays.stream(parity)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .map(sheet -> Arrays.stream(sheet.getProperties().get("lengths").split(",")).mapToInt(Integer::parseInt).toArray())
+                    .orElse(null);
+
+            var group = new ParityGroup(code, files.subList(i * groupSize, Math.min(files.size(), (i + 1) * groupSize)), parity, lengths, downloader, writer, executors.getIo(), executors.getCpu());
+            previous = previous.thenCompose($ -> group.start(cancellation));
+            completes[i] = previous.thenCompose($ -> group.getComplete());
+        }
+
+        return CompletableFuture.allOf(completes).whenComplete(($, t) -> {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (t == null) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Streams the decoded bytes of a file stored by holysheet in order,
+     * starting from the given byte offset, without writing anything to disk.
+     * Sheets are downloaded and decoded a few ahead of what has been written,
+     * and no more are fetched until the sink takes what is ready, so a slow
+     * sink slows the download rather than buffering the whole file. Encrypted
+     * files are decrypted with the key set by {@link #setEncryptionKey(EncryptionKey)},
+     * starting from the segment holding the offset.
+     *
+     * @param parent       The file to stream, as from {@link SheetManager#getFile(String, String)}.
+     * @param offset       The offset of the first byte to stream, to resume a previous stream.
+     * @param sink         The {@link ByteSink} to write the bytes to.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return {@link CompletableFuture} completed once every byte has been written to the sink.
+     */
+    public CompletableFuture<Void> streamData(File parent, long offset, ByteSink sink, CancellationToken cancellation) {
+        TRANSFERS.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (PackIndex.isEntryId(parent.getId())) {
+                    var byteOut = new ByteArrayOutputStream();
+                    downloadPacked(byteOut, parent.getId(), cancellation);
+                    return new OrderedChunkWriter(sink, offset, byteOut.size()).write(0, byteOut.toByteArray(), 0);
+                }
 
-                encodingOut.close();
+                var props = parent.getProperties();
+                if (!props.get("directParent").equals("true")) {
+                    throw new RuntimeException("Not a direct parent!");
+                }
 
-                LOGGER.info("Downloaded {} sheets", files.size());
+                var values = Utility.tryParse(props.get("upload"), 0) == Upload.SHEETS_VALUE;
+                var files = getDataSheets(parent);
+
+                var rawSize = props.get("rawSize");
+                var encodedOffset = offset;
+                ByteSink encodedSink = sink;
+                DecryptingSink decrypting = null;
+                if (SegmentCipher.isEncrypted(props)) {
+                    var cipher = SegmentCipher.forProperties(props, encryptionKey);
+                    var segment = DecryptingSink.getSegment(offset);
+                    encodedOffset = DecryptingSink.getSealedPosition(segment);
+                    encodedSink = decrypting = new DecryptingSink(cipher, segment, Long.parseLong(rawSize), offset - segment * SegmentCipher.SEGMENT_SIZE, sink, executors.getCpu());
+                }
 
-                if (compression == Compression.ZIP) {
-                    LOGGER.error("Ignoring compression! This is only due to being in a development environment");
-//                    LOGGER.info("Uncompressing data...");
-//                    finalStream = CompressionUtils.uncompressToOutputStream(encodingOut.getOut().toByteArray());
+                CompletableFuture<Void> streamed;
+                if (rawSize != null && files.stream().allMatch(file -> file.getProperties() != null && file.getProperties().containsKey("bitOffset"))) {
+                    streamed = streamDecoded(files, values, new OrderedChunkWriter(encodedSink, encodedOffset, Long.parseLong(rawSize)), encodedOffset, cancellation);
+                } else {
+                    streamed = streamLegacy(files, values, new OrderedChunkWriter(encodedSink, encodedOffset, Long.parseLong(props.get("size"))), cancellation);
                 }
 
-                LOGGER.info("Downloaded and unencoded {}", humanReadableByteCountSI(destination.length()));
-                return parent;
+                // Only fails once every sheet is written, if they ended short of the encrypted size
+                var finalDecrypting = decrypting;
+                return finalDecrypting == null ? streamed : streamed.thenCompose($ -> finalDecrypting.finish());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executors.getIo()).thenCompose(Function.identity()).whenComplete(($, t) -> TRANSFERS.decrementAndGet());
+    }
+
+    /**
+     * Streams sheets with recorded bit offsets, starting from the sheet the
+     * offset is in. Each is decoded independently on the CPU executor.
+     */
+    private CompletableFuture<Void> streamDecoded(List<File> files, boolean values, OrderedChunkWriter writer, long offset, CancellationToken cancellation) {
+        // The last sheet starting at or before the offset, or the one before if its shared first byte is the offset
+        int first = 0;
+        for (int i = 0; i < files.size(); i++) {
+            long bitOffset = getBitOffset(files.get(i));
+            if (bitOffset <= offset * 8) {
+                first = bitOffset % 8 > 0 && bitOffset / 8 == offset ? Math.max(0, i - 1) : i;
+            }
+        }
+
+        LOGGER.info("Streaming sheets {}-{} from byte {}", first, files.size() - 1, offset);
+
+        return streamAhead(files, first, (file, bytes) -> CompletableFuture.supplyAsync(() ->
+                DecodedChunk.decode(bytes, getBitOffset(file), file == files.get(files.size() - 1)), executors.getCpu())
+                .thenCompose(writer::write), values, cancellation);
+    }
+
+    /**
+     * Streams sheets uploaded before bit offsets were recorded, which can
+     * only be decoded in order from the first sheet.
+     */
+    private CompletableFuture<Void> streamLegacy(List<File> files, boolean values, OrderedChunkWriter writer, CancellationToken cancellation) {
+        var decodedOut = new ByteArrayOutputStream();
+        var decoder = new DecodingOutputStream<>(decodedOut);
+        var position = new long[]{0};
+
+        return streamAhead(files, 0, (file, bytes) -> CompletableFuture.supplyAsync(() -> {
+            try {
+                decoder.write(bytes, 0, bytes.length);
+                if (file == files.get(files.size() - 1)) {
+                    decoder.flush();
+                }
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
+
+            var decoded = decodedOut.toByteArray();
+            decodedOut.reset();
+            return decoded;
+        }, executors.getCpu()).thenCompose(decoded -> {
+            var written = writer.write(position[0], decoded, 0);
+            position[0] += decoded.length;
+            return written;
+        }), values, cancellation);
+    }
+
+    /**
+     * Downloads sheets on the I/O executor up to {@link #DOWNLOAD_THREADS}
+     * ahead of the one being written, passing each to the writer in order.
+     * Each sheet's write only starts once the previous one's completes.
+     *
+     * @param files        The sheets or books of the file, sorted by index.
+     * @param first        The index of the first sheet to stream.
+     * @param writer       Decodes and writes a downloaded sheet, completing once written.
+     * @param values       If the files are books written with the Sheets API.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return {@link CompletableFuture} completed once every sheet has been written.
+     */
+    private CompletableFuture<Void> streamAhead(List<File> files, int first, BiFunction<File, byte[], CompletableFuture<Void>> writer, boolean values, CancellationToken cancellation) {
+        var downloads = new ArrayList<CompletableFuture<byte[]>>();
+        for (int i = first; i < files.size(); i++) {
+            downloads.add(new CompletableFuture<>());
+        }
+
+        Consumer<Integer> startDownload = i -> CompletableFuture.supplyAsync(() -> {
+            var byteOut = new ByteArrayOutputStream();
+            downloadChunkFile(files.get(first + i), values, byteOut, cancellation);
+            return byteOut.toByteArray();
+        }, executors.getIo()).whenComplete((bytes, t) -> {
+            if (t != null) {
+                downloads.get(i).completeExceptionally(t);
+            } else {
+                downloads.get(i).complete(bytes);
+            }
         });
+
+        for (int i = 0; i < Math.min(DOWNLOAD_THREADS, downloads.size()); i++) {
+            startDownload.accept(i);
+        }
+
+        var written = CompletableFuture.<Void>completedFuture(null);
+        for (int i = 0; i < downloads.size(); i++) {
+            int index = i;
+            written = written.thenCompose($ -> downloads.get(index)).thenCompose(bytes -> {
+                if (index + DOWNLOAD_THREADS < downloads.size()) {
+                    startDownload.accept(index + DOWNLOAD_THREADS);
+                }
+
+                return writer.apply(files.get(first + index), bytes);
+            });
+        }
+
+        return written;
+    }
+
+    /**
+     * Downloads a single file packed into a container, only fetching the
+     * sheets its bytes are in.
+     *
+     * @param destination  Destination {@link java.io.File} to store the downloaded file in.
+     * @param id           The id of the packed file, see {@link PackIndex#getEntryId(String, int)}.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return The packed file, as from {@link #getPackedFile(String)}.
+     * @throws IOException If a drive request throws an exception.
+     */
+    private File downloadPacked(java.io.File destination, String id, CancellationToken cancellation) throws IOException {
+        try (var out = new FileOutputStream(destination)) {
+            return downloadPacked(out, id, cancellation);
+        }
+    }
+
+    /**
+     * Downloads a single file packed into a container, only fetching the
+     * sheets its bytes are in.
+     *
+     * @param out          The {@link OutputStream} to write the file to.
+     * @param id           The id of the packed file, see {@link PackIndex#getEntryId(String, int)}.
+     * @param cancellation The {@link CancellationToken} to abort the download with.
+     * @return The packed file, as from {@link #getPackedFile(String)}.
+     * @throws IOException If a drive request throws an exception.
+     */
+    private File downloadPacked(OutputStream out, String id, CancellationToken cancellation) throws IOException {
+        var container = sheetManager.getFile(PackIndex.getContainerId(id), DRIVE_FIELDS);
+        if (container == null) {
+            throw new RuntimeException("Couldn't find id " + id);
+        }
+
+        var entryIndex = PackIndex.getEntryIndex(id);
+        var entry = getPackIndex(container).get(entryIndex);
+        if (entry == null) {
+            throw new RuntimeException("Couldn't find packed file " + id);
+        }
+
+        var values = Utility.tryParse(container.getProperties().get("upload"), 0) == Upload.SHEETS_VALUE;
+        var files = getDataSheets(container);
+
+        // Find the sheets covering the file's bits, which always start at or before its first byte
+        long startBit = entry.getOffset() * 8;
+        long endBit = (entry.getOffset() + entry.getLength()) * 8;
+        int first = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (getBitOffset(files.get(i)) <= startBit) {
+                first = i;
+            }
+        }
+
+        int last = first;
+        while (last < files.size() - 1 && getBitOffset(files.get(last + 1)) < endBit) {
+            last++;
+        }
+
+        LOGGER.info("Downloading packed {} from sheets {}-{} of {}", entry.getName(), first, last, container.getName());
+
+        var byteOut = new ByteArrayOutputStream();
+        for (int i = first; i <= last; i++) {
+            downloadChunkFile(files.get(i), values, byteOut, cancellation);
+        }
+
+        var decoded = DecodedChunk.decode(byteOut.toByteArray(), getBitOffset(files.get(first)), last == files.size() - 1);
+        out.write(decoded.getBytes(), (int) (entry.getOffset() - decoded.getPosition()), (int) entry.getLength());
+
+        return toPackedFile(container, entryIndex, entry);
+    }
+
+    private static long getBitOffset(File file) {
+        return Long.parseLong(file.getProperties().get("bitOffset"));
+    }
+
+    /**
+     * Gets the sheets (Or books) holding data of a parent, sorted by their
+     * index. This leaves out any metadata sheets. The sheets of a file
+     * striped across accounts are read from its {@link StripeManifest}, with
+     * those in other accounts naming theirs in an "account" property.
+     *
+     * @param parent The parent folder.
+     * @return The sorted sheets.
+     * @throws IOException If the drive request throws an exception.
+     */
+    private List<File> getDataSheets(File parent) throws IOException {
+        if (parent.getProperties() != null && "true".equals(parent.getProperties().get("striped"))) {
+            return readMetadata(parent, StripeManifest.METADATA)
+                    .map(bytes -> StripeManifest.fromBytes(bytes).toSheets())
+                    .orElseThrow(() -> new RuntimeException("The stripe manifest of " + parent.getId() + " is missing"));
+        }
+
+        return sheetManager.getAllSheets(parent.getId()).stream()
+                .filter(file -> file.getProperties() == null || !(file.getProperties().containsKey("metadata") || file.getProperties().containsKey("parity")))
+                .sorted(Comparator.comparingInt(file -> {
+                    var fp = file.getProperties();
+                    return fp == null ? -1 : Integer.parseInt(fp.get("index"));
+                })).collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Gets the parity sheets of a parent, by group and then shard.
+     */
+    private Map<Integer, File[]> getParitySheets(File parent) throws IOException {
+        int shards = Integer.parseInt(parent.getProperties().get("parityShards"));
+        var groups = new HashMap<Integer, File[]>();
+        for (var file : sheetManager.getAllSheets(parent.getId())) {
+            var properties = file.getProperties();
+            if (properties != null && properties.containsKey("parity")) {
+                groups.computeIfAbsent(Integer.parseInt(properties.get("parity")), $ -> new File[shards])[Integer.parseInt(properties.get("shard"))] = file;
+            }
+        }
+
+        return groups;
+    }
+
+    private void downloadChunkFile(File file, boolean values, OutputStream out, CancellationToken cancellation) {
+        downloadChunkFile(file, values, out, null, cancellation);
+    }
+
+    private void downloadChunkFile(File file, boolean values, OutputStream out, ProgressTracker progress, CancellationToken cancellation) {
+        cancellation.throwIfCancelled();
+
+        if (values) {
+            downloadBook(file, out, progress, cancellation);
+        } else {
+            downloadSheet(file, out, progress, cancellation);
+        }
+
+        cancellation.throwIfCancelled();
+    }
+
+    /**
+     * Wraps an {@link OutputStream} to throw once cancelled, aborting any
+     * response being downloaded to it.
+     *
+     * @param out          The {@link OutputStream} to wrap.
+     * @param cancellation The {@link CancellationToken} to abort with.
+     * @return The wrapped {@link OutputStream}.
+     */
+    private static OutputStream cancellable(OutputStream out, CancellationToken cancellation) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (cancellation.isCancelled()) {
+                    throw new IOException("Download cancelled");
+                }
+
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Wraps an {@link OutputStream} to report the bytes written to it as the
+     * progress of a sheet. Each sheet only counts as far as it has got, so a
+     * retried or hedged sheet isn't counted again.
+     *
+     * @param out      The {@link OutputStream} to wrap.
+     * @param file     The sheet being written.
+     * @param progress The {@link ProgressTracker} to report to, or null to report nothing.
+     * @return The wrapped {@link OutputStream}.
+     */
+    private static OutputStream counting(OutputStream out, File file, ProgressTracker progress) {
+        if (progress == null) {
+            return out;
+        }
+
+        return new FilterOutputStream(out) {
+            private long written;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                written += len;
+                progress.update(file.getId(), written);
+            }
+        };
     }
 
     /**
@@ -155,235 +800,1375 @@ public class SheetIO {
      *
      * @param file {@link File} representing a sheet to download.
      * @param out {@link OutputStream} to write to.
+     * @param progress {@link ProgressTracker} to report the bytes exported to, or null.
+     * @param cancellation {@link CancellationToken} to abort the download with.
      */
-    private void downloadSheet(File file, OutputStream out) {
+    private void downloadSheet(File file, OutputStream out, ProgressTracker progress, CancellationToken cancellation) {
         try {
             var properties = file.getProperties();
             if (properties != null) {
-                var index = properties.get("index");
+                var index = properties.getOrDefault("index", file.getName());
                 var size = humanReadableByteCountSI(Long.parseLong(properties.get("size")));
 
-                LOGGER.info("Downloading sheet#{} - {}", index, size);
-            } else {
-                LOGGER.info("Downloading sheet#unknown");
-            }
+                LOGGER.info("Downloading sheet#{} - {}", index, size);
+            } else {
+                LOGGER.info("Downloading sheet#unknown");
+            }
+
+            var cache = chunkCache;
+            if (cache != null) {
+                var cached = cache.get(file);
+                if (cached.isPresent()) {
+                    LOGGER.info("Using cached {}", file.getName());
+                    counting(out, file, progress).write(cached.get());
+                    return;
+                }
+            }
+
+            var hedger = exportHedger;
+            var bytes = hedger == null ? exportSheet(file, progress, cancellation) : hedger.call(token -> exportSheet(file, progress, token), cancellation);
+            if (cache != null) {
+                cache.put(file, bytes);
+            }
+
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Exports a sheet as the encoded bytes it was uploaded with.
+     *
+     * @param file {@link File} representing a sheet to export.
+     * @param progress {@link ProgressTracker} to report the bytes exported to, or null.
+     * @param cancellation {@link CancellationToken} to abort the export with.
+     * @return The exported bytes.
+     */
+    private byte[] exportSheet(File file, ProgressTracker progress, CancellationToken cancellation) {
+        try {
+            var account = file.getProperties() == null ? null : file.getProperties().get("account");
+            var backend = account == null ? null : getBackend(account);
+            if (backend != null) {
+                var bytes = backend.export(file.getId(), cancellation);
+                if (progress != null) {
+                    progress.update(file.getId(), bytes.length);
+                }
+
+                return bytes;
+            }
+
+            var byteOut = new ByteArrayOutputStream();
+            drive.files().export(file.getId(), "text/tab-separated-values").executeMediaAndDownloadTo(cancellable(counting(byteOut, file, progress), cancellation));
+            return byteOut.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the backend of an account chunks were striped to.
+     *
+     * @param account The name of the account.
+     * @return The {@link ChunkBackend}, or null for chunks kept in the parent.
+     */
+    private ChunkBackend getBackend(String account) {
+        var stripes = stripePool;
+        if (StripePool.PRIMARY.equals(account)) {
+            return stripes == null ? null : stripes.get(account).orElse(null);
+        }
+
+        if (stripes == null) {
+            throw new RuntimeException("The file is striped across other accounts, but none are set up");
+        }
+
+        return stripes.get(account).orElseThrow(() -> new RuntimeException("The file is striped to the account " + account + ", which isn't set up"));
+    }
+
+    /**
+     * Download a book of chunks written with the Sheets API, and write its
+     * bytes to the passed {@link OutputStream}.
+     *
+     * @param file {@link File} representing a book to download.
+     * @param out {@link OutputStream} to write to.
+     * @param progress {@link ProgressTracker} to report the bytes read to, or null.
+     * @param cancellation {@link CancellationToken} to abort the download with.
+     */
+    private void downloadBook(File file, OutputStream out, ProgressTracker progress, CancellationToken cancellation) {
+        try {
+            var cache = chunkCache;
+            if (cache == null) {
+                LOGGER.info("Downloading {}", file.getName());
+                valuesStore.readBook(file, cancellable(counting(out, file, progress), cancellation));
+                return;
+            }
+
+            var cached = cache.get(file);
+            if (cached.isPresent()) {
+                LOGGER.info("Using cached {}", file.getName());
+                counting(out, file, progress).write(cached.get());
+                return;
+            }
+
+            LOGGER.info("Downloading {}", file.getName());
+
+            var byteOut = new ByteArrayOutputStream();
+            valuesStore.readBook(file, cancellable(counting(byteOut, file, progress), cancellation));
+
+            var bytes = byteOut.toByteArray();
+            cache.put(file, bytes);
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates the parent folder of an upload in the sheetStore, marked as
+     * processing until its upload completes.
+     *
+     * @param title      The name of the file.
+     * @param path       The clean path of the file.
+     * @param compress   Compression enumeration.
+     * @param uploadType {@link Upload} enumeration.
+     * @param container  If the parent is a container of packed files, rather than a file itself.
+     * @return {@link File} representing the parent folder.
+     * @throws IOException If the drive request throws an exception.
+     */
+    File createParent(String title, String path, Compression compress, Upload uploadType, boolean container) throws IOException {
+        var properties = new HashMap<>(Map.of(
+                "directParent", "true",
+                "starred", "false",
+                "processing", "true",
+                "size", "0",
+                "sheets", "0",
+                "path", path,
+                "compressed", String.valueOf(compress.getNumber()),
+                "upload", String.valueOf(uploadType.getNumber())
+        ));
+
+        if (container) {
+            // Containers are only listed through the files packed in them
+            properties.put("directParent", "false");
+            properties.put("container", "true");
+        }
+
+        var parent = sheetManager.createFolder(title, sheetManager.getSheetStore(), properties);
+
+        LOGGER.info("Created parent sheetStore/{} ({})", parent.getName(), parent.getId());
+
+        return parent;
+    }
+
+    public CompletableFuture<File> uploadDataStream(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, EncodingOutputStream outputStream) throws IOException {
+        return uploadDataStream(title, path, fileSize, maxSheetSize, compress, uploadType, outputStream, new CancellationToken());
+    }
+
+    public CompletableFuture<File> uploadDataStream(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, EncodingOutputStream outputStream, CancellationToken cancellation) throws IOException {
+        path = cleanPath(path);
+
+        var parent = createParent(title, path, compress, uploadType, false);
+
+        return processRawStream(outputStream, fileSize, (int) maxSheetSize, parent, uploadType, cancellation).thenApply($ -> parent);
+    }
+
+    CompletableFuture<Void> processRawStream(EncodingOutputStream encodingOut, long totalSize, int maxSheetSize, File parent, Upload uploadType, CancellationToken cancellation) {
+        int maxLength = (int) uploadTuner.getSheetSize(maxSheetSize);
+        encodingOut.setMaxLength(maxLength);
+
+        // ~22% overhead
+        int estimatedChunks = (int) Math.ceil((totalSize * 1.22) / (double) maxLength);
+
+        LOGGER.info("File size: {} estimated chunks: {}", humanReadableByteCountSI(totalSize), estimatedChunks);
+
+        long start = System.currentTimeMillis();
+
+        var completer = new CompletableFuture<Void>();
+
+        encodingOut.setChunkConsumer((index, bytes) -> {
+            cancellation.throwIfCancelled();
+
+            LOGGER.info("Uploading {}/~{}", index + 1, estimatedChunks);
+
+            try {
+                uploadChunk(new FileChunk(parent, bytes, index, encodingOut.getChunkBitOffset()), uploadType, null, cancellation);
+            } catch (RuntimeException e) {
+                // A chunk that can't be uploaded fails the whole upload, which is trashed like a cancelled one
+                if (!cancellation.isCancelled() && completer.completeExceptionally(e)) {
+                    encodingOut.cancel();
+                    discardPartial(parent);
+                }
+
+                throw e;
+            }
+        });
+
+        TRANSFERS.incrementAndGet();
+        completer.whenComplete(($, t) -> TRANSFERS.decrementAndGet());
+
+        // The stream is written to by someone else, so is only told to stop taking data
+        var registration = cancellation.onCancel(() -> {
+            encodingOut.cancel();
+            discardPartial(parent);
+            completer.cancel(false);
+        });
+
+        // A finished upload is kept if the token is cancelled later, such as a closed container of a PackWriter
+        completer.whenComplete(($, t) -> registration.unregister());
+
+        encodingOut.setOnClose(() -> {
+            int sheets = encodingOut.getChunkIndex();
+            long size = encodingOut.getLength();
+
+            LOGGER.info("Completed. Readable data: {} sheet estimated: {} sheet exact: {}", humanReadableByteCountSI(size), estimatedChunks, sheets);
+
+            double durationSeconds = (System.currentTimeMillis() - start) / 1000D;
+            long bps = (long) ((double) size / durationSeconds);
+            LOGGER.info("Finished upload in {} ms at a rate of {}/s", System.currentTimeMillis() - start, humanReadableByteCountSI(bps));
+
+            valuesStore.finish(parent);
+
+            try {
+                sheetManager.addProperties(parent, Map.of(
+                        "processing", "false",
+                        "size", String.valueOf(size),
+                        "rawSize", String.valueOf(encodingOut.getInputLength()),
+                        "sheets", String.valueOf(sheets),
+                        "sheetSize", String.valueOf(maxLength)
+                ));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            completer.complete(null);
+        });
+
+        return completer;
+    }
+
+    /**
+     * Uploads a file on the I/O executor, see {@link #uploadDataFile(String, String, long, long, Compression, Upload, InputStream, Consumer)}.
+     *
+     * @return A {@link CompletableFuture} of the uploaded parent. Cancelling it aborts the upload.
+     */
+    public CompletableFuture<File> uploadDataFileAsync(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, Consumer<Double> statusUpdate) {
+        return uploadDataFileAsync(title, path, fileSize, maxSheetSize, compress, uploadType, data, ProgressTracker.of(statusUpdate));
+    }
+
+    /**
+     * Uploads a file on the I/O executor, see {@link #uploadDataFile(String, String, long, long, Compression, Upload, InputStream, ProgressTracker, CancellationToken)}.
+     *
+     * @return A {@link CompletableFuture} of the uploaded parent. Cancelling it aborts the upload.
+     */
+    public CompletableFuture<File> uploadDataFileAsync(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, ProgressTracker progress) {
+        var cancellation = new CancellationToken();
+        return cancellation.bind(CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadDataFile(title, path, fileSize, maxSheetSize, compress, uploadType, data, progress, cancellation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executors.getIo()));
+    }
+
+    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data) throws IOException {
+        return uploadDataFile(title, path, fileSize, maxSheetSize, compress, uploadType, data, null);
+    }
+
+    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, Consumer<Double> statusUpdate) throws IOException {
+        return uploadDataFile(title, path, fileSize, maxSheetSize, compress, uploadType, data, statusUpdate, new CancellationToken());
+    }
+
+    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, Consumer<Double> statusUpdate, CancellationToken cancellation) throws IOException {
+        return uploadDataFile(title, path, fileSize, maxSheetSize, compress, uploadType, data, ProgressTracker.of(statusUpdate), cancellation);
+    }
+
+    /**
+     * Uploads a file, reporting progress by the encoded bytes sent so far.
+     * As the encoded size is only known once done, progress is counted
+     * against an estimate of it until the upload completes.
+     *
+     * @param progress     The {@link ProgressTracker} to report progress to.
+     * @param cancellation The {@link CancellationToken} to abort the upload with.
+     * @return The uploaded parent.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, ProgressTracker progress, CancellationToken cancellation) throws IOException {
+        return uploadDataFile(title, path, fileSize, maxSheetSize, compress, uploadType, data, progress, null, cancellation);
+    }
+
+    /**
+     * Uploads a file, with its chunks waiting on the given {@link UploadBudget}
+     * before they're sent, such as one shared by the uploads of a batch.
+     *
+     * @param progress     The {@link ProgressTracker} to report progress to.
+     * @param budget       The {@link UploadBudget} to upload chunks within, or null for no limit.
+     * @param cancellation The {@link CancellationToken} to abort the upload with.
+     * @return The uploaded parent.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, ProgressTracker progress, UploadBudget budget, CancellationToken cancellation) throws IOException {
+        path = cleanPath(path);
+
+        var parent = createParent(title, path, compress, uploadType, false);
+
+        TRANSFERS.incrementAndGet();
+        try {
+            processRawFile(data, fileSize, (int) maxSheetSize, parent, uploadType, progress, budget, cancellation);
+        } finally {
+            TRANSFERS.decrementAndGet();
+        }
+
+        return parent;
+    }
+
+    private void processRawFile(InputStream input, long totalSize, int maxSheetSize, File parent, Upload uploadType, ProgressTracker progress, UploadBudget budget, CancellationToken cancellation) throws IOException {
+        int maxLength = (int) uploadTuner.getSheetSize(maxSheetSize);
+        long fileSize = totalSize;
+
+        // A new cipher per upload, so no nonce is ever reused
+        var key = encryptionKey;
+        var cipher = key == null ? null : SegmentCipher.create(key);
+        if (cipher != null) {
+            totalSize = SegmentCipher.getSealedSize(totalSize);
+        }
+
+        // ~22% overhead
+        int estimatedChunks = (int) Math.ceil((totalSize * 1.22) / (double) maxLength);
+
+        LOGGER.info("File size: {} estimated chunks: {}", humanReadableByteCountSI(totalSize), estimatedChunks);
+
+        long start = System.currentTimeMillis();
+
+        // Parity shards are whole sheets, so can't be written as tabs of a book
+        var code = parityCode;
+        if (code != null && uploadType == Upload.SHEETS) {
+            LOGGER.warn("Parity isn't supported when uploading with the Sheets API, uploading without it");
+            code = null;
+        }
+
+        // Books are shared between the chunks of an upload, so can't be split between accounts
+        var stripes = stripePool;
+        if (stripes != null && uploadType == Upload.SHEETS) {
+            LOGGER.warn("Striping isn't supported when uploading with the Sheets API, uploading to this account only");
+            stripes = null;
+        }
+
+        var manifest = stripes == null ? null : new StripeManifest();
+
+        // Marked up front, so an upload left processing is known to have chunks in other accounts
+        if (manifest != null) {
+            sheetManager.addProperties(parent, Map.of("striped", "true"));
+        }
+
+        // Parity sheets are sent too, adding their share to the estimated encoded bytes
+        long estimatedUnits = (long) (totalSize * 1.22);
+        if (code != null) {
+            estimatedUnits += estimatedUnits * code.getParityShards() / code.getDataShards();
+        }
+
+        progress.start(fileSize, estimatedUnits);
+
+        // Encoding runs on the CPU executor and uploads on the I/O executor, this thread only reading the input
+        var encodingOut = new EncodingOutputStream(maxLength);
+        var pipeline = new EncodingPipeline(encodingOut, executors.getCpu(), executors.getIo(), ENCODE_BLOCKS_AHEAD, UPLOADS_AHEAD);
+
+        var parityEncoder = code == null ? null : new ParityEncoder(code, (group, lengths, parity) -> {
+            for (int i = 0; i < parity.length; i++) {
+                var chunk = FileChunk.parity(parent, encodeWhole(parity[i]), group, i, lengths);
+                pipeline.upload(() -> uploadChunk(chunk, uploadType, null, progress, budget, cancellation));
+            }
+        }, budget, maxLength);
+
+        var finalStripes = stripes;
+        encodingOut.setChunkConsumer((index, bytes) -> {
+            cancellation.throwIfCancelled();
+
+            LOGGER.info("Uploading {}/~{}", index + 1, estimatedChunks);
+
+            var chunk = new FileChunk(parent, bytes, index, encodingOut.getChunkBitOffset());
+            if (manifest != null) {
+                pipeline.upload(() -> stripeChunk(chunk, finalStripes, manifest, uploadType, progress, budget, cancellation));
+            } else {
+                pipeline.upload(() -> uploadChunk(chunk, uploadType, null, progress, budget, cancellation));
+            }
+
+            if (parityEncoder != null) {
+                parityEncoder.add(bytes);
+            }
+        });
+
+        var registration = cancellation.onCancel(encodingOut::cancel);
+
+        // Sealing already runs on the CPU executor, so only the sealed output is handed to the pipeline
+        var encryptingOut = cipher == null ? null : new EncryptingOutputStream(pipeline, cipher, executors.getCpu());
+
+        try {
+            if (encryptingOut != null) {
+                IOUtils.copy(input, encryptingOut);
+                encryptingOut.finish();
+            } else {
+                IOUtils.copy(input, pipeline);
+            }
+
+            pipeline.finish();
+
+            if (parityEncoder != null) {
+                parityEncoder.finish();
+                pipeline.await();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nothing may still be writing chunks while they're cleaned up
+            pipeline.abort();
+            if (parityEncoder != null) {
+                parityEncoder.abort();
+            }
+
+            // Failed uploads are trashed as well, instead of being left processing, and can't be restored into
+            // anything whole, so their chunks in other accounts are removed
+            discardPartial(parent);
+            if (stripes != null) {
+                removeStripes(parent, stripes);
+            }
+
+            if (cancellation.isCancelled()) {
+                throw new CancellationException("Upload of " + parent.getName() + " cancelled");
+            }
+
+            throw e;
+        } finally {
+            // Tokens may be shared between uploads, which shouldn't keep this one's stream alive
+            registration.unregister();
+        }
+
+        int sheets = encodingOut.getChunkIndex();
+        long size = encodingOut.getLength();
+
+        LOGGER.info("Completed. Readable data: {} sheet estimated: {} sheet exact: {}", humanReadableByteCountSI(size), estimatedChunks, sheets);
+
+        double durationSeconds = (System.currentTimeMillis() - start) / 1000D;
+        long bps = (long) ((double) size / durationSeconds);
+        LOGGER.info("Finished upload in {} ms at a rate of {}/s", System.currentTimeMillis() - start, humanReadableByteCountSI(bps));
+
+        valuesStore.finish(parent);
+        if (stripes != null) {
+            stripes.getBackends().forEach(backend -> backend.finish(parent));
+        }
+
+        var properties = new HashMap<>(Map.of(
+                "processing", "false",
+                "size", String.valueOf(size),
+                "rawSize", String.valueOf(encodingOut.getInputLength()),
+                "sheets", String.valueOf(sheets),
+                "sheetSize", String.valueOf(maxLength)
+        ));
+
+        if (cipher != null) {
+            properties.putAll(cipher.getProperties());
+            properties.put("plainSize", String.valueOf(encryptingOut.getInputLength()));
+        }
+
+        if (parityEncoder != null) {
+            properties.put("parityData", String.valueOf(code.getDataShards()));
+            properties.put("parityShards", String.valueOf(code.getParityShards()));
+        }
+
+        // Written before the upload stops processing, so it's never listed without it
+        if (manifest != null) {
+            properties.put("striped", "true");
+            manifest.setProperties(properties);
+            writeMetadata(parent, StripeManifest.METADATA, manifest.toBytes());
+        }
+
+        sheetManager.addProperties(parent, properties);
+        progress.complete();
+    }
+
+    /**
+     * Updates a stored file in place with new data, only uploading the chunks
+     * that changed. Chunks are compared by the hash recorded when they were
+     * uploaded, so data changed in place costs only the chunks it falls in.
+     * Data inserted or removed shifts every chunk after it, so those are all
+     * replaced. New chunks are uploaded to a staging folder in the parent and
+     * only swapped in once every one has been, so a failed update leaves the
+     * file as it was. The parent is marked "updating" meanwhile.
+     *
+     * @param id           The id of the file's parent folder.
+     * @param fileSize     The size of the new data.
+     * @param maxSheetSize The maximum size in bytes of a sheet, used if the file didn't record its own.
+     * @param data         The new data.
+     * @param statusUpdate {@link Consumer} to be accepted when a chunk has been processed.
+     * @return The updated parent.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public File updateDataFile(String id, long fileSize, long maxSheetSize, InputStream data, Consumer<Double> statusUpdate) throws IOException {
+        if (PackIndex.isEntryId(id)) {
+            throw new RuntimeException("Packed files can't be updated in place");
+        }
+
+        var parent = sheetManager.getFile(id, DRIVE_FIELDS);
+        if (parent == null) {
+            throw new RuntimeException("Couldn't find id " + id);
+        }
+
+        var props = parent.getProperties();
+        if (!"true".equals(props.get("directParent"))) {
+            throw new RuntimeException("Not a direct parent!");
+        }
+
+        var uploadType = Upload.forNumber(Utility.tryParse(props.get("upload"), 0));
+        if (uploadType == Upload.SHEETS) {
+            throw new RuntimeException("Files uploaded with the Sheets API can't be updated in place");
+        }
+
+        // Encrypting new data under the recorded nonces would reuse them
+        if (SegmentCipher.isEncrypted(props)) {
+            throw new RuntimeException("Encrypted files can't be updated in place");
+        }
+
+        if (props.containsKey("parityShards")) {
+            throw new RuntimeException("Files uploaded with parity can't be updated in place");
+        }
+
+        if ("true".equals(props.get("striped"))) {
+            throw new RuntimeException("Files striped across accounts can't be updated in place");
+        }
+
+        if (statusUpdate == null) {
+            statusUpdate = $ -> {
+            };
+        }
+
+        // The same sheet size must be used, or every chunk boundary moves
+        int maxLength = Utility.tryParse(props.get("sheetSize"), (int) maxSheetSize);
+        var existing = getDataSheets(parent).stream()
+                .filter(file -> file.getProperties() != null)
+                .collect(Collectors.toMap(file -> Integer.parseInt(file.getProperties().get("index")), file -> file, (first, $) -> first));
+
+        int estimatedChunks = (int) Math.ceil((fileSize * 1.22) / (double) maxLength);
+
+        LOGGER.info("Updating {} with {} of data, {} existing chunks", parent.getName(), humanReadableByteCountSI(fileSize), existing.size());
+
+        // Drive removes properties explicitly set to null, so by default this only clears the update's mark
+        var properties = new HashMap<String, String>();
+        properties.put("updating", Data.NULL_STRING);
+
+        File staging = null;
+        boolean swapping = false;
+
+        TRANSFERS.incrementAndGet();
+        try {
+            // Not processing, which would let the UploadSweeper trash the file if the update stopped
+            sheetManager.addProperties(parent.getId(), Map.of("updating", "true"));
+
+            // Changed chunks are uploaded here, out of sight of readers, until every one has been
+            staging = sheetManager.createFolder("update-staging", parent, Map.of("updateStaging", "true"));
+
+            // Replaced, moved, unchanged, added
+            var counts = new int[4];
+            var staged = new HashMap<Integer, String>();
+            var moved = new HashMap<String, Map<String, String>>();
+            var cancellation = new CancellationToken();
+            var finalStatusUpdate = statusUpdate;
+            var finalStaging = staging;
+
+            var encodingOut = new EncodingOutputStream(maxLength);
+            encodingOut.setChunkConsumer((index, bytes) -> {
+                var chunk = new FileChunk(finalStaging, bytes, index, encodingOut.getChunkBitOffset());
+                var old = existing.get(index);
+
+                if (old == null) {
+                    staged.put(index, uploadChunk(chunk, uploadType, null, cancellation).getId());
+                    counts[3]++;
+                } else if (!chunk.getHash().equals(old.getProperties().get("sha"))) {
+                    staged.put(index, uploadChunk(chunk, uploadType, null, cancellation).getId());
+                    counts[0]++;
+                } else if (!String.valueOf(chunk.getBitOffset()).equals(old.getProperties().get("bitOffset"))) {
+                    // Same data, but starting at a different point in the file
+                    moved.put(old.getId(), chunk.getProperties());
+                    counts[1]++;
+                } else {
+                    counts[2]++;
+                }
+
+                finalStatusUpdate.accept(Math.min((index + 1) / ((double) estimatedChunks + 1), 1D));
+            });
+
+            IOUtils.copy(data, encodingOut);
+            encodingOut.flush();
+
+            int sheets = encodingOut.getChunkIndex();
+
+            // Every chunk is uploaded, so the old ones can be swapped out
+            swapping = true;
+
+            for (var entry : staged.entrySet()) {
+                moveSheet(entry.getValue(), staging.getId(), parent.getId());
+
+                var old = existing.get(entry.getKey());
+                if (old != null) {
+                    deleteSheet(old.getId());
+                }
+            }
+
+            for (var entry : moved.entrySet()) {
+                sheetManager.addProperties(entry.getKey(), entry.getValue());
+            }
+
+            int removed = 0;
+            for (var entry : existing.entrySet()) {
+                if (entry.getKey() >= sheets) {
+                    deleteSheet(entry.getValue().getId());
+                    removed++;
+                }
+            }
+
+            deleteSheet(staging.getId());
+
+            properties.put("size", String.valueOf(encodingOut.getLength()));
+            properties.put("rawSize", String.valueOf(encodingOut.getInputLength()));
+            properties.put("sheets", String.valueOf(sheets));
+            properties.put("sheetSize", String.valueOf(maxLength));
+
+            statusUpdate.accept(1D);
+
+            LOGGER.info("Updated {}: {} chunks replaced, {} moved, {} unchanged, {} added, {} removed",
+                    parent.getName(), counts[0], counts[1], counts[2], counts[3], removed);
+        } catch (IOException | RuntimeException e) {
+            if (swapping) {
+                LOGGER.error("The update of {} stopped while swapping in its chunks, leaving the rest in {}", parent.getId(), staging.getId());
+            } else if (staging != null) {
+                // The old chunks are untouched, so the file reads as it did before the update
+                discardStaging(staging);
+            }
+
+            throw e;
+        } finally {
+            try {
+                sheetManager.addProperties(parent.getId(), properties);
+            } finally {
+                TRANSFERS.decrementAndGet();
+            }
+        }
+
+        return sheetManager.getFile(parent.getId(), DRIVE_FIELDS);
+    }
+
+    /**
+     * Deletes the staging folder of a failed update, along with the chunks
+     * uploaded to it. Failures are logged, as the update's failure is what's
+     * reported.
+     *
+     * @param staging The staging folder.
+     */
+    private void discardStaging(File staging) {
+        try {
+            deleteSheet(staging.getId());
+        } catch (IOException e) {
+            LOGGER.error("Couldn't delete the staged chunks in " + staging.getId(), e);
+        }
+    }
+
+    /**
+     * Moves a sheet from one folder to another.
+     *
+     * @param id   The id of the sheet.
+     * @param from The id of the folder it's in.
+     * @param to   The id of the folder to move it to.
+     * @throws IOException If the drive request throws an exception.
+     */
+    void moveSheet(String id, String from, String to) throws IOException {
+        drive.files().update(id, new File())
+                .setAddParents(to)
+                .setRemoveParents(from)
+                .setFields("id")
+                .execute();
+    }
+
+    /**
+     * Permanently deletes a sheet, or a folder along with its sheets.
+     *
+     * @param id The id of the sheet or folder.
+     * @throws IOException If the drive request throws an exception.
+     */
+    void deleteSheet(String id) throws IOException {
+        drive.files().delete(id).execute();
+    }
+
+    File uploadChunk(FileChunk chunk, Upload uploadType, String replaceId, CancellationToken cancellation) {
+        return uploadChunk(chunk, uploadType, replaceId, null, null, cancellation);
+    }
+
+    /**
+     * Upload a {@link FileChunk} with {@link #processChunk(FileChunk, Upload, String, ProgressTracker, CancellationToken)}
+     * once the {@link UploadBudget} allows it, retrying on failure.
+     *
+     * @param chunk {@link FileChunk} to upload.
+     * @param uploadType {@link Upload} enumeration.
+     * @param replaceId The id of the sheet to replace the content of, or null to create one.
+     * @param progress {@link ProgressTracker} to report the bytes sent to, or null.
+     * @param budget {@link UploadBudget} of the upload, or null for no limit.
+     * @param cancellation {@link CancellationToken} to abort the upload with.
+     * @return {@link File} google sheet chunk, or the book containing it.
+     */
+    private File uploadChunk(FileChunk chunk, Upload uploadType, String replaceId, ProgressTracker progress, UploadBudget budget, CancellationToken cancellation) {
+        return uploadChunk(chunk, budget, () -> processChunk(chunk, uploadType, replaceId, progress, cancellation), cancellation);
+    }
+
+    /**
+     * Upload a {@link FileChunk} to one of the accounts of a {@link StripePool},
+     * recording where it went in the manifest.
+     *
+     * @param chunk {@link FileChunk} to upload.
+     * @param stripes {@link StripePool} to pick the account from.
+     * @param manifest {@link StripeManifest} to record the chunk in.
+     * @param uploadType {@link Upload} enumeration, for chunks kept in the parent.
+     * @param progress {@link ProgressTracker} to report the bytes sent to.
+     * @param budget {@link UploadBudget} of the upload, or null for no limit.
+     * @param cancellation {@link CancellationToken} to abort the upload with.
+     */
+    private void stripeChunk(FileChunk chunk, StripePool stripes, StripeManifest manifest, Upload uploadType, ProgressTracker progress, UploadBudget budget, CancellationToken cancellation) {
+        var account = stripes.next();
+        var backend = stripes.get(account);
+
+        String id;
+        if (backend.isEmpty()) {
+            id = uploadChunk(chunk, uploadType, null, progress, budget, cancellation).getId();
+        } else {
+            id = uploadChunk(chunk, budget, () -> {
+                try {
+                    return backend.get().upload(chunk, cancellation);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, cancellation);
+
+            progress.update(chunk.getName(), chunk.getBytes().length);
+        }
+
+        LOGGER.info("Striped chunk-{} to {}", chunk.getIndex(), account);
+        manifest.add(account, id, chunk);
+    }
+
+    /**
+     * Removes the chunks an upload striped to the other accounts of a pool.
+     * Failures are logged, as the upload's parent is already gone or going.
+     *
+     * @param parent The parent folder.
+     * @param stripes The {@link StripePool} the chunks were striped across.
+     */
+    private void removeStripes(File parent, StripePool stripes) {
+        for (var backend : stripes.getBackends()) {
+            try {
+                backend.remove(parent);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Couldn't remove the chunks of " + parent.getId() + " from " + backend.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Runs the upload of a {@link FileChunk} once the {@link UploadBudget}
+     * allows it, retrying on failure.
+     *
+     * @param chunk {@link FileChunk} being uploaded.
+     * @param budget {@link UploadBudget} of the upload, or null for no limit.
+     * @param upload Uploads the chunk, returning what it was uploaded as.
+     * @param cancellation {@link CancellationToken} to abort the upload with.
+     * @return What the chunk was uploaded as.
+     */
+    private <T> T uploadChunk(FileChunk chunk, UploadBudget budget, Supplier<T> upload, CancellationToken cancellation) {
+        var size = chunk.getBytes().length;
+
+        if (budget != null) {
+            try {
+                budget.acquire(size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to upload chunk " + chunk.getIndex(), e);
+            }
+        }
+
+        try {
+            int iterations = 0;
+            int delay = 1000;
+            while (true) {
+                try {
+                    return upload.get();
+                } catch (Exception e) {
+                    cancellation.throwIfCancelled();
+                    uploadTuner.onFailure();
+
+                    LOGGER.error("An exception occurred during the processing of file " + chunk.getIndex(), e);
+
+                    // Failing the upload instead of exiting, so whoever started it can cancel and trash it
+                    if (iterations++ >= 5) { // Separate from timing, as that cna change
+                        throw new RuntimeException("Chunk " + chunk.getIndex() + " failed to upload 5 times, giving up on " + chunk.getParent().getName(), e);
+                    }
+
+                    // Jitter so chunks failing together don't all retry together
+                    long wait = delay + ThreadLocalRandom.current().nextLong(delay / 2);
+                    LOGGER.info("Waiting {}ms", wait);
+                    Utility.sleep(wait);
+
+                    delay = Math.min(30000, delay * 2); // Double the delay from previous, max of 30 seconds
+                }
+            }
+        } finally {
+            if (budget != null) {
+                budget.release(size);
+            }
+        }
+    }
+
+    /**
+     * Trashes the parent of a cancelled or failed upload along with the
+     * chunks uploaded so far. It's left marked as processing.
+     *
+     * @param parent The parent folder.
+     */
+    void discardPartial(File parent) {
+        valuesStore.finish(parent);
+
+        try {
+            drive.files().update(parent.getId(), new File().setTrashed(true)).execute();
+            LOGGER.info("Upload stopped, trashed {} ({})", parent.getName(), parent.getId());
+        } catch (IOException e) {
+            LOGGER.error("Couldn't trash stopped upload " + parent.getId(), e);
+        }
+    }
+
+    /**
+     * Finishes an upload left processing, if it got far enough to record how.
+     * Only striped uploads do, as their {@link StripeManifest} is written with
+     * the properties that finish the upload once every chunk is uploaded.
+     *
+     * @param parent The parent folder.
+     * @return If the upload was finished.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public boolean resumeUpload(File parent) throws IOException {
+        var properties = readMetadata(parent, StripeManifest.METADATA)
+                .map(StripeManifest::fromBytes)
+                .flatMap(StripeManifest::getProperties);
+
+        if (properties.isEmpty()) {
+            return false;
+        }
+
+        sheetManager.addProperties(parent, properties.get());
+        LOGGER.info("Resumed upload of {} ({})", parent.getName(), parent.getId());
+        return true;
+    }
+
+    /**
+     * Trashes the parents of uploads that will never finish, in a single
+     * batched request. Chunks they striped to other accounts are kept, as a
+     * trashed upload can still be restored, and are only removed once it's
+     * deleted for good.
+     *
+     * @param parents The parent folders, no more than a batch allows.
+     * @return The amount of parents trashed.
+     * @throws IOException If the batch request throws an exception.
+     */
+    public int trashStale(List<File> parents) throws IOException {
+        var trashed = Collections.synchronizedList(new ArrayList<File>());
+        var batch = drive.batch();
+        for (var parent : parents) {
+            drive.files().update(parent.getId(), new File().setTrashed(true)).setFields("id").queue(batch, new JsonBatchCallback<File>() {
+                @Override
+                public void onSuccess(File file, HttpHeaders headers) {
+                    trashed.add(parent);
+                }
+
+                @Override
+                public void onFailure(GoogleJsonError error, HttpHeaders headers) {
+                    LOGGER.error("Couldn't trash stale upload {}: {}", parent.getId(), error.getMessage());
+                }
+            });
+        }
+
+        if (batch.size() > 0) {
+            batch.execute();
+        }
+
+        for (var parent : trashed) {
+            LOGGER.info("Trashed stale upload {} ({})", parent.getName(), parent.getId());
+        }
+
+        return trashed.size();
+    }
+
+    /**
+     * Gets when a chunk of a striped upload was last stored in any of the
+     * other accounts of the {@link StripePool}.
+     *
+     * @param parent The parent folder.
+     * @return The milliseconds since the epoch of the newest chunk, or 0 if there are none.
+     * @throws IOException If a backend's request throws an exception.
+     */
+    public long getStripesLastModified(File parent) throws IOException {
+        var stripes = stripePool;
+        if (stripes == null) {
+            return 0;
+        }
+
+        long modified = 0;
+        for (var backend : stripes.getBackends()) {
+            modified = Math.max(modified, backend.getLastModified(parent));
+        }
+
+        return modified;
+    }
+
+    /**
+     * @return The accounts chunks are striped across, or null if none are set
+     */
+    public StripePool getStripePool() {
+        return stripePool;
+    }
+
+    /**
+     * Upload a {@link FileChunk} to its parent folder - where the parent folder
+     * represents a file stored by holysheet. If the upload type is
+     * {@link Upload#SHEETS}, the chunk is written as a tab of a shared book
+     * instead of its own spreadsheet.
+     *
+     * @param chunk {@link FileChunk} to upload.
+     * @param uploadType {@link Upload} enumeration.
+     * @param replaceId The id of the sheet to replace the content of, or null to create one.
+     * @param progress {@link ProgressTracker} to report the bytes sent to as each part completes, or null.
+     * @param cancellation {@link CancellationToken} aborting the upload between its parts, sized by the {@link UploadTuner}.
+     * @return {@link File} google sheet chunk, or the book containing it.
+     */
+    private File processChunk(FileChunk chunk, Upload uploadType, String replaceId, ProgressTracker progress, CancellationToken cancellation) {
+        try {
+            LOGGER.info("Uploading chunk-{}", chunk.getIndex() + 1);
+
+            if (uploadType == Upload.SHEETS) {
+                var book = valuesStore.writeChunk(chunk);
+                if (progress != null) {
+                    progress.update(chunk.getName(), chunk.getBytes().length);
+                }
+
+                return book;
+            }
+
+            var content = new ByteArrayContent("text/tab-separated-values", chunk.getBytes());
+            var parent = chunk.getParent();
+
+            DriveRequest<File> request;
+            if (replaceId != null) {
+                LOGGER.info("Replacing chunk-{}", chunk.getIndex());
+
+                request = drive.files().update(replaceId, new File()
+                        .setProperties(chunk.getProperties()), content)
+                        .setFields("id");
+            } else {
+                request = drive.files().create(new File()
+                        .setMimeType(Mime.SHEET.getMime())
+                        .setName(chunk.getName())
+                        .setProperties(chunk.getProperties())
+                        .setParents(Collections.singletonList(parent.getId())), content)
+                        .setFields("id");
+            }
+
+            // The time of the last progress event, and the bytes uploaded as of it
+            var sent = new long[]{System.currentTimeMillis(), 0};
+
+            request.getMediaHttpUploader()
+                    .setDirectUploadEnabled(uploadType == Upload.DIRECT)
+                    .setChunkSize(uploadTuner.getChunkSize())
+                    .setProgressListener(uploader -> {
+                        if (cancellation.isCancelled()) {
+                            throw new IOException("Upload cancelled");
+                        }
+
+                        long now = System.currentTimeMillis();
+                        switch (uploader.getUploadState()) {
+                            case INITIATION_COMPLETE:
+                                uploadTuner.onLatency(now - sent[0]);
+                                break;
+                            case MEDIA_IN_PROGRESS:
+                            case MEDIA_COMPLETE:
+                                uploadTuner.onTransfer(uploader.getNumBytesUploaded() - sent[1], now - sent[0]);
+                                sent[1] = uploader.getNumBytesUploaded();
+
+                                // A retried chunk only counts once it gets further than before
+                                if (progress != null) {
+                                    progress.update(chunk.getName(), sent[1]);
+                                }
+                                break;
+                        }
+
+                        sent[0] = now;
+                    });
+
+            return request.execute();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a metadata sheet of the given kind to a parent, replacing any
+     * existing one. Metadata is encoded the same as data, but in one sheet.
+     *
+     * @param parent The parent folder.
+     * @param kind   The kind of metadata, e.g. {@link PackIndex#METADATA}.
+     * @param data   The unencoded metadata.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public void writeMetadata(File parent, String kind, byte[] data) throws IOException {
+        var content = new ByteArrayContent("text/tab-separated-values", encodeWhole(data));
+        var existing = findMetadata(parent, kind);
+        if (existing.isPresent()) {
+            drive.files().update(existing.get().getId(), new File(), content).setFields("id").execute();
+        } else {
+            drive.files().create(new File()
+                    .setMimeType(Mime.SHEET.getMime())
+                    .setName(kind)
+                    .setProperties(Map.of("metadata", kind))
+                    .setParents(Collections.singletonList(parent.getId())), content)
+                    .setFields("id")
+                    .execute();
+        }
+    }
+
+    /**
+     * Reads a metadata sheet of the given kind from a parent.
+     *
+     * @param parent The parent folder.
+     * @param kind   The kind of metadata, e.g. {@link PackIndex#METADATA}.
+     * @return The unencoded metadata, if the parent has any of the kind.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public Optional<byte[]> readMetadata(File parent, String kind) throws IOException {
+        var existing = findMetadata(parent, kind);
+        if (existing.isEmpty()) {
+            return Optional.empty();
+        }
+
+        var exported = new ByteArrayOutputStream();
+        drive.files().export(existing.get().getId(), "text/tab-separated-values").executeMediaAndDownloadTo(exported);
 
-            var byteOut = new ByteArrayOutputStream();
-            drive.files().export(file.getId(), "text/tab-separated-values").executeMediaAndDownloadTo(byteOut);
+        return Optional.of(decodeWhole(exported.toByteArray()));
+    }
 
-            out.write(byteOut.toByteArray());
+    /**
+     * Encodes data into a single sheet's worth of encoded bytes.
+     */
+    private static byte[] encodeWhole(byte[] data) {
+        var encoded = new ByteArrayOutputStream();
+        var encodingOut = new EncodingOutputStream(Long.MAX_VALUE, (index, bytes) -> encoded.writeBytes(bytes));
+        try {
+            encodingOut.write(data, 0, data.length);
+            encodingOut.flush();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-    }
 
-    public CompletableFuture<File> uploadDataStream(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, EncodingOutputStream outputStream) throws IOException {
-        path = cleanPath(path);
+        return encoded.toByteArray();
+    }
 
-        var parent = sheetManager.createFolder(title, sheetManager.getSheetStore(), Map.of(
-                "directParent", "true",
-                "starred", "false",
-                "processing", "true",
-                "size", "0",
-                "sheets", "0",
-                "path", path,
-                "compressed", String.valueOf(compress.getNumber())
-        ));
+    /**
+     * Decodes the encoded bytes of a single sheet, see {@link #encodeWhole(byte[])}.
+     */
+    private static byte[] decodeWhole(byte[] encoded) {
+        var decoded = new ByteArrayOutputStream();
+        try (var decodingOut = new DecodingOutputStream<>(decoded)) {
+            decodingOut.write(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
-        LOGGER.info("Created parent sheetStore/{} ({})", parent.getName(), parent.getId());
+        return decoded.toByteArray();
+    }
 
-        return processRawStream(outputStream, fileSize, (int) maxSheetSize, parent, uploadType).thenApply($ -> parent);
+    private Optional<File> findMetadata(File parent, String kind) throws IOException {
+        return getCollectionFirst(sheetManager.getFiles(1, "parents in '" + parent.getId() + "' and properties has { key='metadata' and value='" + kind + "' }", "id, name, properties", Mime.SHEET));
     }
 
-    private CompletableFuture<Void> processRawStream(EncodingOutputStream encodingOut, long totalSize, int maxLength, File parent, Upload uploadType) {
+    /**
+     * Gets the {@link PackIndex} of a container, cached until the container
+     * is modified.
+     *
+     * @param container The container folder.
+     * @return The index, empty if the container hasn't been closed yet.
+     * @throws IOException If a drive request throws an exception.
+     */
+    PackIndex getPackIndex(File container) throws IOException {
+        var modified = container.getModifiedTime() == null ? 0 : container.getModifiedTime().getValue();
+        var key = container.getId() + "@" + modified;
+        var cached = packIndices.get(key);
+        if (cached != null) {
+            return cached;
+        }
 
-        // ~22% overhead
-        int estimatedChunks = (int) Math.ceil((totalSize * 1.22) / (double) maxLength);
+        var index = readMetadata(container, PackIndex.METADATA).map(PackIndex::fromBytes).orElseGet(PackIndex::new);
+        invalidatePackIndex(container.getId());
+        packIndices.put(key, index);
+        return index;
+    }
 
-        LOGGER.info("File size: {} estimated chunks: {}", humanReadableByteCountSI(totalSize), estimatedChunks);
+    /**
+     * Writes the {@link PackIndex} of a container, and updates its entry
+     * count so other readers see it as modified.
+     *
+     * @param container The container folder.
+     * @param index     The index.
+     * @throws IOException If a drive request throws an exception.
+     */
+    void savePackIndex(File container, PackIndex index) throws IOException {
+        writeMetadata(container, PackIndex.METADATA, index.toBytes());
+        sheetManager.addProperties(container.getId(), Map.of("entries", String.valueOf(index.getEntries().size())));
+        invalidatePackIndex(container.getId());
+    }
 
-        long start = System.currentTimeMillis();
+    private void invalidatePackIndex(String containerId) {
+        var prefix = containerId + "@";
+        packIndices.keySet().removeIf(key -> key.startsWith(prefix));
+    }
 
-        encodingOut.setChunkConsumer((index, bytes) -> {
-            LOGGER.info("Uploading {}/~{}", index + 1, estimatedChunks);
+    /**
+     * Lists the files packed into containers at the given path.
+     *
+     * @param path    The clean path of the files.
+     * @param trashed Whether the containers must have been removed.
+     * @return The packed files, as from {@link #getPackedFile(String)}.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public List<File> listPacked(String path, boolean trashed) throws IOException {
+        var packed = new ArrayList<File>();
+        for (var container : getContainers(trashed)) {
+            listPacked(container).stream().filter(file -> file.getProperties().get("path").equals(path)).forEach(packed::add);
+        }
 
-            int iterations = 0;
-            int delay = 1000;
-            while (true) {
-                try {
-                    processChunk(new FileChunk(parent, bytes, index), uploadType);
-                    return;
-                } catch (Exception e) {
-                    LOGGER.error("An exception occurred during the processing of file " + index, e);
+        return packed;
+    }
 
-                    delay = Math.max(30000, delay * 2); // Increase the delay 5x from previous, max of 30 seconds
+    /**
+     * Lists every file packed into a container.
+     *
+     * @param container The container folder.
+     * @return The packed files, as from {@link #getPackedFile(String)}.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public List<File> listPacked(File container) throws IOException {
+        var packed = new ArrayList<File>();
+        var entries = getPackIndex(container).getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            var entry = entries.get(i);
+            if (entry != null) {
+                packed.add(toPackedFile(container, i, entry));
+            }
+        }
 
-                    if (iterations++ >= 5) { // Separate from timing, as that cna change
-                        LOGGER.info("It has been 5 failed iterations, terminating upload. The file will remain with the 'processing' property set to true, it may be manually deleted later. IN the future, a more robust system may be implemented of trying file uploads later.");
-                        System.exit(0);
-                    }
+        return packed;
+    }
 
-                    LOGGER.info("Waiting {}ms", delay);
-                    Utility.sleep(delay);
+    /**
+     * Finds the ID of a non-trashed packed file containing the given name.
+     *
+     * @param name The name to match.
+     * @return {@link Optional} wrapping the {@link String} id.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public Optional<String> findPackedId(String name) throws IOException {
+        for (var container : getContainers(false)) {
+            var entries = getPackIndex(container).getEntries();
+            for (int i = 0; i < entries.size(); i++) {
+                var entry = entries.get(i);
+                if (entry != null && entry.getName().contains(name)) {
+                    return Optional.of(PackIndex.getEntryId(container.getId(), i));
                 }
             }
-        });
+        }
 
-        var completer = new CompletableFuture<Void>();
+        return Optional.empty();
+    }
 
-        encodingOut.setOnClose(() -> {
-            int sheets = encodingOut.getChunkIndex();
-            long size = encodingOut.getLength();
+    /**
+     * Gets a packed file as a {@link File}, with the same properties as a
+     * regular upload so it may be listed alongside them.
+     *
+     * @param id The id of the packed file, see {@link PackIndex#getEntryId(String, int)}.
+     * @return The packed file, or null if it doesn't exist.
+     * @throws IOException If a drive request throws an exception.
+     */
+    public File getPackedFile(String id) throws IOException {
+        var container = sheetManager.getFile(PackIndex.getContainerId(id), DRIVE_FIELDS);
+        if (container == null) {
+            return null;
+        }
 
-            LOGGER.info("Completed. Readable data: {} sheet estimated: {} sheet exact: {}", humanReadableByteCountSI(size), estimatedChunks, sheets);
+        var entryIndex = PackIndex.getEntryIndex(id);
+        var entry = getPackIndex(container).get(entryIndex);
+        return entry == null ? null : toPackedFile(container, entryIndex, entry);
+    }
 
-            double durationSeconds = (System.currentTimeMillis() - start) / 1000D;
-            long bps = (long) ((double) size / durationSeconds);
-            LOGGER.info("Finished upload in {} ms at a rate of {}/s", System.currentTimeMillis() - start, humanReadableByteCountSI(bps));
+    private List<File> getContainers(boolean trashed) throws IOException {
+        return sheetManager.getFiles(-1, "properties has { key='container' and value='true' } and properties has { key='processing' and value='false' } and trashed = " + trashed, Mime.FOLDER);
+    }
 
-            try {
-                sheetManager.addProperties(parent, Map.of(
+    private File toPackedFile(File container, int index, PackIndex.Entry entry) {
+        var length = String.valueOf(entry.getLength());
+        return new File()
+                .setId(PackIndex.getEntryId(container.getId(), index))
+                .setName(entry.getName())
+                .setMimeType(container.getMimeType())
+                .setParents(container.getParents())
+                .setOwners(container.getOwners())
+                .setModifiedTime(container.getModifiedTime())
+                .setWebViewLink(container.getWebViewLink())
+                .setTrashed(container.getTrashed())
+                .setProperties(Map.of(
+                        "directParent", "true",
+                        "starred", "false",
                         "processing", "false",
-                        "size", String.valueOf(size),
-                        "sheets", String.valueOf(sheets)
+                        "size", length,
+                        "rawSize", length,
+                        "sheets", "0",
+                        "path", entry.getPath(),
+                        "packed", container.getId()
                 ));
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-
-            completer.complete(null);
-        });
-
-        return completer;
-    }
-
-    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data) throws IOException {
-        return uploadDataFile(title, path, fileSize, maxSheetSize, compress, uploadType, data, null);
     }
 
-    public File uploadDataFile(String title, String path, long fileSize, long maxSheetSize, Compression compress, Upload uploadType, InputStream data, Consumer<Double> statusUpdate) throws IOException {
-        path = cleanPath(path);
-        if (statusUpdate == null) {
-            statusUpdate = $ -> {
-            };
+    /**
+     * Moves a packed file to another path, by updating its entry in its
+     * container's index.
+     *
+     * @param id   The id of the packed file.
+     * @param path The clean path to move it to.
+     * @throws IOException If a drive request throws an exception.
+     */
+    private void movePacked(String id, String path) throws IOException {
+        var container = sheetManager.getFile(PackIndex.getContainerId(id), DRIVE_FIELDS);
+        if (container == null) {
+            throw new RuntimeException("No file could be found with the given ID \"" + id + "\"");
         }
 
-        var parent = sheetManager.createFolder(title, sheetManager.getSheetStore(), Map.of(
-                "directParent", "true",
-                "starred", "false",
-                "processing", "true",
-                "size", "0",
-                "sheets", "0",
-                "path", path,
-                "compressed", String.valueOf(compress.getNumber())
-        ));
-
-        LOGGER.info("Created parent sheetStore/{} ({})", parent.getName(), parent.getId());
-
-        processRawFile(data, fileSize, (int) maxSheetSize, parent, uploadType, statusUpdate);
+        var index = getPackIndex(container);
+        var entryIndex = PackIndex.getEntryIndex(id);
+        var entry = index.get(entryIndex);
+        if (entry == null) {
+            throw new RuntimeException("No file could be found with the given ID \"" + id + "\"");
+        }
 
-        return parent;
+        index.set(entryIndex, new PackIndex.Entry(entry.getName(), path, entry.getOffset(), entry.getLength()));
+        savePackIndex(container, index);
     }
 
-    private void processRawFile(InputStream input, long totalSize, int maxLength, File parent, Upload uploadType, Consumer<Double> statusUpdate) throws IOException {
-
-        // ~22% overhead
-        int estimatedChunks = (int) Math.ceil((totalSize * 1.22) / (double) maxLength);
-
-        LOGGER.info("File size: {} estimated chunks: {}", humanReadableByteCountSI(totalSize), estimatedChunks);
-
-        long start = System.currentTimeMillis();
-        boolean[] sentMax = {false};
-
-        statusUpdate.accept(0D);
-
-        var encodingOut = EncodingOutputStream.encode(input, maxLength, (index, bytes) -> {
-            LOGGER.info("Uploading {}/~{}", index + 1, estimatedChunks);
-
-            int iterations = 0;
-            int delay = 1000;
-            while (true) {
-                try {
-                    processChunk(new FileChunk(parent, bytes, index), uploadType);
-                    var percent = Math.max((index + 1) / ((double) estimatedChunks + 1), 1D);
-                    if (!sentMax[0]) {
-                        sentMax[0] = percent == 1D;
-                    }
-                    statusUpdate.accept(percent);
-                    return;
-                } catch (Exception e) {
-                    LOGGER.error("An exception occurred during the processing of file " + index, e);
+    /**
+     * Removes a packed file from its container's index. Its bytes stay in the
+     * container, which is removed once no files are left in it.
+     *
+     * @param id        The id of the packed file.
+     * @param permanent If the container should skip the trash once empty.
+     * @throws IOException If a drive request throws an exception.
+     */
+    private void deletePacked(String id, boolean permanent) throws IOException {
+        var container = sheetManager.getFile(PackIndex.getContainerId(id), DRIVE_FIELDS);
+        if (container == null) {
+            throw new RuntimeException("No file could be found with the given ID \"" + id + "\"");
+        }
 
-                    delay = Math.max(30000, delay * 2); // Increase the delay 5x from previous, max of 30 seconds
+        var index = getPackIndex(container);
+        index.remove(PackIndex.getEntryIndex(id));
 
-                    if (iterations++ >= 5) { // Separate from timing, as that cna change
-                        LOGGER.info("It has been 5 failed iterations, terminating upload. The file will remain with the 'processing' property set to true, it may be manually deleted later. IN the future, a more robust system may be implemented of trying file uploads later.");
-                        System.exit(0);
-                    }
+        if (!index.isEmpty()) {
+            savePackIndex(container, index);
+            return;
+        }
 
-                    LOGGER.info("Waiting {}ms", delay);
-                    Utility.sleep(delay);
-                }
-            }
-        });
+        LOGGER.info("Removing empty container {}", container.getName());
 
-        if (!sentMax[0]) {
-            statusUpdate.accept(1D);
+        invalidatePackIndex(container.getId());
+        if (permanent) {
+            drive.files().delete(container.getId()).execute();
+        } else {
+            drive.files().update(container.getId(), new File().setTrashed(true)).execute();
         }
+    }
 
-        int sheets = encodingOut.getChunkIndex();
-        long size = encodingOut.getLength();
-
-        LOGGER.info("Completed. Readable data: {} sheet estimated: {} sheet exact: {}", humanReadableByteCountSI(size), estimatedChunks, sheets);
+    /**
+     * Sets the {@link UploadTuner} sizing the uploads of this {@link SheetIO}.
+     *
+     * @param uploadTuner The tuner, shared by all {@link SheetIO}s by default
+     */
+    public void setUploadTuner(UploadTuner uploadTuner) {
+        this.uploadTuner = uploadTuner;
+    }
 
-        double durationSeconds = (System.currentTimeMillis() - start) / 1000D;
-        long bps = (long) ((double) size / durationSeconds);
-        LOGGER.info("Finished upload in {} ms at a rate of {}/s", System.currentTimeMillis() - start, humanReadableByteCountSI(bps));
+    /**
+     * Sets the local cache consulted before exporting sheets.
+     *
+     * @param chunkCache The cache, or null to always export
+     */
+    public void setChunkCache(ChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
 
-        sheetManager.addProperties(parent, Map.of(
-                "processing", "false",
-                "size", String.valueOf(size),
-                "sheets", String.valueOf(sheets)
-        ));
+    /**
+     * Sets the {@link ExportHedger} sheet exports are made through.
+     *
+     * @param exportHedger The hedger, shared by all {@link SheetIO}s by default, or null to never hedge
+     */
+    public void setExportHedger(ExportHedger exportHedger) {
+        this.exportHedger = exportHedger;
     }
 
     /**
-     * Upload a {@link FileChunk} to its parent folder - where the parent folder
-     * represents a file stored by holysheet.
+     * Sets the parity uploaded from a file with, so a download can rebuild
+     * sheets that are slow or fail to download from the rest of their group.
      *
-     * @param chunk {@link FileChunk} to upload.
-     * @param uploadType {@link Upload} enumeration.
-     * @return {@link File} google sheet chunk.
+     * @param dataShards   The amount of data sheets in each group, at most 12 so their lengths fit a property
+     * @param parityShards The amount of parity sheets written for each group, or 0 for none
      */
-    private File processChunk(FileChunk chunk, Upload uploadType) {
-        try {
-            LOGGER.info("Uploading chunk-{}", chunk.getIndex() + 1);
+    public void setParity(int dataShards, int parityShards) {
+        if (dataShards > 12) {
+            throw new IllegalArgumentException("Parity groups may have at most 12 data sheets");
+        }
 
-            var content = new ByteArrayContent("text/tab-separated-values", chunk.getBytes());
-            var parent = chunk.getParent();
-            var request = drive.files().create(new File()
-                    .setMimeType(Mime.SHEET.getMime())
-                    .setName("chunk-" + chunk.getIndex())
-                    .setProperties(chunk.getProperties())
-                    .setParents(Collections.singletonList(parent.getId())), content)
-                    .setFields("id");
+        this.parityCode = parityShards == 0 ? null : new ReedSolomon(dataShards, parityShards);
+    }
 
-            request.getMediaHttpUploader()
-                    .setDirectUploadEnabled(uploadType == Upload.DIRECT)
-                    .setChunkSize(20 * 0x100000); // 20MB (Default 10)
+    /**
+     * Sets the accounts chunks are striped across when uploaded from a file,
+     * and downloaded from when a file was striped. The parent keeps a
+     * {@link StripeManifest} of where each chunk went.
+     *
+     * @param stripePool The accounts, or null to keep every chunk in the parent and refuse to download striped files
+     */
+    public void setStripePool(StripePool stripePool) {
+        this.stripePool = stripePool;
+    }
 
-            return request.execute();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+    /**
+     * Sets the key files are encrypted with when uploaded from a file, and decrypted with when downloaded.
+     *
+     * @param encryptionKey The key, or null to upload unencrypted and refuse to download encrypted files
+     */
+    public void setEncryptionKey(EncryptionKey encryptionKey) {
+        this.encryptionKey = encryptionKey;
     }
 
     public void setStarred(String id, boolean starred) throws IOException {
+        if (PackIndex.isEntryId(id)) {
+            throw new RuntimeException("Packed files can't be starred");
+        }
+
         sheetManager.addProperties(id, Map.of("starred", starred ? "true" : "false"));
     }
 
     public void setPath(String id, String path) throws IOException {
         path = cleanPath(path);
+
+        if (PackIndex.isEntryId(id)) {
+            movePacked(id, path);
+            return;
+        }
+
         sheetManager.addProperties(id, Map.of("path", path));
     }
 
@@ -404,21 +2189,49 @@ public class SheetIO {
     }
 
     public void createFolder(String path) throws IOException {
-        var folders = new ArrayList<>(getFolders());
+        folderIndex.add(path);
+    }
 
-        if (folders.contains(path)) {
-            return;
+    public List<String> getFolders() {
+        try {
+            folderIndex.refresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
-        folders.add(path);
+        return folderIndex.getFolders();
+    }
 
-        sheetManager.addProperties(sheetManager.getSheetStore(), Map.of("folders", String.join(",", folders)));
+    public FolderIndex getFolderIndex() {
+        return folderIndex;
     }
 
-    public List<String> getFolders() {
-        var properties = sheetManager.getSheetStore().getProperties();
-        var folderString = properties == null ? "" : properties.getOrDefault("folders", "");
-        return new ArrayList<>(Arrays.stream(folderString.split(",")).collect(Collectors.toUnmodifiableList()));
+    public UploadIndex getUploadIndex() {
+        return uploadIndex;
+    }
+
+    /**
+     * @return If an upload or download is running in this process, of any account
+     */
+    public static boolean isTransferring() {
+        return TRANSFERS.get() > 0;
+    }
+
+    /**
+     * Deletes a file on the I/O executor without asking for confirmation, see {@link #deleteData(String, boolean, boolean)}.
+     *
+     * @param id        The id of the file
+     * @param permanent If the file should skip the trash
+     * @return A {@link CompletableFuture} completed once deleted
+     */
+    public CompletableFuture<Void> deleteDataAsync(String id, boolean permanent) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                deleteData(id, false, permanent);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executors.getIo());
     }
 
     public void deleteData(String id, boolean permanent) throws IOException {
@@ -426,7 +2239,8 @@ public class SheetIO {
     }
 
     public void deleteData(String id, boolean confirm, boolean permanent) throws IOException {
-        var file = drive.files().get(id).setFields("id, name, properties, trashed").execute();
+        var packed = PackIndex.isEntryId(id);
+        var file = packed ? getPackedFile(id) : drive.files().get(id).setFields("id, name, properties, trashed").execute();
 
         if (file == null) {
             throw new RuntimeException("No file could be found with the given ID \"" + id + "\"");
@@ -451,12 +2265,28 @@ public class SheetIO {
             }
 
             var line = scanner.nextLine();
-            if (!"y".equalsIgnoreCase(line) && "yes".equalsIgnoreCase(line)) {
+            if (!"y".equalsIgnoreCase(line) && !"yes".equalsIgnoreCase(line)) {
                 LOGGER.info("Cancelling removal.");
                 return;
             }
         }
 
+        if (packed) {
+            deletePacked(id, permanent);
+            return;
+        }
+
+        // Trashed files keep their stripes, so they can be restored
+        var stripes = stripePool;
+        if ((permanent || file.getTrashed()) && "true".equals(properties.get("striped"))) {
+            // Deleting the parent would lose the only record of where its chunks are
+            if (stripes == null) {
+                throw new RuntimeException(file.getName() + " is striped across other accounts, which must be set up to delete it for good");
+            }
+
+            removeStripes(file, stripes);
+        }
+
         if (permanent) {
             drive.files().delete(id).execute();
         } else {
@@ -503,13 +2333,11 @@ public class SheetIO {
     public void cloneFile(String fileId, int maxSheetSize, Compression compress) {
         downloadFile(fileId).ifPresent(fileData -> {
             var file = fileData.getFile();
-            var in = fileData.getIn();
-
             var name = file.getName();
 
             LOGGER.info("Saving {}...", name);
 
-            try {
+            try (var in = fileData.getIn()) {
                 uploadDataFile(name, "/", fileData.getSize(), maxSheetSize, compress, Upload.MULTIPART, in);
             } catch (IOException e) {
                 LOGGER.error("An error occurred while uploading the " + fileId, e);
@@ -518,28 +2346,77 @@ public class SheetIO {
     }
 
     /**
-     * Downloads a file for CLONING ONLY.
+     * Downloads a file for CLONING ONLY. The file is streamed from Drive on
+     * the I/O executor into a bounded pipe, so it's uploaded as it downloads
+     * without touching the disk, and the download is held back whenever it
+     * gets a sheet ahead of the upload. The stream must be closed, which
+     * aborts the download if it's not yet finished.
      *
      * @return File bytes
      */
     public Optional<FileData> downloadFile(String fileId) {
         try {
-            var file = sheetManager.getFile(fileId);
+            var file = sheetManager.getFile(fileId, "id, name, mimeType, size");
 
-            if (file == null) {
-                LOGGER.error("No file could be found with the given ID \"{}\"", fileId);
+            if (file == null || file.getSize() == null) {
+                LOGGER.error("No downloadable file could be found with the given ID \"{}\"", fileId);
                 return Optional.empty();
             }
 
-            var downloaded = java.io.File.createTempFile("downloaded-" + hashCode(), "");
-            drive.files().get(fileId).executeMediaAndDownloadTo(new FileOutputStream(downloaded));
-            return Optional.of(new FileData(file, downloaded.length(), new FileInputStream(downloaded)));
+            var pipe = new PipedInputStream(CLONE_BUFFER_SIZE);
+            var pipeOut = new PipedOutputStream(pipe);
+
+            var downloaded = CompletableFuture.runAsync(() -> {
+                try (pipeOut; var media = drive.files().get(fileId).executeMediaAsInputStream()) {
+                    media.transferTo(pipeOut);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executors.getIo());
+
+            return Optional.of(new FileData(file, file.getSize(), failingAtEnd(pipe, downloaded)));
         } catch (IOException e) {
             LOGGER.error("An error occurred while downloading the file " + fileId, e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Wraps the reading end of a pipe so that it throws once it's read to the
+     * end if the writing end failed, rather than ending as if complete.
+     */
+    private static InputStream failingAtEnd(InputStream in, CompletableFuture<Void> written) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read == -1) {
+                    throwIfFailed();
+                }
+
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read == -1) {
+                    throwIfFailed();
+                }
+
+                return read;
+            }
+
+            private void throwIfFailed() throws IOException {
+                try {
+                    written.join();
+                } catch (CompletionException e) {
+                    throw new IOException("The download failed", e.getCause());
+                }
+            }
+        };
+    }
+
     public void renameFile(File file, String name) throws IOException {
         var meta = new File();
         meta.setName(name);
@@ -0,0 +1,215 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.AddSheetRequest;
+import com.google.api.services.sheets.v4.model.BatchUpdateSpreadsheetRequest;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesRequest;
+import com.google.api.services.sheets.v4.model.DeleteSheetRequest;
+import com.google.api.services.sheets.v4.model.GridProperties;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.SheetProperties;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import com.uddernetworks.holysheet.Mime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Stores chunks as tabs of shared spreadsheets (Called books) using the Sheets API, rather than converting a TSV
+ * upload into a new spreadsheet for every chunk. Each book holds up to {@link #TABS_PER_BOOK} chunks, each in a tab
+ * named {@code chunk-<index>} with one encoded line per row in the first column.
+ */
+public class SheetsValuesStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SheetsValuesStore.class);
+
+    public static final int TABS_PER_BOOK = 20;
+
+    // The amount of tabs to request per batchGet, to keep responses to a sane size
+    private static final int READ_BATCH = 4;
+
+    private final Drive drive;
+    private final Sheets sheets;
+
+    // Keyed by "parentId/bookIndex", only holds books of uploads still in progress
+    private final Map<String, File> books = new ConcurrentHashMap<>();
+
+    public SheetsValuesStore(Drive drive, Sheets sheets) {
+        this.drive = drive;
+        this.sheets = sheets;
+    }
+
+    /**
+     * Writes a {@link FileChunk} as a new tab of its book, creating the book in the chunk's parent if needed.
+     *
+     * @param chunk {@link FileChunk} to write.
+     * @return {@link File} of the book the chunk was written to.
+     * @throws IOException If a drive or sheets request throws an exception.
+     */
+    public File writeChunk(FileChunk chunk) throws IOException {
+        var parent = chunk.getParent();
+        int bookIndex = chunk.getIndex() / TABS_PER_BOOK;
+        var key = parent.getId() + "/" + bookIndex;
+
+        // A book's bit offset is that of its first chunk, which isn't always the first to arrive
+        var first = chunk.getIndex() % TABS_PER_BOOK == 0;
+        var createdBy = new boolean[1];
+        File book;
+        try {
+            book = books.computeIfAbsent(key, $ -> {
+                try {
+                    createdBy[0] = true;
+                    return createBook(parent, bookIndex, first ? chunk.getBitOffset() : null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        var created = createdBy[0];
+        if (first && !created) {
+            drive.files().update(book.getId(), new File().setProperties(Map.of("bitOffset", String.valueOf(chunk.getBitOffset()))))
+                    .execute();
+        }
+
+        var title = "chunk-" + chunk.getIndex();
+        var rows = toRows(chunk.getBytes());
+
+        LOGGER.info("Writing {} rows to {}/{}", rows.size(), book.getName(), title);
+
+        var requests = new ArrayList<Request>();
+        requests.add(new Request().setAddSheet(new AddSheetRequest().setProperties(new SheetProperties()
+                .setTitle(title)
+                .setGridProperties(new GridProperties()
+                        .setRowCount(rows.size())
+                        .setColumnCount(1)))));
+
+        if (created) {
+            // New spreadsheets come with an empty "Sheet1" with the ID 0, which would count towards the cell limit
+            requests.add(new Request().setDeleteSheet(new DeleteSheetRequest().setSheetId(0)));
+        }
+
+        sheets.spreadsheets().batchUpdate(book.getId(), new BatchUpdateSpreadsheetRequest()
+                .setRequests(requests))
+                .execute();
+
+        sheets.spreadsheets().values().batchUpdate(book.getId(), new BatchUpdateValuesRequest()
+                .setValueInputOption("RAW")
+                .setData(Collections.singletonList(new ValueRange()
+                        .setRange(title + "!A1")
+                        .setMajorDimension("ROWS")
+                        .setValues(rows))))
+                .execute();
+
+        return book;
+    }
+
+    /**
+     * Reads every chunk tab of a book in order, writing their lines to the given {@link OutputStream}.
+     *
+     * @param book {@link File} representing a book created by {@link #writeChunk(FileChunk)}.
+     * @param out  {@link OutputStream} to write to.
+     * @throws IOException If a sheets request throws an exception.
+     */
+    public void readBook(File book, OutputStream out) throws IOException {
+        var spreadsheet = sheets.spreadsheets().get(book.getId())
+                .setFields("sheets.properties.title")
+                .execute();
+
+        var ranges = spreadsheet.getSheets().stream()
+                .map(sheet -> sheet.getProperties().getTitle())
+                .filter(title -> title.startsWith("chunk-"))
+                .sorted(Comparator.comparingInt(title -> Integer.parseInt(title.substring(6))))
+                .map(title -> title + "!A:A")
+                .collect(Collectors.toUnmodifiableList());
+
+        for (int i = 0; i < ranges.size(); i += READ_BATCH) {
+            var response = sheets.spreadsheets().values().batchGet(book.getId())
+                    .setRanges(ranges.subList(i, Math.min(ranges.size(), i + READ_BATCH)))
+                    .setMajorDimension("ROWS")
+                    .execute();
+
+            for (var range : response.getValueRanges()) {
+                if (range.getValues() == null) {
+                    continue;
+                }
+
+                for (var row : range.getValues()) {
+                    if (row.isEmpty()) {
+                        continue;
+                    }
+
+                    out.write(String.valueOf(row.get(0)).getBytes(StandardCharsets.ISO_8859_1));
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets any books of the given parent, to be invoked once its upload has finished.
+     *
+     * @param parent The parent folder of the upload.
+     */
+    public void finish(File parent) {
+        var prefix = parent.getId() + "/";
+        books.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Creates a book, with the bit offset of its first chunk if known yet.
+     */
+    private File createBook(File parent, int bookIndex, Long bitOffset) throws IOException {
+        var properties = new HashMap<>(Map.of(
+                "index", String.valueOf(bookIndex),
+                "book", "true"
+        ));
+
+        if (bitOffset != null) {
+            properties.put("bitOffset", String.valueOf(bitOffset));
+        }
+
+        return drive.files().create(new File()
+                .setMimeType(Mime.SHEET.getMime())
+                .setName("book-" + bookIndex)
+                .setProperties(properties)
+                .setParents(Collections.singletonList(parent.getId())))
+                .setFields("id, name, properties")
+                .execute();
+    }
+
+    /**
+     * Splits encoded chunk bytes on their newlines into single-cell rows.
+     *
+     * @param bytes The encoded bytes
+     * @return The rows, never empty
+     */
+    private static List<List<Object>> toRows(byte[] bytes) {
+        var rows = new ArrayList<List<Object>>();
+        for (var line : new String(bytes, StandardCharsets.ISO_8859_1).split("\n")) {
+            rows.add(Collections.singletonList(line));
+        }
+
+        if (rows.isEmpty()) {
+            rows.add(Collections.singletonList(""));
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,151 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Where each chunk of an upload striped across accounts is kept, stored as the parent's "stripes" metadata sheet.
+ * Each entry is the account and ID of a chunk, along with the properties a chunk's sheet would otherwise carry, so
+ * the chunks can be downloaded without listing every account. It's only written once every chunk is uploaded, along
+ * with the properties that finish the upload, so an upload interrupted right after can still be finished from it.
+ *
+ * The manifest is stored as JSON of the form <code>{"e": [entries], "p": {properties}}</code>, each entry being
+ * <code>{"a": account, "d": id, "i": index, "b": bitOffset, "s": size, "h": sha}</code>. The properties are absent
+ * until every chunk is uploaded.
+ */
+public class StripeManifest {
+
+    public static final String METADATA = "stripes";
+
+    private static final Gson GSON = new Gson();
+
+    @SerializedName("e")
+    private final List<Entry> entries;
+
+    @SerializedName("p")
+    private Map<String, String> properties;
+
+    public StripeManifest() {
+        this(new ArrayList<>(), null);
+    }
+
+    private StripeManifest(List<Entry> entries, Map<String, String> properties) {
+        this.entries = entries;
+        this.properties = properties;
+    }
+
+    public static StripeManifest fromBytes(byte[] bytes) {
+        var manifest = GSON.fromJson(new String(bytes, StandardCharsets.UTF_8), StripeManifest.class);
+        if (manifest == null) {
+            return new StripeManifest();
+        }
+
+        return new StripeManifest(manifest.entries == null ? new ArrayList<>() : new ArrayList<>(manifest.entries), manifest.properties);
+    }
+
+    public synchronized byte[] toBytes() {
+        return GSON.toJson(this).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sets the properties that finish the upload, once every chunk is uploaded.
+     *
+     * @param properties The properties of the parent
+     */
+    public synchronized void setProperties(Map<String, String> properties) {
+        this.properties = new HashMap<>(properties);
+    }
+
+    /**
+     * @return The properties that finish the upload, if every chunk was uploaded
+     */
+    public synchronized Optional<Map<String, String>> getProperties() {
+        return Optional.ofNullable(properties).map(Collections::unmodifiableMap);
+    }
+
+    public synchronized void add(String account, String id, FileChunk chunk) {
+        entries.add(new Entry(account, id, chunk.getIndex(), chunk.getBitOffset(), chunk.getBytes().length, chunk.getHash()));
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Gets the chunks as the sheets they would be if kept in the parent, sorted by index. Each carries an "account"
+     * property naming the account it's kept in.
+     *
+     * @return The sheets, with only an ID, name and properties
+     */
+    public synchronized List<File> toSheets() {
+        return entries.stream()
+                .sorted(Comparator.comparingInt(Entry::getIndex))
+                .map(entry -> {
+                    var properties = new HashMap<>(Map.of(
+                            "index", String.valueOf(entry.index),
+                            "size", String.valueOf(entry.size),
+                            "bitOffset", String.valueOf(entry.bitOffset),
+                            "sha", entry.sha,
+                            "account", entry.account
+                    ));
+
+                    return new File()
+                            .setId(entry.id)
+                            .setName("chunk-" + entry.index)
+                            .setProperties(properties);
+                })
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    public static class Entry {
+        @SerializedName("a")
+        private final String account;
+
+        @SerializedName("d")
+        private final String id;
+
+        @SerializedName("i")
+        private final int index;
+
+        @SerializedName("b")
+        private final long bitOffset;
+
+        @SerializedName("s")
+        private final long size;
+
+        @SerializedName("h")
+        private final String sha;
+
+        public Entry(String account, String id, int index, long bitOffset, long size, String sha) {
+            this.account = account;
+            this.id = id;
+            this.index = index;
+            this.bitOffset = bitOffset;
+            this.size = size;
+            this.sha = sha;
+        }
+
+        public String getAccount() {
+            return account;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+}
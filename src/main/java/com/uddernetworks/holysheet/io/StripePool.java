@@ -0,0 +1,131 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The accounts an upload's chunks are striped across, being the account of the upload's parent along with any number
+ * of {@link ChunkBackend}s. Each account takes a share of the chunks by its weight, interleaved so consecutive chunks
+ * land on different accounts where possible, as a download fetches consecutive chunks together. Spreading chunks this
+ * way spreads their requests over each account's own quota.
+ */
+public class StripePool {
+
+    /**
+     * The name recorded for chunks kept in the account of the upload's parent.
+     */
+    public static final String PRIMARY = "primary";
+
+    private final ChunkBackend primary;
+    private final Map<String, ChunkBackend> backends = new LinkedHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> weights = new ArrayList<>();
+
+    // Guarded by this, the running credit of each account for smooth weighted round robin
+    private int[] credit = new int[0];
+
+    /**
+     * Creates a {@link StripePool} with just the primary account, its chunks kept in the upload's parent.
+     *
+     * @param primaryWeight The weight of the primary account, 0 to keep no chunks in it
+     */
+    public StripePool(int primaryWeight) {
+        this(null, primaryWeight);
+    }
+
+    /**
+     * Creates a {@link StripePool} with just the primary account, its chunks kept in the given backend instead of the
+     * upload's parent, such as a stand-in for testing.
+     *
+     * @param primary       The {@link ChunkBackend} of the primary account, or null to keep its chunks in the parent
+     * @param primaryWeight The weight of the primary account, 0 to keep no chunks in it
+     */
+    public StripePool(ChunkBackend primary, int primaryWeight) {
+        this.primary = primary;
+        if (primaryWeight > 0) {
+            addAccount(PRIMARY, primaryWeight);
+        }
+    }
+
+    /**
+     * Adds a backend to stripe chunks to.
+     *
+     * @param backend The {@link ChunkBackend}
+     * @param weight  The weight of the backend relative to the others, above 0
+     * @return This {@link StripePool}
+     */
+    public synchronized StripePool add(ChunkBackend backend, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("The weight of " + backend.getName() + " must be above 0");
+        }
+
+        if (PRIMARY.equals(backend.getName()) || backends.containsKey(backend.getName())) {
+            throw new IllegalArgumentException("An account named " + backend.getName() + " has already been added");
+        }
+
+        backends.put(backend.getName(), backend);
+        addAccount(backend.getName(), weight);
+        return this;
+    }
+
+    /**
+     * Picks the account to store the next chunk in.
+     *
+     * @return The name of the account, {@link #PRIMARY} for the account of the upload's parent
+     */
+    public synchronized String next() {
+        if (names.isEmpty()) {
+            throw new IllegalStateException("No accounts to stripe chunks across");
+        }
+
+        int total = 0;
+        int best = 0;
+        for (int i = 0; i < names.size(); i++) {
+            credit[i] += weights.get(i);
+            total += weights.get(i);
+            if (credit[i] > credit[best]) {
+                best = i;
+            }
+        }
+
+        credit[best] -= total;
+        return names.get(best);
+    }
+
+    /**
+     * Gets the backend of an account.
+     *
+     * @param name The name of the account
+     * @return The {@link ChunkBackend}, if one was added by the name or given for the primary account
+     */
+    public synchronized Optional<ChunkBackend> get(String name) {
+        if (PRIMARY.equals(name)) {
+            return Optional.ofNullable(primary);
+        }
+
+        return Optional.ofNullable(backends.get(name));
+    }
+
+    /**
+     * @return The backends chunks are kept in outside of the upload's parent, being those added along with any given
+     * for the primary account
+     */
+    public synchronized List<ChunkBackend> getBackends() {
+        var all = new ArrayList<ChunkBackend>();
+        if (primary != null) {
+            all.add(primary);
+        }
+
+        all.addAll(backends.values());
+        return List.copyOf(all);
+    }
+
+    private void addAccount(String name, int weight) {
+        names.add(name);
+        weights.add(weight);
+        credit = new int[names.size()];
+    }
+}
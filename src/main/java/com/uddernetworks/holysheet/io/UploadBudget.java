@@ -0,0 +1,112 @@
+package com.uddernetworks.holysheet.io;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A global limit on the amount of chunks, and bytes of chunks, being uploaded at once. Permits are handed out in the
+ * order they were asked for, so an upload with many chunks goes to the back of the line after each one and can't
+ * starve smaller uploads waiting alongside it.
+ *
+ * Bytes an upload holds in memory besides its chunks, such as a group of chunks kept to compute parity from, are
+ * reserved from the same bytes with {@link #acquireBuffer(long)}. Buffers may only take up half of the bytes, so
+ * whatever they hold, chunks can still be uploaded and the uploads holding them can finish their buffers.
+ */
+public class UploadBudget {
+
+    private final int maxChunks;
+    private final long maxBytes;
+    private final Semaphore chunks;
+    private final Semaphore bytes;
+    private final Semaphore buffers;
+
+    // Bytes per permit, so budgets past what a semaphore can count are counted in coarser units
+    private final long unit;
+
+    /**
+     * Creates an {@link UploadBudget}.
+     *
+     * @param maxChunks The maximum amount of chunks uploading at once
+     * @param maxBytes  The maximum amount of bytes of chunks uploading at once. A single chunk larger than half of
+     *                  this is still allowed, but only alongside buffers.
+     */
+    public UploadBudget(int maxChunks, long maxBytes) {
+        this.maxChunks = maxChunks;
+        this.maxBytes = maxBytes;
+        this.unit = Math.max(1, (maxBytes + Integer.MAX_VALUE - 1) / Integer.MAX_VALUE);
+        this.chunks = new Semaphore(maxChunks, true);
+        this.bytes = new Semaphore((int) (maxBytes / unit), true);
+        this.buffers = new Semaphore((int) (maxBytes / unit / 2), true);
+    }
+
+    /**
+     * Blocks until a chunk of the given size may be uploaded.
+     *
+     * @param size The size of the chunk in bytes
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire(int size) throws InterruptedException {
+        chunks.acquire();
+        try {
+            bytes.acquire(getBytePermits(size));
+        } catch (InterruptedException e) {
+            chunks.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the permits of a chunk previously acquired with {@link #acquire(int)}.
+     *
+     * @param size The size of the chunk in bytes
+     */
+    public void release(int size) {
+        bytes.release(getBytePermits(size));
+        chunks.release();
+    }
+
+    /**
+     * Blocks until an upload may hold the given bytes in memory, such as to buffer chunks. A buffer larger than half
+     * of the bytes is still allowed, but only on its own.
+     *
+     * @param size The size of the buffer in bytes
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquireBuffer(long size) throws InterruptedException {
+        int permits = getBufferPermits(size);
+        buffers.acquire(permits);
+        try {
+            bytes.acquire(permits);
+        } catch (InterruptedException e) {
+            buffers.release(permits);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the bytes of a buffer previously acquired with {@link #acquireBuffer(long)}.
+     *
+     * @param size The size of the buffer in bytes
+     */
+    public void releaseBuffer(long size) {
+        int permits = getBufferPermits(size);
+        bytes.release(permits);
+        buffers.release(permits);
+    }
+
+    // Never more than is left once buffers have taken their half, so a chunk is never waiting on a buffer
+    private int getBytePermits(int size) {
+        return (int) (Math.max(0, Math.min(size, maxBytes - maxBytes / 2)) / unit);
+    }
+
+    private int getBufferPermits(long size) {
+        return (int) (Math.max(0, Math.min(size, maxBytes / 2)) / unit);
+    }
+
+    public int getMaxChunks() {
+        return maxChunks;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
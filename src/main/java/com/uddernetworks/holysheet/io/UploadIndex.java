@@ -0,0 +1,270 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.holysheet.Mime;
+import com.uddernetworks.holysheet.SheetManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.uddernetworks.holysheet.utility.Utility.DRIVE_FIELDS;
+import static com.uddernetworks.holysheet.utility.Utility.getPath;
+import static com.uddernetworks.holysheet.utility.Utility.getSize;
+import static com.uddernetworks.holysheet.utility.Utility.isStarred;
+
+/**
+ * A local index of every upload, including packed files, searched in memory. The index is listed once, then kept up
+ * to date by reading Drive's changes since the last sync, so a sync costs a single request when nothing has changed.
+ * Searches never wait on Drive once loaded; a stale index is synced in the background and the current results served.
+ */
+public class UploadIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadIndex.class);
+
+    private static final long SYNC_INTERVAL_MS = 5000;
+    private static final String CHANGE_FIELDS = "nextPageToken, newStartPageToken, changes(fileId, removed, file(" + DRIVE_FIELDS + "))";
+
+    private final SheetManager sheetManager;
+    private final SheetIO sheetIO;
+    private final Drive drive;
+    private final Executor executor;
+
+    // Upload ID to entry, packed files under their entry IDs
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Container ID to the IDs of the files packed in it, so a changed container drops its files without a scan
+    private final Map<String, List<String>> packed = new ConcurrentHashMap<>();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private volatile String changesToken;
+    private volatile long lastSync;
+
+    public UploadIndex(SheetManager sheetManager, SheetIO sheetIO, Drive drive, Executor executor) {
+        this.sheetManager = sheetManager;
+        this.sheetIO = sheetIO;
+        this.drive = drive;
+        this.executor = executor;
+    }
+
+    public enum Sort {
+        NAME(Comparator.comparing(entry -> entry.lowerName)),
+        SIZE(Comparator.comparingLong(entry -> entry.size)),
+        MODIFIED(Comparator.comparingLong(entry -> entry.modified));
+
+        private final Comparator<Entry> comparator;
+
+        Sort(Comparator<Entry> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    /**
+     * Brings the index up to date with Drive, listing every upload on the first sync and only reading changes after.
+     *
+     * @throws IOException If a drive request throws an exception
+     */
+    public synchronized void sync() throws IOException {
+        if (changesToken == null) {
+            load();
+        } else {
+            applyChanges();
+        }
+
+        lastSync = System.currentTimeMillis();
+    }
+
+    public boolean isLoaded() {
+        return changesToken != null;
+    }
+
+    /**
+     * Searches the uploads by name, loading the index first if it never has been.
+     *
+     * @param text       The text the name must contain, ignoring case. Empty to match all names
+     * @param prefix     If the name must start with the text, instead of only contain it
+     * @param path       The path the uploads must be at, or null for any path
+     * @param starred    If only starred uploads should be found
+     * @param trashed    If trashed uploads should be found instead of not trashed ones
+     * @param sort       The order of the results
+     * @param descending If the order should be reversed
+     * @param limit      The maximum amount of results, or -1 for all
+     * @return The matching uploads
+     * @throws IOException If the index had to be loaded and a drive request throws an exception
+     */
+    public List<File> search(String text, boolean prefix, String path, boolean starred, boolean trashed, Sort sort, boolean descending, int limit) throws IOException {
+        if (!isLoaded()) {
+            sync();
+        } else {
+            syncInBackground();
+        }
+
+        var lowerText = text.toLowerCase(Locale.ROOT);
+        var comparator = descending ? sort.comparator.reversed() : sort.comparator;
+
+        return entries.values()
+                .stream()
+                .filter(entry -> entry.trashed == trashed)
+                .filter(entry -> !starred || entry.starred)
+                .filter(entry -> path == null || entry.path.equals(path))
+                .filter(entry -> prefix ? entry.lowerName.startsWith(lowerText) : entry.lowerName.contains(lowerText))
+                .sorted(comparator.thenComparing(entry -> entry.file.getId()))
+                .limit(limit < 0 ? Long.MAX_VALUE : limit)
+                .map(entry -> entry.file)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds the ID of a non-trashed upload by name from the index as of its last sync. An exact name is preferred,
+     * followed by a name starting with, then containing the given name.
+     *
+     * @param name The name to match
+     * @return {@link Optional} wrapping the {@link String} id
+     */
+    public Optional<String> findId(String name) {
+        var lowerName = name.toLowerCase(Locale.ROOT);
+        return entries.values()
+                .stream()
+                .filter(entry -> !entry.trashed && entry.lowerName.contains(lowerName))
+                .min(Comparator.<Entry>comparingInt(entry -> entry.file.getName().equals(name) ? 0 : entry.lowerName.startsWith(lowerName) ? 1 : 2)
+                        .thenComparing(entry -> entry.file.getId()))
+                .map(entry -> entry.file.getId());
+    }
+
+    private void syncInBackground() {
+        if (System.currentTimeMillis() - lastSync < SYNC_INTERVAL_MS || !syncing.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                sync();
+            } catch (IOException e) {
+                LOGGER.error("An error occurred while syncing the upload index", e);
+            } finally {
+                syncing.set(false);
+            }
+        });
+    }
+
+    private void load() throws IOException {
+        // Taken before listing, so anything changed while listing is seen by the next sync
+        var token = drive.changes().getStartPageToken().execute().getStartPageToken();
+
+        entries.clear();
+        packed.clear();
+        for (var file : sheetManager.getFiles(-1, "properties has { key='directParent' and value='true' }", Mime.FOLDER)) {
+            put(file);
+        }
+
+        for (var container : sheetManager.getFiles(-1, "properties has { key='container' and value='true' } and properties has { key='processing' and value='false' }", Mime.FOLDER)) {
+            putPacked(container);
+        }
+
+        changesToken = token;
+        LOGGER.info("Indexed {} uploads", entries.size());
+    }
+
+    private void applyChanges() throws IOException {
+        var pageToken = changesToken;
+        int applied = 0;
+        while (pageToken != null) {
+            var result = drive.changes().list(pageToken)
+                    .setSpaces("drive")
+                    .setIncludeRemoved(true)
+                    .setPageSize(1000)
+                    .setFields(CHANGE_FIELDS)
+                    .execute();
+
+            if (result.getChanges() != null) {
+                for (var change : result.getChanges()) {
+                    apply(change);
+                    applied++;
+                }
+            }
+
+            if (result.getNewStartPageToken() != null) {
+                changesToken = result.getNewStartPageToken();
+            }
+
+            pageToken = result.getNextPageToken();
+        }
+
+        if (applied > 0) {
+            LOGGER.debug("Applied {} changes to the upload index", applied);
+        }
+    }
+
+    private void apply(Change change) throws IOException {
+        var id = change.getFileId();
+        entries.remove(id);
+        removePacked(id);
+
+        var file = change.getFile();
+        if (Boolean.TRUE.equals(change.getRemoved()) || file == null || file.getProperties() == null) {
+            return;
+        }
+
+        var properties = file.getProperties();
+        if ("true".equals(properties.get("directParent"))) {
+            put(file);
+        } else if ("true".equals(properties.get("container")) && "false".equals(properties.get("processing"))) {
+            putPacked(file);
+        }
+    }
+
+    private void put(File file) {
+        entries.put(file.getId(), new Entry(file));
+    }
+
+    private void putPacked(File container) throws IOException {
+        var ids = new ArrayList<String>();
+        for (var file : sheetIO.listPacked(container)) {
+            put(file);
+            ids.add(file.getId());
+        }
+
+        packed.put(container.getId(), ids);
+    }
+
+    private void removePacked(String containerId) {
+        var ids = packed.remove(containerId);
+        if (ids != null) {
+            ids.forEach(entries::remove);
+        }
+    }
+
+    /**
+     * An indexed upload, with its searched fields parsed once.
+     */
+    private static class Entry {
+        private final File file;
+        private final String lowerName;
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final boolean starred;
+        private final boolean trashed;
+
+        private Entry(File file) {
+            this.file = file;
+            this.lowerName = file.getName().toLowerCase(Locale.ROOT);
+            this.path = getPath(file);
+            this.size = getSize(file);
+            this.modified = file.getModifiedTime() == null ? 0 : file.getModifiedTime().getValue();
+            this.starred = isStarred(file);
+            this.trashed = Boolean.TRUE.equals(file.getTrashed());
+        }
+    }
+}
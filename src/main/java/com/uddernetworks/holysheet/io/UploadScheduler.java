@@ -0,0 +1,147 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Compression;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.uddernetworks.holysheet.utility.Utility.humanReadableByteCountSI;
+
+/**
+ * Uploads several local files at once through {@link SheetIO#uploadDataFile}, with all chunks going through a shared
+ * {@link UploadBudget}. Aggregate progress and throughput is logged periodically until {@link #awaitCompletion()}.
+ */
+public class UploadScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadScheduler.class);
+
+    private static final int REPORT_SECONDS = 5;
+
+    private final SheetIO sheetIO;
+    private final UploadBudget budget;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService reporter;
+    private final CancellationToken cancellation = new CancellationToken();
+
+    private final List<CompletableFuture<File>> jobs = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Long> uploadedBytes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private final long start = System.currentTimeMillis();
+    private long lastReportBytes;
+    private long lastReportTime = start;
+
+    /**
+     * Creates an {@link UploadScheduler}, with the given {@link UploadBudget} only applying to its own uploads.
+     *
+     * @param sheetIO The {@link SheetIO} to upload with
+     * @param jobs    The amount of files to upload at once
+     * @param budget  The budget of chunks and bytes uploading at once across all files
+     */
+    public UploadScheduler(SheetIO sheetIO, int jobs, UploadBudget budget) {
+        this.sheetIO = sheetIO;
+        this.budget = budget;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+        this.reporter = Executors.newSingleThreadScheduledExecutor();
+
+        reporter.scheduleAtFixedRate(this::report, REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues a local file to be uploaded.
+     *
+     * @param file         The local file
+     * @param path         The remote path to upload to
+     * @param maxSheetSize The maximum size in bytes of a sheet
+     * @param compress     The {@link Compression} to use
+     * @param uploadType   The {@link Upload} type to use
+     * @return A {@link CompletableFuture} of the uploaded parent
+     */
+    public CompletableFuture<File> submit(java.io.File file, String path, long maxSheetSize, Compression compress, Upload uploadType) {
+        var id = submitted.getAndIncrement();
+        var size = file.length();
+        totalBytes.addAndGet(size);
+        uploadedBytes.put(id, 0L);
+
+        var job = CompletableFuture.supplyAsync(() -> {
+            var name = FilenameUtils.getName(file.getAbsolutePath());
+
+            try (var in = new FileInputStream(file)) {
+                return sheetIO.uploadDataFile(name, path, size, maxSheetSize, compress, uploadType, in,
+                        ProgressTracker.of(percentage -> uploadedBytes.put(id, (long) (percentage * size))), budget, cancellation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor).whenComplete(($, t) -> {
+            uploadedBytes.put(id, size);
+            completed.incrementAndGet();
+        });
+
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Cancels all submitted uploads, trashing what they've uploaded so far. Uploads not yet started fail right away.
+     */
+    public void cancel() {
+        cancellation.cancel();
+    }
+
+    /**
+     * Waits for all submitted uploads to finish, whether successfully or not, and stops the scheduler.
+     */
+    public void awaitCompletion() {
+        try {
+            CompletableFuture.allOf(jobs.toArray(CompletableFuture[]::new)).exceptionally($ -> null).join();
+        } finally {
+            reporter.shutdownNow();
+            executor.shutdown();
+        }
+
+        long duration = System.currentTimeMillis() - start;
+        LOGGER.info("Uploaded {} file{} totalling {} in {}ms at an average of {}/s",
+                jobs.size(),
+                jobs.size() == 1 ? "" : "s",
+                humanReadableByteCountSI(totalBytes.get()),
+                duration,
+                humanReadableByteCountSI((long) (totalBytes.get() / Math.max(duration / 1000D, 0.001))));
+    }
+
+    private synchronized void report() {
+        long now = System.currentTimeMillis();
+        long uploaded = uploadedBytes.values().stream().mapToLong(Long::longValue).sum();
+        long total = totalBytes.get();
+
+        long rate = (long) ((uploaded - lastReportBytes) / Math.max((now - lastReportTime) / 1000D, 0.001));
+        lastReportBytes = uploaded;
+        lastReportTime = now;
+
+        LOGGER.info("Uploaded {}/{} files, {}/{} ({}%) at {}/s",
+                completed.get(),
+                jobs.size(),
+                humanReadableByteCountSI(uploaded),
+                humanReadableByteCountSI(total),
+                total == 0 ? 100 : (int) (uploaded * 100 / total),
+                humanReadableByteCountSI(rate));
+    }
+}
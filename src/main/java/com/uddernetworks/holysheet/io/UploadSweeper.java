@@ -0,0 +1,210 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.holysheet.Mime;
+import com.uddernetworks.holysheet.SheetManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleans up uploads left processing by a crash or exit, which otherwise keep their parent and partial chunks forever.
+ * An upload is stale once neither its parent nor any of its sheets have been modified for the grace period, so uploads
+ * still running in another process are left alone. Sheets of striped uploads are looked for in every account of the
+ * {@link StripePool}, and striped uploads are skipped without one, as it can't be told if they're still running. Stale uploads that got far enough to record how to finish (See
+ * {@link SheetIO#resumeUpload(File)}) are finished, and the rest are trashed in batches, as the data they were reading
+ * from is gone.
+ *
+ * Sweeping is throttled to a request at a time with pauses between, and yields to any transfer in this process,
+ * stopping early to be picked up again by the next sweep.
+ */
+public class UploadSweeper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadSweeper.class);
+
+    public static final long DEFAULT_GRACE_MS = TimeUnit.HOURS.toMillis(6);
+    public static final long DEFAULT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(30);
+
+    // Drive allows up to 100 requests in a batch
+    private static final int BATCH_SIZE = 50;
+    private static final long PAUSE_MS = 1000;
+
+    private static final String FIELDS = "id, name, mimeType, modifiedTime, properties";
+
+    private final SheetManager sheetManager;
+    private final SheetIO sheetIO;
+    private final Drive drive;
+    private final long graceMs;
+
+    // Guarded by this
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates an {@link UploadSweeper}, which does nothing until swept or started.
+     *
+     * @param sheetManager The {@link SheetManager} of the account to sweep
+     * @param drive        The {@link Drive} of the account
+     * @param graceMs      The milliseconds an upload may go unmodified before it's stale
+     */
+    public UploadSweeper(SheetManager sheetManager, Drive drive, long graceMs) {
+        this.sheetManager = sheetManager;
+        this.sheetIO = sheetManager.getSheetIO();
+        this.drive = drive;
+        this.graceMs = graceMs;
+    }
+
+    /**
+     * Starts sweeping in the background, the first sweep after a single interval. Starting an already started sweeper
+     * does nothing.
+     *
+     * @param intervalMs The milliseconds between the end of a sweep and the start of the next
+     */
+    public synchronized void start(long intervalMs) {
+        if (scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "holysheet-upload-sweeper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Couldn't sweep stale uploads", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sweeping in the background, interrupting a sweep in progress.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Sweeps stale uploads once.
+     *
+     * @return The amount of uploads resumed or trashed
+     * @throws IOException If a drive request throws an exception
+     */
+    public int sweep() throws IOException {
+        if (SheetIO.isTransferring()) {
+            LOGGER.debug("Transfers in progress, skipping sweep");
+            return 0;
+        }
+
+        long cutoff = System.currentTimeMillis() - graceMs;
+        var candidates = sheetManager.getFiles(-1, "properties has { key='directParent' and value='true' } and properties has { key='processing' and value='true' } and trashed = false and modifiedTime < '" + new DateTime(cutoff).toStringRfc3339() + "'", FIELDS, Mime.FOLDER);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        LOGGER.info("Found {} uploads processing since before the grace period", candidates.size());
+
+        int resumed = 0;
+        int trashed = 0;
+        boolean stopped = false;
+        var stale = new ArrayList<File>();
+        for (var parent : candidates) {
+            if (!pause()) {
+                stopped = true;
+                break;
+            }
+
+            if (isStriped(parent) && sheetIO.getStripePool() == null) {
+                LOGGER.warn("Skipping stale upload {} ({}), its chunks are striped across accounts that aren't set up", parent.getName(), parent.getId());
+                continue;
+            }
+
+            // A sheet written recently means the upload may still be running elsewhere
+            if (getLastModified(parent) >= cutoff) {
+                continue;
+            }
+
+            if (sheetIO.resumeUpload(parent)) {
+                resumed++;
+                continue;
+            }
+
+            stale.add(parent);
+            if (stale.size() >= BATCH_SIZE) {
+                trashed += sheetIO.trashStale(stale);
+                stale.clear();
+            }
+        }
+
+        if (!stale.isEmpty() && !stopped) {
+            trashed += sheetIO.trashStale(stale);
+        }
+
+        LOGGER.info("Swept stale uploads, resumed {} and trashed {}", resumed, trashed);
+        return resumed + trashed;
+    }
+
+    /**
+     * Gets when a parent or its most recent sheet was last modified, including sheets striped to other accounts.
+     */
+    private long getLastModified(File parent) throws IOException {
+        long modified = parent.getModifiedTime() == null ? 0 : parent.getModifiedTime().getValue();
+
+        List<File> newest = drive.files().list()
+                .setQ("'" + parent.getId() + "' in parents and trashed = false")
+                .setOrderBy("modifiedTime desc")
+                .setPageSize(1)
+                .setFields("files(modifiedTime)")
+                .execute()
+                .getFiles();
+
+        if (newest != null && !newest.isEmpty() && newest.get(0).getModifiedTime() != null) {
+            modified = Math.max(modified, newest.get(0).getModifiedTime().getValue());
+        }
+
+        if (isStriped(parent)) {
+            modified = Math.max(modified, sheetIO.getStripesLastModified(parent));
+        }
+
+        return modified;
+    }
+
+    private static boolean isStriped(File parent) {
+        return parent.getProperties() != null && "true".equals(parent.getProperties().get("striped"));
+    }
+
+    /**
+     * Waits between requests, so the sweep never competes with a transfer for the account's quota.
+     *
+     * @return If the sweep should continue, being false once a transfer has started or the sweeper was stopped
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(PAUSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (SheetIO.isTransferring()) {
+            LOGGER.info("Transfer started, leaving the rest of the stale uploads to the next sweep");
+            return false;
+        }
+
+        return true;
+    }
+}
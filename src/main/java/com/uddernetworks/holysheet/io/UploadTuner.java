@@ -0,0 +1,122 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.uddernetworks.holysheet.utility.Utility.humanReadableByteCountSI;
+
+/**
+ * Sizes uploads to the link they're made over, from the throughput and latency measured of past upload requests.
+ * Resumable upload requests are sized to take a few seconds each, so a slow link makes smaller requests that are
+ * cheaper to retry while a fast link makes fewer, larger ones. Sheets are likewise sized to take a bounded time to
+ * upload, never above the size asked for. A failed request halves the measured throughput, shrinking what's sent next.
+ *
+ * The link is shared by everything uploading in this process, so a single tuner is shared by default.
+ */
+public class UploadTuner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadTuner.class);
+
+    private static final int MIN_CHUNK_SIZE = MediaHttpUploader.MINIMUM_CHUNK_SIZE; // 256KB, chunks must be a multiple
+    private static final int MAX_CHUNK_SIZE = 128 * MIN_CHUNK_SIZE; // 32MB
+    private static final long MIN_SHEET_SIZE = 1000000; // 1MB
+
+    private static final double REQUEST_SECONDS = 8;
+    private static final double SHEET_SECONDS = 30;
+    private static final double LATENCY_OVERHEAD = 0.1; // A request should spend at most this much of its time waiting
+    private static final double SMOOTHING = 0.3;
+
+    private static final UploadTuner DEFAULT = new UploadTuner();
+
+    // Exponentially weighted averages, 0 until measured
+    private double throughput; // Bytes per second
+    private double latency; // Milliseconds
+    private int chunkSize = MediaHttpUploader.DEFAULT_CHUNK_SIZE;
+
+    public static UploadTuner getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records the bytes sent by a single request.
+     *
+     * @param bytes      The amount of bytes sent
+     * @param durationMs The milliseconds the request took
+     */
+    public synchronized void onTransfer(long bytes, long durationMs) {
+        if (bytes <= 0 || durationMs <= 0) {
+            return;
+        }
+
+        throughput = smooth(throughput, bytes * 1000D / durationMs);
+        resize();
+    }
+
+    /**
+     * Records the time taken by a request sending no data, such as starting a resumable upload.
+     *
+     * @param durationMs The milliseconds the request took
+     */
+    public synchronized void onLatency(long durationMs) {
+        latency = smooth(latency, durationMs);
+        resize();
+    }
+
+    /**
+     * Records a failed request, halving the measured throughput.
+     */
+    public synchronized void onFailure() {
+        if (throughput > 0) {
+            throughput /= 2;
+        }
+
+        chunkSize = Math.max(MIN_CHUNK_SIZE, roundChunkSize(chunkSize / 2));
+        LOGGER.info("Upload failed, lowering upload request size to {}", humanReadableByteCountSI(chunkSize));
+    }
+
+    /**
+     * @return The size in bytes of each request of a resumable upload, a multiple of 256KB
+     */
+    public synchronized int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Gets the size of sheets to upload at, taking a bounded time to upload each.
+     *
+     * @param maxSheetSize The largest size in bytes a sheet may be
+     * @return The size in bytes of each sheet, or the maximum if nothing has been measured yet
+     */
+    public synchronized long getSheetSize(long maxSheetSize) {
+        if (throughput == 0) {
+            return maxSheetSize;
+        }
+
+        return Math.min(maxSheetSize, Math.max(MIN_SHEET_SIZE, (long) (throughput * SHEET_SECONDS)));
+    }
+
+    private void resize() {
+        if (throughput == 0) {
+            return;
+        }
+
+        // Requests must be long enough that waiting on the server is only a small part of them
+        double seconds = Math.max(REQUEST_SECONDS, latency / 1000D / LATENCY_OVERHEAD);
+        var size = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, throughput * seconds));
+        size = roundChunkSize(size);
+
+        if (size != chunkSize) {
+            LOGGER.debug("Measured {}/s with {}ms latency, upload request size now {}", humanReadableByteCountSI((long) throughput), (long) latency, humanReadableByteCountSI(size));
+            chunkSize = size;
+        }
+    }
+
+    private static int roundChunkSize(int size) {
+        return Math.max(MIN_CHUNK_SIZE, size / MIN_CHUNK_SIZE * MIN_CHUNK_SIZE);
+    }
+
+    private static double smooth(double average, double sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
@@ -28,31 +28,52 @@ import jdk.jshell.execution.DirectExecutionControl;
 import jdk.jshell.execution.LoaderDelegate;
 import jdk.jshell.spi.SPIResolutionException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * An implementation of {@link jdk.jshell.spi.ExecutionControl} which executes
  * in the same JVM as the JShell-core.
+ * <p>
+ * Snippets run on pooled daemon threads, so running many snippets doesn't
+ * start a thread for each, and are stopped by interrupting their thread.
+ * The static fields of each snippet's class are read through
+ * {@link MethodHandle}s, looked up once per class.
  *
  * @author Grigory Ptashko
  * @since 9
  */
 public class GsonExecutionControl extends DirectExecutionControl {
 
-    private final Map<Class<?>, List<Field>> classFields = new ConcurrentHashMap<>();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // Idle threads are reused, while a snippet ignoring its interrupt keeps its thread without blocking the next
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "holysheet-jshell-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Class<?>, List<FieldAccessor>> classFields = new ConcurrentHashMap<>();
 
     private final Object STOP_LOCK = new Object();
     private boolean userCodeRunning = false;
-    private ThreadGroup execThreadGroup;
+    private Future<?> running;
 
     /**
      * Creates an instance, delegating loader operations to the specified
@@ -77,8 +98,6 @@ public class GsonExecutionControl extends DirectExecutionControl {
             Class<?> klass = findClass(className);
             doitMethod = klass.getDeclaredMethod(methodName, new Class<?>[0]);
             doitMethod.setAccessible(true);
-
-            classFields.putIfAbsent(klass, Collections.synchronizedList(new ArrayList<>()));
         } catch (Throwable ex) {
             throw new InternalException(ex.toString());
         }
@@ -103,93 +122,80 @@ public class GsonExecutionControl extends DirectExecutionControl {
 
     @Override
     protected String invoke(Method doitMethod) throws Exception {
-        execThreadGroup = new ThreadGroup("JShell process local execution");
-
-        AtomicReference<InvocationTargetException> iteEx = new AtomicReference<>();
-        AtomicReference<IllegalAccessException> iaeEx = new AtomicReference<>();
-        AtomicReference<NoSuchMethodException> nmeEx = new AtomicReference<>();
-        AtomicReference<Boolean> stopped = new AtomicReference<>(false);
-
-        Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
-            if (e instanceof InvocationTargetException) {
-                if (e.getCause() instanceof ThreadDeath) {
-                    stopped.set(true);
-                } else {
-                    iteEx.set((InvocationTargetException) e);
-                }
-            } else if (e instanceof IllegalAccessException) {
-                iaeEx.set((IllegalAccessException) e);
-            } else if (e instanceof NoSuchMethodException) {
-                nmeEx.set((NoSuchMethodException) e);
-            } else if (e instanceof ThreadDeath) {
-                stopped.set(true);
-            }
-        });
+        Future<?> snippet;
+        synchronized (STOP_LOCK) {
+            snippet = running = executor.submit(() -> {
+                doitMethod.invoke(null, new Object[0]);
+                return null;
+            });
+        }
 
-        final Object[] res = new Object[1];
-        Thread snippetThread = new Thread(execThreadGroup, () -> {
-            try {
-                var declaring = doitMethod.getDeclaringClass();
-
-                res[0] = doitMethod.invoke(null, new Object[0]);
-
-                for (Field declaredField : declaring.getDeclaredFields()) {
-                    declaredField.setAccessible(true);
-                    classFields.get(declaring).add(declaredField);
-                }
-            } catch (InvocationTargetException e) {
-                if (e.getCause() instanceof ThreadDeath) {
-                    stopped.set(true);
-                } else {
-                    iteEx.set(e);
-                }
-            } catch (IllegalAccessException e) {
-                iaeEx.set(e);
-            } catch (ThreadDeath e) {
-                stopped.set(true);
+        try {
+            snippet.get();
+        } catch (CancellationException e) {
+            throw new StoppedException();
+        } catch (InterruptedException e) {
+            snippet.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new StoppedException();
+        } catch (ExecutionException e) {
+            // The snippet's own exceptions are wrapped in an InvocationTargetException, converted by the caller
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
-        });
-
-        snippetThread.start();
-        Thread[] threadList = new Thread[execThreadGroup.activeCount()];
-        execThreadGroup.enumerate(threadList);
-        for (Thread thread : threadList) {
-            if (thread != null) {
-                thread.join();
+
+            throw new InvocationTargetException(e.getCause());
+        } finally {
+            synchronized (STOP_LOCK) {
+                running = null;
             }
         }
 
-        if (stopped.get()) {
-            throw new StoppedException();
-        }
+        classFields.computeIfAbsent(doitMethod.getDeclaringClass(), GsonExecutionControl::findFields);
+        return "";
+    }
+
+    /**
+     * Looks up the static fields of a snippet's class, the variables it declares.
+     */
+    private static List<FieldAccessor> findFields(Class<?> klass) {
+        var lookup = MethodHandles.lookup();
+        var accessors = new ArrayList<FieldAccessor>();
+        for (Field declaredField : klass.getDeclaredFields()) {
+            if (!Modifier.isStatic(declaredField.getModifiers())) {
+                continue;
+            }
 
-        if (iteEx.get() != null) {
-            throw iteEx.get();
-        } else if (nmeEx.get() != null) {
-            throw nmeEx.get();
-        } else if (iaeEx.get() != null) {
-            throw iaeEx.get();
+            try {
+                declaredField.setAccessible(true);
+                accessors.add(new FieldAccessor(declaredField, lookup.unreflectGetter(declaredField)));
+            } catch (IllegalAccessException | RuntimeException ignored) {
+                // Fields that can't be made accessible can't be read either way
+            }
         }
 
-        return "";
+        return List.copyOf(accessors);
     }
 
     public List<Field> getFields() {
-        return classFields.entrySet().stream().flatMap(entry -> entry.getValue().stream()).collect(Collectors.toUnmodifiableList());
+        return getAccessors().stream().map(FieldAccessor::getField).collect(Collectors.toUnmodifiableList());
+    }
+
+    public List<FieldAccessor> getAccessors() {
+        return classFields.values().stream().flatMap(List::stream).collect(Collectors.toUnmodifiableList());
     }
 
     @Override
-    @SuppressWarnings("deprecation")
     public void stop() throws InternalException {
         synchronized (STOP_LOCK) {
             if (!userCodeRunning) {
                 return;
             }
-            if (execThreadGroup == null) {
-                throw new InternalException("Process-local code snippets thread group is null. Aborting stop.");
+            if (running == null) {
+                throw new InternalException("No process-local code snippet is running. Aborting stop.");
             }
 
-            execThreadGroup.stop();
+            running.cancel(true);
         }
     }
 
@@ -207,4 +213,36 @@ public class GsonExecutionControl extends DirectExecutionControl {
         }
     }
 
+    /**
+     * A static field of a snippet's class, read through a {@link MethodHandle}.
+     */
+    public static class FieldAccessor {
+        private final Field field;
+        private final MethodHandle getter;
+
+        FieldAccessor(Field field, MethodHandle getter) {
+            this.field = field;
+            this.getter = getter;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getName() {
+            return field.getName();
+        }
+
+        /**
+         * @return The current value of the field
+         */
+        public Object get() {
+            try {
+                return getter.invoke();
+            } catch (Throwable t) {
+                throw new IllegalStateException("Couldn't read " + field.getName(), t);
+            }
+        }
+    }
+
 }
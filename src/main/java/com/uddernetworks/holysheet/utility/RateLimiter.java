@@ -0,0 +1,114 @@
+package com.uddernetworks.holysheet.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A token bucket shared by every request of a user, which adapts its rate to stay just under quota. The rate is
+ * increased additively with every successful request and halved when rate limited (At most once per second, so a
+ * burst of rejected requests counts once), while all requests wait out any Retry-After given.
+ */
+public class RateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final double INITIAL_RATE = 10; // Drive's default quota is 1000 requests per 100 seconds
+    private static final double MIN_RATE = 0.5;
+    private static final double MAX_RATE = 50;
+    private static final double ADDITIVE_INCREASE = 0.5;
+    private static final double MULTIPLICATIVE_DECREASE = 0.5;
+    private static final long DECREASE_INTERVAL_MS = 1000;
+    private static final long DEFAULT_COOLDOWN_MS = 1000;
+    private static final long MAX_JITTER_MS = 500;
+
+    private static final int MAX_USERS = 1000;
+    private static final Map<String, RateLimiter> USERS = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RateLimiter> eldest) {
+            return size() > MAX_USERS;
+        }
+    });
+
+    private double rate = INITIAL_RATE;
+    private double tokens = 1;
+    private long lastRefill = System.nanoTime();
+    private long lastDecrease;
+    private long blockedUntil;
+
+    /**
+     * Gets the {@link RateLimiter} of a user, as quota is counted per user.
+     *
+     * @param user A key unique to the user
+     * @return The user's {@link RateLimiter}
+     */
+    public static RateLimiter forUser(String user) {
+        return USERS.computeIfAbsent(user, $ -> new RateLimiter());
+    }
+
+    /**
+     * Blocks until a request may be made.
+     */
+    public void acquire() {
+        long waitMs;
+        while ((waitMs = reserve()) > 0) {
+            Utility.sleep(waitMs);
+        }
+    }
+
+    /**
+     * Takes a token if one is available, otherwise returns how long to wait before trying again.
+     *
+     * @return 0 if a token was taken, otherwise the milliseconds to wait
+     */
+    private synchronized long reserve() {
+        long now = System.currentTimeMillis();
+        if (now < blockedUntil) {
+            // Spread out requests waiting on the same cooldown
+            return blockedUntil - now + ThreadLocalRandom.current().nextLong(MAX_JITTER_MS);
+        }
+
+        long nanos = System.nanoTime();
+        tokens = Math.min(Math.max(1, rate), tokens + (nanos - lastRefill) / 1_000_000_000D * rate);
+        lastRefill = nanos;
+
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+
+        return (long) Math.ceil((1 - tokens) / rate * 1000);
+    }
+
+    /**
+     * Invoked when a request succeeds, additively increasing the rate.
+     */
+    public synchronized void onSuccess() {
+        rate = Math.min(MAX_RATE, rate + ADDITIVE_INCREASE / rate);
+    }
+
+    /**
+     * Invoked when a request has been rate limited, halving the rate and pausing all requests.
+     *
+     * @param retryAfterMs The milliseconds the server asked to wait, or -1 if none were given
+     */
+    public synchronized void onRateLimited(long retryAfterMs) {
+        long now = System.currentTimeMillis();
+        if (now - lastDecrease >= DECREASE_INTERVAL_MS) {
+            lastDecrease = now;
+            rate = Math.max(MIN_RATE, rate * MULTIPLICATIVE_DECREASE);
+            tokens = Math.min(tokens, 0);
+            LOGGER.warn("Rate limited, lowering rate to {} requests/s", Utility.round(rate, 2));
+        }
+
+        blockedUntil = Math.max(blockedUntil, now + (retryAfterMs >= 0 ? retryAfterMs : DEFAULT_COOLDOWN_MS));
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+}
@@ -131,4 +131,36 @@ public class Utility {
         } catch (InterruptedException ignored) {
         }
     }
+
+    public static int getSheetCount(com.google.api.services.drive.model.File file) {
+        var string = file.getProperties().get("sheets");
+        if (!StringUtils.isNumeric(string)) {
+            return 0;
+        }
+
+        return Integer.parseInt(string);
+    }
+
+    public static String getPath(com.google.api.services.drive.model.File file) {
+        var path = file.getProperties().get("path");
+        if (path == null) {
+            return "";
+        }
+
+        return path;
+    }
+
+    public static boolean isStarred(com.google.api.services.drive.model.File file) {
+        var string = file.getProperties().get("starred");
+        return string != null && string.equals("true");
+    }
+
+    public static long getSize(com.google.api.services.drive.model.File file) {
+        var string = file.getProperties().get("size");
+        if (!StringUtils.isNumeric(string)) {
+            return 0;
+        }
+
+        return Long.parseLong(string);
+    }
 }
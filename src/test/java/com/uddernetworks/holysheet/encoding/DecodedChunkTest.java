@@ -0,0 +1,103 @@
+package com.uddernetworks.holysheet.encoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecodedChunkTest {
+
+    @Test
+    void joinsChunksSplitMidByte() throws IOException {
+        var data = randomBytes(300_000);
+        var chunks = encode(data);
+
+        assertTrue(chunks.size() > 2, "Expected the data to span several chunks");
+        assertTrue(chunks.stream().anyMatch(chunk -> chunk.bitOffset % 8 != 0), "Expected a chunk to start mid-byte");
+
+        assertArrayEquals(data, decode(chunks, data.length));
+    }
+
+    @Test
+    void joinsChunksOfAnyLength() throws IOException {
+        for (int length : new int[]{100_000, 100_001, 100_002, 100_007}) {
+            var data = randomBytes(length);
+            assertArrayEquals(data, decode(encode(data), length), "Length " + length);
+        }
+    }
+
+    @Test
+    void decodesAChunkOnItsOwn() throws IOException {
+        var data = randomBytes(300_000);
+        var chunks = encode(data);
+
+        // A chunk in the middle, without the byte shared with the chunk before it or the one after
+        var chunk = chunks.get(1);
+        var decoded = DecodedChunk.decode(chunk.encoded, chunk.bitOffset, false);
+        int start = decoded.getHeadBits() > 0 ? 1 : 0;
+        int position = (int) decoded.getPosition();
+
+        assertEquals(chunk.bitOffset / 8, decoded.getPosition());
+        assertArrayEquals(Arrays.copyOfRange(data, position + start, position + decoded.getBytes().length),
+                Arrays.copyOfRange(decoded.getBytes(), start, decoded.getBytes().length));
+    }
+
+    /**
+     * Decodes each chunk on its own, last first, joining the bytes shared between neighbouring chunks.
+     */
+    private static byte[] decode(List<Chunk> chunks, int length) {
+        var joined = new byte[length + 1];
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            var chunk = chunks.get(i);
+            var decoded = DecodedChunk.decode(chunk.encoded, chunk.bitOffset, i == chunks.size() - 1);
+
+            var bytes = decoded.getBytes();
+            int position = (int) decoded.getPosition();
+            for (int j = 0; j < bytes.length && position + j < joined.length; j++) {
+                joined[position + j] |= bytes[j];
+            }
+
+            if (decoded.getTailBits() > 0) {
+                joined[position + bytes.length] |= decoded.getTail();
+            }
+        }
+
+        return Arrays.copyOf(joined, length);
+    }
+
+    private static List<Chunk> encode(byte[] data) throws IOException {
+        var chunks = new ArrayList<Chunk>();
+
+        // Ends a chunk at every line, so chunks are a line long
+        var out = new EncodingOutputStream(1);
+        out.setChunkConsumer(($, encoded) -> chunks.add(new Chunk(encoded, out.getChunkBitOffset())));
+        out.write(data, 0, data.length);
+        out.flush();
+
+        return chunks;
+    }
+
+    private static byte[] randomBytes(int length) {
+        var bytes = new byte[length];
+        new Random(27).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class Chunk {
+        private final byte[] encoded;
+        private final long bitOffset;
+
+        private Chunk(byte[] encoded, long bitOffset) {
+            this.encoded = encoded;
+            this.bitOffset = bitOffset;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.uddernetworks.holysheet.encoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReedSolomonTest {
+
+    private static final int LENGTH = 64;
+
+    @Test
+    void rebuildsEveryErasureOfOneParityShard() {
+        assertRebuildsEveryErasure(4, 1);
+    }
+
+    @Test
+    void rebuildsEveryErasureOfTwoParityShards() {
+        assertRebuildsEveryErasure(4, 2);
+    }
+
+    @Test
+    void rebuildsEveryErasureOfTheDefaultGroup() {
+        assertRebuildsEveryErasure(8, 2);
+    }
+
+    @Test
+    void rebuildsEveryErasureOfManyParityShards() {
+        assertRebuildsEveryErasure(6, 5);
+    }
+
+    @Test
+    void leavesPresentShardsAlone() {
+        var code = new ReedSolomon(3, 2);
+        var data = randomShards(3, 1);
+        var shards = withParity(code, data);
+
+        code.reconstruct(shards, LENGTH);
+
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(data[i], shards[i]);
+        }
+    }
+
+    @Test
+    void refusesTooManyErasures() {
+        var code = new ReedSolomon(4, 2);
+        var shards = withParity(code, randomShards(4, 2));
+        shards[0] = null;
+        shards[2] = null;
+        shards[5] = null;
+
+        assertThrows(IllegalArgumentException.class, () -> code.reconstruct(shards, LENGTH));
+    }
+
+    /**
+     * Erases every combination of shards up to the amount of parity shards, checking the data shards are rebuilt.
+     */
+    private static void assertRebuildsEveryErasure(int dataShards, int parityShards) {
+        var code = new ReedSolomon(dataShards, parityShards);
+        var data = randomShards(dataShards, dataShards * 31 + parityShards);
+        var encoded = withParity(code, data);
+
+        int total = dataShards + parityShards;
+        for (int erased = 1; erased < 1 << total; erased++) {
+            if (Integer.bitCount(erased) > parityShards) {
+                continue;
+            }
+
+            var shards = encoded.clone();
+            for (int i = 0; i < total; i++) {
+                if ((erased & 1 << i) != 0) {
+                    shards[i] = null;
+                }
+            }
+
+            code.reconstruct(shards, LENGTH);
+
+            for (int i = 0; i < dataShards; i++) {
+                assertArrayEquals(data[i], shards[i], "Shard " + i + " with erasures " + Integer.toBinaryString(erased));
+            }
+        }
+    }
+
+    private static byte[][] withParity(ReedSolomon code, byte[][] data) {
+        var parity = code.encode(data, LENGTH);
+        var shards = new byte[data.length + parity.length][];
+        for (int i = 0; i < data.length; i++) {
+            shards[i] = data[i].clone();
+        }
+
+        System.arraycopy(parity, 0, shards, data.length, parity.length);
+        return shards;
+    }
+
+    private static byte[][] randomShards(int count, long seed) {
+        var random = new Random(seed);
+        var shards = new byte[count][LENGTH];
+        for (var shard : shards) {
+            random.nextBytes(shard);
+        }
+
+        return shards;
+    }
+}
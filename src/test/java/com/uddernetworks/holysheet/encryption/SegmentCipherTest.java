@@ -0,0 +1,156 @@
+package com.uddernetworks.holysheet.encryption;
+
+import com.uddernetworks.holysheet.io.ByteSink;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.uddernetworks.holysheet.encryption.SegmentCipher.SEALED_SEGMENT_SIZE;
+import static com.uddernetworks.holysheet.encryption.SegmentCipher.SEGMENT_SIZE;
+import static com.uddernetworks.holysheet.encryption.SegmentCipher.TAG_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentCipherTest {
+
+    @Test
+    void roundTripsEmptyData() throws IOException {
+        var cipher = createCipher();
+        var sealed = encrypt(cipher, new byte[0]);
+
+        assertEquals(TAG_SIZE, sealed.length);
+        assertEquals(SegmentCipher.getSealedSize(0), sealed.length);
+        assertArrayEquals(new byte[0], decrypt(cipher, sealed, sealed.length));
+    }
+
+    @Test
+    void roundTripsDataEndingOnASegment() throws IOException {
+        var cipher = createCipher();
+        var plain = randomBytes(SEGMENT_SIZE * 2);
+        var sealed = encrypt(cipher, plain);
+
+        assertEquals(SEALED_SEGMENT_SIZE * 2, sealed.length);
+        assertEquals(SegmentCipher.getSealedSize(plain.length), sealed.length);
+        assertArrayEquals(plain, decrypt(cipher, sealed, sealed.length));
+    }
+
+    @Test
+    void roundTripsDataEndingABytePastASegment() throws IOException {
+        var cipher = createCipher();
+        var plain = randomBytes(SEGMENT_SIZE + 1);
+        var sealed = encrypt(cipher, plain);
+
+        assertEquals(SEALED_SEGMENT_SIZE + 1 + TAG_SIZE, sealed.length);
+        assertEquals(SegmentCipher.getSealedSize(plain.length), sealed.length);
+        assertArrayEquals(plain, decrypt(cipher, sealed, sealed.length));
+    }
+
+    @Test
+    void decryptsARangeFromItsSegment() throws IOException {
+        var cipher = createCipher();
+        var plain = randomBytes(SEGMENT_SIZE * 2 + 100);
+        var sealed = encrypt(cipher, plain);
+
+        long position = SEGMENT_SIZE + 10;
+        long segment = DecryptingSink.getSegment(position);
+        var from = (int) DecryptingSink.getSealedPosition(segment);
+
+        var out = new ByteArrayOutputStream();
+        var sink = new DecryptingSink(cipher, segment, sealed.length, position - segment * SEGMENT_SIZE, collect(out), Runnable::run);
+        sink.write(sealed, from, sealed.length - from);
+        sink.finish().join();
+
+        assertArrayEquals(Arrays.copyOfRange(plain, (int) position, plain.length), out.toByteArray());
+    }
+
+    @Test
+    void rejectsTruncatedData() throws IOException {
+        var cipher = createCipher();
+        var sealed = encrypt(cipher, randomBytes(SEGMENT_SIZE * 2 + 100));
+
+        // Missing the last segment, with the size it should have
+        var truncated = Arrays.copyOf(sealed, SEALED_SEGMENT_SIZE * 2);
+        var thrown = assertThrows(CompletionException.class, () -> decrypt(cipher, truncated, sealed.length));
+        assertTrue(thrown.getCause() instanceof IOException);
+
+        // Missing the last segment, with a size claiming there isn't one, so the last segment read isn't marked last
+        assertThrows(CompletionException.class, () -> decrypt(cipher, truncated, truncated.length));
+    }
+
+    @Test
+    void rejectsReorderedSegments() throws IOException {
+        var cipher = createCipher();
+        var sealed = encrypt(cipher, randomBytes(SEGMENT_SIZE * 2 + 100));
+
+        var reordered = sealed.clone();
+        System.arraycopy(sealed, 0, reordered, SEALED_SEGMENT_SIZE, SEALED_SEGMENT_SIZE);
+        System.arraycopy(sealed, SEALED_SEGMENT_SIZE, reordered, 0, SEALED_SEGMENT_SIZE);
+
+        assertThrows(CompletionException.class, () -> decrypt(cipher, reordered, reordered.length));
+    }
+
+    @Test
+    void rejectsTamperedSegments() throws IOException {
+        var cipher = createCipher();
+        var sealed = encrypt(cipher, randomBytes(SEGMENT_SIZE + 100));
+
+        var tampered = sealed.clone();
+        tampered[SEALED_SEGMENT_SIZE + 5] ^= 1;
+
+        assertThrows(CompletionException.class, () -> decrypt(cipher, tampered, tampered.length));
+    }
+
+    private static SegmentCipher createCipher() throws IOException {
+        var directory = Files.createTempDirectory("holysheet-key");
+        directory.toFile().deleteOnExit();
+
+        var path = directory.resolve("key");
+        var key = EncryptionKey.generate(path);
+        path.toFile().deleteOnExit();
+
+        return SegmentCipher.create(key);
+    }
+
+    private static byte[] encrypt(SegmentCipher cipher, byte[] plain) throws IOException {
+        var out = new ByteArrayOutputStream();
+        var encrypting = new EncryptingOutputStream(out, cipher, Runnable::run);
+        encrypting.write(plain);
+        encrypting.finish();
+        return out.toByteArray();
+    }
+
+    /**
+     * Decrypts data written in small pieces, so writes start and end partway through segments.
+     */
+    private static byte[] decrypt(SegmentCipher cipher, byte[] sealed, long sealedSize) {
+        var out = new ByteArrayOutputStream();
+        var sink = new DecryptingSink(cipher, 0, sealedSize, 0, collect(out), Runnable::run);
+        for (int offset = 0; offset < sealed.length; offset += 100_003) {
+            sink.write(sealed, offset, Math.min(100_003, sealed.length - offset));
+        }
+
+        sink.finish().join();
+        return out.toByteArray();
+    }
+
+    private static ByteSink collect(ByteArrayOutputStream out) {
+        return (bytes, offset, length) -> {
+            out.write(bytes, offset, length);
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private static byte[] randomBytes(int length) {
+        var bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,78 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ChunkBackend} keeping chunks in memory, standing in for another account.
+ */
+class MemoryChunkBackend implements ChunkBackend {
+
+    private final String name;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<String, byte[]> chunks = new ConcurrentHashMap<>();
+
+    // Keyed by the ID of the upload's parent
+    private final Map<String, List<String>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, Long> modified = new ConcurrentHashMap<>();
+
+    MemoryChunkBackend(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String upload(FileChunk chunk, CancellationToken cancellation) {
+        cancellation.throwIfCancelled();
+
+        var id = name + "-" + ids.getAndIncrement();
+        chunks.put(id, chunk.getBytes().clone());
+        uploads.computeIfAbsent(chunk.getParent().getId(), $ -> new CopyOnWriteArrayList<>()).add(id);
+        modified.put(chunk.getParent().getId(), System.currentTimeMillis());
+        return id;
+    }
+
+    @Override
+    public byte[] export(String id, CancellationToken cancellation) throws IOException {
+        cancellation.throwIfCancelled();
+
+        var bytes = chunks.get(id);
+        if (bytes == null) {
+            throw new IOException("No chunk " + id + " in " + name);
+        }
+
+        return bytes.clone();
+    }
+
+    @Override
+    public long getLastModified(File parent) {
+        return modified.getOrDefault(parent.getId(), 0L);
+    }
+
+    @Override
+    public void remove(File parent) {
+        var removed = uploads.remove(parent.getId());
+        if (removed != null) {
+            removed.forEach(chunks::remove);
+        }
+
+        modified.remove(parent.getId());
+    }
+
+    /**
+     * @return The amount of chunks stored
+     */
+    int size() {
+        return chunks.size();
+    }
+}
@@ -0,0 +1,105 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Compression;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
+import com.uddernetworks.holysheet.SheetManager;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PackWriterTest {
+
+    private static final IOExecutors DIRECT = new IOExecutors(Runnable::run, Runnable::run);
+
+    @Test
+    void cancelKeepsClosedContainers() throws IOException {
+        var sheetIO = new StubSheetIO();
+        var writer = new PackWriter(sheetIO, 1000, 10, Compression.NONE, Upload.MULTIPART);
+
+        // Reaches the container size, closing the first container
+        writer.add(createFile(16), "/");
+        writer.add(createFile(4), "/");
+
+        writer.cancel();
+
+        assertEquals(List.of("container-0", "container-1"), sheetIO.created);
+        assertEquals(List.of("container-1"), sheetIO.discarded);
+    }
+
+    @Test
+    void cancelAfterCloseDiscardsNothing() throws IOException {
+        var sheetIO = new StubSheetIO();
+        var writer = new PackWriter(sheetIO, 1000, 10, Compression.NONE, Upload.MULTIPART);
+
+        writer.add(createFile(16), "/");
+        writer.close();
+
+        writer.cancel();
+
+        assertEquals(List.of(), sheetIO.discarded);
+    }
+
+    private static java.io.File createFile(int size) throws IOException {
+        var file = Files.createTempFile("holysheet-pack", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[size]);
+        return file.toFile();
+    }
+
+    /**
+     * A {@link SheetIO} keeping its parents and chunks in memory, recording which parents are discarded.
+     */
+    private static class StubSheetIO extends SheetIO {
+
+        private final List<String> created = new CopyOnWriteArrayList<>();
+        private final List<String> discarded = new CopyOnWriteArrayList<>();
+
+        StubSheetIO() {
+            super(new StubSheetManager(), null, null, DIRECT);
+        }
+
+        @Override
+        File createParent(String title, String path, Compression compress, Upload uploadType, boolean container) {
+            var id = "container-" + created.size();
+            created.add(id);
+            return new File().setId(id).setName(id);
+        }
+
+        @Override
+        File uploadChunk(FileChunk chunk, Upload uploadType, String replaceId, CancellationToken cancellation) {
+            cancellation.throwIfCancelled();
+            return new File().setId(chunk.getName());
+        }
+
+        @Override
+        void savePackIndex(File container, PackIndex index) {
+        }
+
+        @Override
+        void discardPartial(File parent) {
+            discarded.add(parent.getId());
+        }
+    }
+
+    private static class StubSheetManager extends SheetManager {
+
+        StubSheetManager() {
+            super(null, null, DIRECT);
+        }
+
+        @Override
+        public void addProperties(File file, Map<String, String> properties) {
+        }
+
+        @Override
+        public void addProperties(String id, Map<String, String> properties) {
+        }
+    }
+}
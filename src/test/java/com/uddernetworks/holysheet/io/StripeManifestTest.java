@@ -0,0 +1,63 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.services.drive.model.File;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StripeManifestTest {
+
+    @Test
+    void roundTripsChunksStripedAcrossBackends() throws IOException {
+        var primary = new MemoryChunkBackend("local");
+        var pool = new StripePool(primary, 2)
+                .add(new MemoryChunkBackend("a"), 1)
+                .add(new MemoryChunkBackend("b"), 1);
+
+        var parent = new File().setId("parent").setName("file");
+        var random = new Random(48);
+        var chunks = new byte[10][];
+        var cancellation = new CancellationToken();
+
+        var manifest = new StripeManifest();
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new byte[100 + i];
+            random.nextBytes(chunks[i]);
+
+            var chunk = new FileChunk(parent, chunks[i], i, i * 800L);
+            var account = pool.next();
+            manifest.add(account, pool.get(account).orElseThrow().upload(chunk, cancellation), chunk);
+        }
+
+        manifest.setProperties(Map.of("processing", "false", "sheets", String.valueOf(chunks.length)));
+
+        var read = StripeManifest.fromBytes(manifest.toBytes());
+        assertEquals(manifest.getProperties(), read.getProperties());
+
+        var sheets = read.toSheets();
+        assertEquals(chunks.length, sheets.size());
+        for (int i = 0; i < sheets.size(); i++) {
+            var properties = sheets.get(i).getProperties();
+            assertEquals(String.valueOf(i), properties.get("index"));
+            assertEquals(String.valueOf(i * 800L), properties.get("bitOffset"));
+            assertEquals(String.valueOf(chunks[i].length), properties.get("size"));
+
+            var backend = pool.get(properties.get("account")).orElseThrow();
+            assertArrayEquals(chunks[i], backend.export(sheets.get(i).getId(), cancellation));
+        }
+
+        // Removing leaves nothing to export
+        for (var backend : pool.getBackends()) {
+            backend.remove(parent);
+        }
+
+        assertThrows(IOException.class, () -> primary.export(sheets.get(0).getId(), cancellation));
+        assertEquals(0, primary.size());
+    }
+}
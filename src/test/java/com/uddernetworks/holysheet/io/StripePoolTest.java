@@ -0,0 +1,81 @@
+package com.uddernetworks.holysheet.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripePoolTest {
+
+    @Test
+    void interleavesAccountsByWeight() {
+        var pool = new StripePool(2)
+                .add(new MemoryChunkBackend("a"), 1)
+                .add(new MemoryChunkBackend("b"), 1);
+
+        assertEquals(List.of("primary", "a", "b", "primary", "primary", "a", "b", "primary"), next(pool, 8));
+    }
+
+    @Test
+    void givesEachAccountItsShareOfEveryRound() {
+        var pool = new StripePool(1)
+                .add(new MemoryChunkBackend("a"), 3)
+                .add(new MemoryChunkBackend("b"), 2);
+
+        // A round is as many chunks as the weights add up to
+        for (int round = 0; round < 4; round++) {
+            var picked = next(pool, 6);
+            assertEquals(1, Collections.frequency(picked, StripePool.PRIMARY));
+            assertEquals(3, Collections.frequency(picked, "a"));
+            assertEquals(2, Collections.frequency(picked, "b"));
+        }
+    }
+
+    @Test
+    void keepsNothingInAPrimaryWithoutWeight() {
+        var pool = new StripePool(0)
+                .add(new MemoryChunkBackend("a"), 1)
+                .add(new MemoryChunkBackend("b"), 2);
+
+        assertEquals(List.of("b", "a", "b", "b", "a", "b"), next(pool, 6));
+    }
+
+    @Test
+    void refusesDuplicateAccountsAndEmptyWeights() {
+        var pool = new StripePool(1).add(new MemoryChunkBackend("a"), 1);
+
+        assertThrows(IllegalArgumentException.class, () -> pool.add(new MemoryChunkBackend("a"), 1));
+        assertThrows(IllegalArgumentException.class, () -> pool.add(new MemoryChunkBackend(StripePool.PRIMARY), 1));
+        assertThrows(IllegalArgumentException.class, () -> pool.add(new MemoryChunkBackend("b"), 0));
+        assertThrows(IllegalStateException.class, () -> new StripePool(0).next());
+    }
+
+    @Test
+    void standsInForThePrimaryAccount() {
+        var primary = new MemoryChunkBackend("local");
+        var other = new MemoryChunkBackend("a");
+
+        assertFalse(new StripePool(1).get(StripePool.PRIMARY).isPresent());
+
+        var pool = new StripePool(primary, 1).add(other, 1);
+        assertEquals(Optional.of(primary), pool.get(StripePool.PRIMARY));
+        assertEquals(List.of(primary, other), pool.getBackends());
+        assertTrue(pool.get("a").isPresent());
+    }
+
+    private static List<String> next(StripePool pool, int count) {
+        var picked = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            picked.add(pool.next());
+        }
+
+        return picked;
+    }
+}
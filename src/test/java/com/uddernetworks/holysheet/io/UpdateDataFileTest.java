@@ -0,0 +1,175 @@
+package com.uddernetworks.holysheet.io;
+
+import com.google.api.client.util.Data;
+import com.google.api.services.drive.model.File;
+import com.uddernetworks.grpc.HolysheetService.UploadRequest.Upload;
+import com.uddernetworks.holysheet.SheetManager;
+import com.uddernetworks.holysheet.encoding.EncodingOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpdateDataFileTest {
+
+    private static final IOExecutors DIRECT = new IOExecutors(Runnable::run, Runnable::run);
+
+    @Test
+    void failedUpdateLeavesTheFileAsItWas() throws IOException {
+        var original = randomBytes(300_000);
+        var sheetManager = new StubSheetManager(original);
+        var sheetIO = new StubSheetIO(sheetManager, 2);
+        var before = new HashMap<>(sheetManager.properties.get("parent"));
+
+        assertThrows(RuntimeException.class, () -> sheetIO.updateDataFile("parent", original.length, 1, new ByteArrayInputStream(changed(original)), null));
+
+        // Only the staging folder and the chunk staged in it are gone
+        assertEquals(List.of(), sheetIO.moved);
+        assertEquals(List.of("staging"), sheetIO.deleted);
+        assertEquals(before, sheetManager.properties.get("parent"));
+        assertTrue(sheetManager.sheets.values().stream().allMatch(id -> id.startsWith("sheet-")));
+        assertFalse(SheetIO.isTransferring());
+    }
+
+    @Test
+    void updateSwapsInChangedChunks() throws IOException {
+        var original = randomBytes(300_000);
+        var sheetManager = new StubSheetManager(original);
+        var sheetIO = new StubSheetIO(sheetManager, -1);
+        int chunks = sheetManager.sheets.size();
+
+        sheetIO.updateDataFile("parent", original.length, 1, new ByteArrayInputStream(changed(original)), null);
+
+        // The first and last chunks changed
+        assertEquals(List.of("staged-0", "staged-" + (chunks - 1)), sheetIO.moved);
+        assertEquals(List.of("sheet-0", "sheet-" + (chunks - 1), "staging"), sheetIO.deleted);
+        assertFalse(sheetManager.properties.get("parent").containsKey("updating"));
+        assertEquals(String.valueOf(chunks), sheetManager.properties.get("parent").get("sheets"));
+        assertFalse(SheetIO.isTransferring());
+    }
+
+    private static byte[] changed(byte[] original) {
+        var data = original.clone();
+        data[0] ^= 1;
+        data[data.length - 1] ^= 1;
+        return data;
+    }
+
+    private static byte[] randomBytes(int length) {
+        var bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * A {@link SheetIO} recording the sheets it moves and deletes, failing the upload of a chunk if asked to.
+     */
+    private static class StubSheetIO extends SheetIO {
+
+        private final StubSheetManager sheetManager;
+        private final int failAt;
+        private final List<String> moved = new ArrayList<>();
+        private final List<String> deleted = new ArrayList<>();
+        private int uploads;
+
+        /**
+         * @param failAt The upload to fail, counting from 1, or -1 to upload every chunk
+         */
+        StubSheetIO(StubSheetManager sheetManager, int failAt) {
+            super(sheetManager, null, null, DIRECT);
+            this.sheetManager = sheetManager;
+            this.failAt = failAt;
+        }
+
+        @Override
+        File uploadChunk(FileChunk chunk, Upload uploadType, String replaceId, CancellationToken cancellation) {
+            if (++uploads == failAt) {
+                throw new RuntimeException("Upload failed");
+            }
+
+            return new File().setId("staged-" + chunk.getIndex());
+        }
+
+        @Override
+        void moveSheet(String id, String from, String to) {
+            moved.add(id);
+        }
+
+        @Override
+        void deleteSheet(String id) {
+            deleted.add(id);
+            sheetManager.sheets.values().remove(id);
+        }
+    }
+
+    /**
+     * A {@link SheetManager} holding a parent with the chunks of some data, its sheets being only ids.
+     */
+    private static class StubSheetManager extends SheetManager {
+
+        private final Map<String, Map<String, String>> properties = new HashMap<>();
+        private final Map<Integer, String> sheets = new HashMap<>();
+
+        StubSheetManager(byte[] data) throws IOException {
+            super(null, null, DIRECT);
+
+            var out = new EncodingOutputStream(1);
+            out.setChunkConsumer((index, bytes) -> {
+                var id = "sheet-" + index;
+                sheets.put(index, id);
+                properties.put(id, new HashMap<>(new FileChunk(null, bytes, index, out.getChunkBitOffset()).getProperties()));
+            });
+
+            out.write(data);
+            out.flush();
+
+            properties.put("parent", new HashMap<>(Map.of(
+                    "directParent", "true",
+                    "processing", "false",
+                    "sheetSize", "1",
+                    "sheets", String.valueOf(out.getChunkIndex()),
+                    "size", String.valueOf(out.getLength())
+            )));
+        }
+
+        @Override
+        public File getFile(String id, String fields) {
+            return new File().setId(id).setName(id).setProperties(new HashMap<>(properties.get(id)));
+        }
+
+        @Override
+        public List<File> getAllSheets(String id) {
+            return sheets.values().stream()
+                    .map(sheet -> getFile(sheet, null))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public File createFolder(String name, File parent, Map<String, String> properties) {
+            return new File().setId("staging").setName(name);
+        }
+
+        @Override
+        public void addProperties(String id, Map<String, String> added) {
+            var current = properties.computeIfAbsent(id, $ -> new HashMap<>());
+            added.forEach((key, value) -> {
+                if (Data.isNull(value)) {
+                    current.remove(key);
+                } else {
+                    current.put(key, value);
+                }
+            });
+        }
+    }
+}